@@ -0,0 +1,511 @@
+package application;
+
+import java.util.HashMap;
+
+import java.util.concurrent.ForkJoinPool;
+
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Samples a compiled expression over an interval of the x-axis with as few evaluations as possible. Starts with a coarse
+ * grid of points a few pixels apart and recursively splits every interval whose midpoint deviates from the straight line
+ * between its endpoints by more than a fraction of a pixel, so straight parts of a curve use few points while steep or
+ * curvy parts get as many as they need. Intervals next to an invalid number are split as well to find where the curve
+ * breaks. Every point lies on a dyadic grid, that is at a multiple of a power of two, so the midpoints of one zoom level are
+ * the grid points of the next. An interval whose points all lie above or below the graph is only left out once interval
+ * arithmetic proves that the curve cannot come into view anywhere within it, and an interval that cannot be split anymore
+ * but may contain a pole is where the curve is broken, so no line is drawn across an asymptote. The coarse grid is split
+ * into chunks that are sampled in parallel on the common fork/join pool, each with its own copy of the expression, and
+ * joined back together in order.
+ *
+ * @author Eitan Tuchin
+ *
+ */
+
+public class AdaptiveSampler {
+
+	/**
+	 * The distance in pixels between two points of the coarse grid.
+	 */
+
+	static final double COARSE_SPACING = 8;
+
+	/**
+	 * How far in pixels a midpoint may be from the straight line between its neighbors before the interval is split.
+	 */
+
+	static final double TOLERANCE = 0.5;
+
+	/**
+	 * How many times an interval of the coarse grid may be split in half. Four splits of an interval at most COARSE_SPACING
+	 * pixels wide leave at most two points per pixel.
+	 */
+
+	static final int MAX_DEPTH = 4;
+
+	/**
+	 * The largest amount of intervals of the coarse grid sampled by a single thread.
+	 */
+
+	static final int CHUNK_SIZE = 16;
+
+	/**
+	 * The expression being sampled.
+	 */
+
+	private final CompiledExpression expression;
+
+	/**
+	 * Computes bounds of the expression over intervals of the x-axis.
+	 */
+
+	private final IntervalEvaluator intervals;
+
+	/**
+	 * Receives the bounds computed by the interval evaluator.
+	 */
+
+	private final double[] bounds = new double[2];
+
+	/**
+	 * The lower bound of the visible y-axis.
+	 */
+
+	private final double yLower;
+
+	/**
+	 * The upper bound of the visible y-axis.
+	 */
+
+	private final double yUpper;
+
+	/**
+	 * The amount of pixels per unit of the y-axis.
+	 */
+
+	private final double yScale;
+
+	/**
+	 * The curve the sampled points are added to.
+	 */
+
+	private final SampledCurve curve;
+
+	/**
+	 * The values the equation has been evaluated at before, or null to evaluate every point.
+	 */
+
+	private final SampleCache samples;
+
+	/**
+	 * How many times an interval of the coarse grid may be split in half.
+	 */
+
+	private final int maxDepth;
+
+	/**
+	 * The tiles of the sample cache this sampler has used so far, so the shared cache is only locked once per tile.
+	 */
+
+	private final HashMap<SampleCache.TileKey, SampleCache.Tile> tiles = new HashMap<>();
+
+	/**
+	 * Initializes the sampler.
+	 * @param expression The expression to sample.
+	 * @param yLower The lower bound of the visible y-axis.
+	 * @param yUpper The upper bound of the visible y-axis.
+	 * @param height The height of the visible y-axis in pixels.
+	 * @param curve The curve the sampled points are added to.
+	 * @param samples The values the equation has been evaluated at before, or null.
+	 * @param maxDepth How many times an interval of the coarse grid may be split in half.
+	 */
+
+	private AdaptiveSampler(CompiledExpression expression, double yLower, double yUpper, double height, SampledCurve curve,
+			SampleCache samples, int maxDepth) {
+
+		this.expression = expression;
+
+		this.intervals = new IntervalEvaluator(expression);
+
+		this.samples = samples;
+
+		this.maxDepth = maxDepth;
+
+		this.yLower = yLower;
+
+		this.yUpper = yUpper;
+
+		this.yScale = height / (yUpper - yLower);
+
+		this.curve = curve;
+	}
+
+	/**
+	 * Samples the given expression over the visible part of the graph, using every core. The given expression is never
+	 * evaluated itself, so it may be sampled by several threads at once. Stops early if the calling thread is interrupted,
+	 * in which case only part of the curve is returned.
+	 * @param expression The expression to sample.
+	 * @param xLower The lower bound of the visible x-axis.
+	 * @param xUpper The upper bound of the visible x-axis.
+	 * @param yLower The lower bound of the visible y-axis.
+	 * @param yUpper The upper bound of the visible y-axis.
+	 * @param width The width of the visible x-axis in pixels.
+	 * @param height The height of the visible y-axis in pixels.
+	 * @return curve The sampled curve.
+	 */
+
+	public static SampledCurve sample(CompiledExpression expression, double xLower, double xUpper, double yLower, double yUpper,
+			double width, double height) {
+
+		return sample(expression, null, MAX_DEPTH, xLower, xUpper, yLower, yUpper, width, height);
+	}
+
+	/**
+	 * Samples the given expression over the visible part of the graph like sample does, but only evaluates it at points
+	 * that are not in the given sample cache yet, and adds those to the cache. A smaller maximum depth gives a coarser
+	 * curve sooner, for example while the user is still zooming or panning.
+	 * @param expression The expression to sample.
+	 * @param samples The values the equation has been evaluated at before, or null to evaluate every point.
+	 * @param maxDepth How many times an interval of the coarse grid may be split in half, at most MAX_DEPTH.
+	 * @param xLower The lower bound of the visible x-axis.
+	 * @param xUpper The upper bound of the visible x-axis.
+	 * @param yLower The lower bound of the visible y-axis.
+	 * @param yUpper The upper bound of the visible y-axis.
+	 * @param width The width of the visible x-axis in pixels.
+	 * @param height The height of the visible y-axis in pixels.
+	 * @return curve The sampled curve.
+	 */
+
+	public static SampledCurve sample(CompiledExpression expression, SampleCache samples, int maxDepth, double xLower,
+			double xUpper, double yLower, double yUpper, double width, double height) {
+
+		// the coarse grid uses the largest power of two that is at most COARSE_SPACING pixels wide
+
+		int level = -Math.getExponent(COARSE_SPACING * (xUpper - xLower) / width);
+
+		long first = (long) Math.floor(Math.scalb(xLower, level));
+
+		long last = (long) Math.ceil(Math.scalb(xUpper, level));
+
+		return ForkJoinPool.commonPool().invoke(new ChunkTask(expression, samples, maxDepth, level, first, last, yLower, yUpper,
+				height, Thread.currentThread()));
+	}
+
+	/**
+	 * Samples a chunk of the coarse grid, including the points at both of its ends.
+	 * @param level The level of the coarse grid.
+	 * @param first The index of the first point of the chunk within the coarse grid.
+	 * @param last The index of the last point of the chunk within the coarse grid.
+	 * @param caller The thread that is waiting for the curve.
+	 */
+
+	private void sampleChunk(int level, long first, long last, Thread caller) {
+
+		double xa = Math.scalb((double) first, -level);
+
+		double ya = evaluate(level, first);
+
+		curve.add(xa, ya);
+
+		for (long index = first; index < last; ++index) {
+
+			// give up on a curve nobody is waiting for anymore
+
+			if (caller.isInterrupted()) {
+
+				break;
+			}
+
+			double xb = Math.scalb((double) (index + 1), -level);
+
+			double yb = evaluate(level, index + 1);
+
+			refine(level, index, ya, yb, 0);
+
+			curve.add(xb, yb);
+
+			ya = yb;
+		}
+	}
+
+	/**
+	 * Adds the points between the two ends of an interval of the dyadic grid, splitting the interval in half if needed.
+	 * @param level The level of the grid, points are 2^-level apart.
+	 * @param index The index of the left end of the interval within the grid.
+	 * @param ya The y-axis value at the left end.
+	 * @param yb The y-axis value at the right end.
+	 * @param depth How many times the coarse interval has been split already.
+	 */
+
+	private void refine(int level, long index, double ya, double yb, int depth) {
+
+		if (depth >= maxDepth) {
+
+			// an interval too small to split that may contain a pole is where the curve breaks
+
+			if (isPole(level, index)) {
+
+				curve.breakSegment();
+			}
+
+			return;
+		}
+
+		long midIndex = 2 * index + 1;
+
+		double xm = Math.scalb((double) midIndex, -(level + 1));
+
+		double ym = evaluate(level + 1, midIndex);
+
+		boolean validA = SampledCurve.isValid(ya), validB = SampledCurve.isValid(yb), validM = SampledCurve.isValid(ym);
+
+		if (validA && validB && validM) {
+
+			// an interval that lies completely above or below the graph does not need more detail, as long as the curve
+			// cannot come into view between the points
+
+			if (((ya > yUpper && yb > yUpper && ym > yUpper) || (ya < yLower && yb < yLower && ym < yLower))
+					&& isHidden(level, index)) {
+
+				return;
+			}
+
+			// the curve is straight enough if the midpoint is close to the line between the two ends
+
+			if (Math.abs(ym - (ya + yb) / 2) * yScale <= TOLERANCE) {
+
+				return;
+			}
+		}
+
+		// nothing to find within an interval where the curve does not exist at all
+
+		else if (!validA && !validB && !validM) {
+
+			return;
+		}
+
+		refine(level + 1, 2 * index, ya, ym, depth + 1);
+
+		curve.add(xm, ym);
+
+		refine(level + 1, midIndex, ym, yb, depth + 1);
+	}
+
+	/**
+	 * Checks if the curve is guaranteed to stay above or below the graph over an interval of the dyadic grid.
+	 * @param level The level of the grid, points are 2^-level apart.
+	 * @param index The index of the left end of the interval within the grid.
+	 * @return true/false If the curve is not visible anywhere within the interval.
+	 */
+
+	private boolean isHidden(int level, long index) {
+
+		intervals.evaluate(Math.scalb((double) index, -level), Math.scalb((double) (index + 1), -level), bounds);
+
+		return bounds[0] > yUpper || bounds[1] < yLower;
+	}
+
+	/**
+	 * Checks if the expression may have a pole within an interval of the dyadic grid, that is if it is not continuous there
+	 * and may grow without limit.
+	 * @param level The level of the grid, points are 2^-level apart.
+	 * @param index The index of the left end of the interval within the grid.
+	 * @return true/false If the interval may contain a pole.
+	 */
+
+	private boolean isPole(int level, long index) {
+
+		boolean continuous = intervals.evaluate(Math.scalb((double) index, -level), Math.scalb((double) (index + 1), -level),
+				bounds);
+
+		return !continuous && (bounds[0] == Double.NEGATIVE_INFINITY || bounds[1] == Double.POSITIVE_INFINITY);
+	}
+
+	/**
+	 * Evaluates the expression at a point of the dyadic grid, unless the sample cache already knows its value.
+	 * @param level The level of the grid, points are 2^-level apart.
+	 * @param index The index of the point within the grid.
+	 * @return y The y-axis value at the point.
+	 */
+
+	private double evaluate(int level, long index) {
+
+		double x = Math.scalb((double) index, -level);
+
+		if (samples == null) {
+
+			return expression.evaluate(x);
+		}
+
+		// store every point under the coarsest level it belongs to, so it is found again at any zoom level
+
+		if (index == 0) {
+
+			level = 0;
+		}
+
+		else {
+
+			int zeros = Long.numberOfTrailingZeros(index);
+
+			index >>= zeros;
+
+			level -= zeros;
+		}
+
+		SampleCache.Tile tile = tiles.computeIfAbsent(new SampleCache.TileKey(level, index >> SampleCache.TILE_SHIFT),
+				samples::getTile);
+
+		int slot = (int) (index & (SampleCache.TILE_SIZE - 1));
+
+		if (tile.has(slot)) {
+
+			return tile.get(slot);
+		}
+
+		double y = expression.evaluate(x);
+
+		tile.set(slot, y);
+
+		return y;
+	}
+
+	/**
+	 * Samples a chunk of the coarse grid, splitting it in half and sampling both halves on different threads as long as it
+	 * is larger than CHUNK_SIZE intervals. The halves are joined back together in order, so a segment that crosses the
+	 * middle of a chunk stays one segment.
+	 */
+
+	private static class ChunkTask extends RecursiveTask<SampledCurve> {
+
+		/**
+		 * The version of the task for serialization.
+		 */
+
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * The expression to sample, which is copied for every thread.
+		 */
+
+		private final CompiledExpression expression;
+
+		/**
+		 * The values the equation has been evaluated at before, or null.
+		 */
+
+		private final SampleCache samples;
+
+		/**
+		 * How many times an interval of the coarse grid may be split in half.
+		 */
+
+		private final int maxDepth;
+
+		/**
+		 * The level of the coarse grid.
+		 */
+
+		private final int level;
+
+		/**
+		 * The index of the first point of the chunk within the coarse grid.
+		 */
+
+		private final long first;
+
+		/**
+		 * The index of the last point of the chunk within the coarse grid.
+		 */
+
+		private final long last;
+
+		/**
+		 * The visible part of the y-axis.
+		 */
+
+		private final double yLower, yUpper;
+
+		/**
+		 * The height of the visible y-axis in pixels.
+		 */
+
+		private final double height;
+
+		/**
+		 * The thread that is waiting for the curve.
+		 */
+
+		private final Thread caller;
+
+		/**
+		 * Initializes the task.
+		 * @param expression The expression to sample.
+		 * @param samples The values the equation has been evaluated at before, or null.
+		 * @param maxDepth How many times an interval of the coarse grid may be split in half.
+		 * @param level The level of the coarse grid.
+		 * @param first The index of the first point of the chunk within the coarse grid.
+		 * @param last The index of the last point of the chunk within the coarse grid.
+		 * @param yLower The lower bound of the visible y-axis.
+		 * @param yUpper The upper bound of the visible y-axis.
+		 * @param height The height of the visible y-axis in pixels.
+		 * @param caller The thread that is waiting for the curve.
+		 */
+
+		ChunkTask(CompiledExpression expression, SampleCache samples, int maxDepth, int level, long first, long last,
+				double yLower, double yUpper, double height, Thread caller) {
+
+			this.expression = expression;
+
+			this.samples = samples;
+
+			this.maxDepth = maxDepth;
+
+			this.level = level;
+
+			this.first = first;
+
+			this.last = last;
+
+			this.yLower = yLower;
+
+			this.yUpper = yUpper;
+
+			this.height = height;
+
+			this.caller = caller;
+		}
+
+		@Override
+		protected SampledCurve compute() {
+
+			if (last - first <= CHUNK_SIZE) {
+
+				SampledCurve curve = new SampledCurve();
+
+				AdaptiveSampler sampler = new AdaptiveSampler(expression.copy(), yLower, yUpper, height, curve, samples, maxDepth);
+
+				sampler.sampleChunk(level, first, last, caller);
+
+				return curve;
+			}
+
+			long middle = first + (last - first) / 2;
+
+			ChunkTask left = new ChunkTask(expression, samples, maxDepth, level, first, middle, yLower, yUpper, height, caller);
+
+			ChunkTask right = new ChunkTask(expression, samples, maxDepth, level, middle, last, yLower, yUpper, height, caller);
+
+			left.fork();
+
+			SampledCurve rightCurve = right.compute();
+
+			SampledCurve curve = left.join();
+
+			curve.append(rightCurve);
+
+			return curve;
+		}
+	}
+}
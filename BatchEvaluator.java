@@ -0,0 +1,774 @@
+package application;
+
+import java.io.BufferedOutputStream;
+
+import java.io.FileDescriptor;
+
+import java.io.FileOutputStream;
+
+import java.io.IOException;
+
+import java.io.OutputStream;
+
+import java.io.PrintStream;
+
+import java.nio.ByteBuffer;
+
+import java.nio.ByteOrder;
+
+import java.nio.charset.StandardCharsets;
+
+import java.nio.file.Files;
+
+import java.nio.file.Paths;
+
+import java.util.ArrayList;
+
+import java.util.Arrays;
+
+import java.util.DoubleSummaryStatistics;
+
+import java.util.List;
+
+import java.util.concurrent.ForkJoinPool;
+
+import java.util.concurrent.RecursiveAction;
+
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Tabulates equations over an evenly spaced grid of x-axis values from the command line, without starting the app or
+ * loading a single JavaFX class. Every equation is compiled once into a class of its own by the bytecode generator, and
+ * the grid is split into blocks that are evaluated on every core by those classes. An equation too large for a class is
+ * evaluated with the batch evaluation of the compiled expression instead, each block with its own copy of it. Blocks
+ * are formatted on the same threads and written in order while the next blocks are being evaluated, so results stream
+ * out at the speed of the disk or the pipe, either as CSV or as raw little-endian doubles. Every row holds x followed
+ * by the value of every equation at x. Results can also be written as a curve file, with one curve per equation that is
+ * broken wherever the equation has no finite value, which the graph can import, or summarized as the amount of values,
+ * the amount that are not a number, and the smallest, largest, and sum of the rest, which streams every equation lazily
+ * over the grid and needs no more memory for billions of points than for a few. The amount of evaluations per second is
+ * reported on the error stream, so it never mixes with the results.
+ *
+ * @author Eitan Tuchin
+ *
+ */
+
+public class BatchEvaluator {
+
+	/**
+	 * The amount of grid points evaluated and formatted by a single thread at a time.
+	 */
+
+	static final int BLOCK_SIZE = 8192;
+
+	/**
+	 * How to run the batch evaluator.
+	 */
+
+	static final String USAGE = "Usage: java -cp <classes> application.BatchEvaluator [options] <equation>...\n"
+			+ "  --from <x>        the first x-axis value (default -25)\n"
+			+ "  --to <x>          the last x-axis value (default 25)\n"
+			+ "  --points <n>      the amount of evenly spaced x-axis values (default 1000001)\n"
+			+ "  --format <f>      csv, binary for rows of little-endian doubles, curve for a curve file, or summary\n"
+			+ "                    for the amount, NaNs, min, max, and sum of the values of every equation (default csv)\n"
+			+ "  --output <file>   write the results to a file instead of the standard output, which curve files need\n"
+			+ "  --file <file>     read more options and equations from a file, one per line, skipping lines starting with #";
+
+	/**
+	 * The equations as given.
+	 */
+
+	private final ArrayList<String> equations = new ArrayList<>();
+
+	/**
+	 * The compiled expression of every equation, which is only ever copied.
+	 */
+
+	private CompiledExpression[] expressions;
+
+	/**
+	 * The class generated for every equation, which holds no state and is shared by every thread, or null for an equation
+	 * that is too large for a class.
+	 */
+
+	private DoubleUnaryOperator[] functions;
+
+	/**
+	 * The first and the last x-axis value of the grid.
+	 */
+
+	private double from = -25, to = 25;
+
+	/**
+	 * The amount of x-axis values of the grid.
+	 */
+
+	private long points = 1000001;
+
+	/**
+	 * How the results are written: csv, binary, curve, or summary.
+	 */
+
+	private String format = "csv";
+
+	/**
+	 * The file the results are written to, or null for the standard output.
+	 */
+
+	private String output;
+
+	/**
+	 * Tabulates the equations given as arguments and reports how fast they were evaluated.
+	 * @param args The options and equations.
+	 */
+
+	public static void main(String[] args) {
+
+		BatchEvaluator evaluator = new BatchEvaluator();
+
+		try {
+
+			evaluator.parseArguments(args);
+
+			long start = System.nanoTime();
+
+			long evaluations = evaluator.run();
+
+			double seconds = (System.nanoTime() - start) / 1e9;
+
+			System.err.printf("%,d evaluations of %d equation(s) in %.3f s, %,.0f evaluations per second%n", evaluations,
+					evaluator.expressions.length, seconds, evaluations / seconds);
+		}
+
+		catch (Exception e) {
+
+			System.err.println(e.getMessage());
+
+			System.err.println(USAGE);
+
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Reads the options and equations, including those of every file given with --file, and compiles every equation.
+	 * @param args The options and equations.
+	 * @throws Exception An option is unknown or has an illegal value, a file cannot be read, or an equation is illegal or
+	 * not a function of x.
+	 */
+
+	void parseArguments(String[] args) throws Exception {
+
+		ArrayList<String> arguments = new ArrayList<>(List.of(args));
+
+		for (int i = 0; i < arguments.size(); i++) {
+
+			String argument = arguments.get(i);
+
+			if (!argument.startsWith("--")) {
+
+				equations.add(argument);
+
+				continue;
+			}
+
+			if (i + 1 == arguments.size()) {
+
+				throw new Exception("Missing value for " + argument);
+			}
+
+			String value = arguments.get(++i);
+
+			switch (argument) {
+
+				case "--from":
+
+					from = parseNumber(argument, value);
+
+					break;
+
+				case "--to":
+
+					to = parseNumber(argument, value);
+
+					break;
+
+				case "--points":
+
+					points = (long) parseNumber(argument, value);
+
+					if (points < 1 || points != parseNumber(argument, value)) {
+
+						throw new Exception("--points must be a whole number of at least 1");
+					}
+
+					break;
+
+				case "--format":
+
+					if (!value.equals("csv") && !value.equals("binary") && !value.equals("curve")
+								&& !value.equals("summary")) {
+
+						throw new Exception("Unknown format: " + value);
+					}
+
+					format = value;
+
+					break;
+
+				case "--output":
+
+					output = value;
+
+					break;
+
+				case "--file":
+
+					// the lines of the file are read as if they were the next arguments
+
+					arguments.addAll(i + 1, readFile(value));
+
+					break;
+
+				default:
+
+					throw new Exception("Unknown option: " + argument);
+			}
+		}
+
+		if (equations.isEmpty()) {
+
+			throw new Exception("No equations given");
+		}
+
+		if (format.equals("curve") && output == null) {
+
+			throw new Exception("A curve file needs --output");
+		}
+
+		if (format.equals("curve") && points > CurveFile.MAX_POINTS) {
+
+			throw new Exception("A curve file cannot hold more than " + CurveFile.MAX_POINTS + " points per equation");
+		}
+
+		expressions = new CompiledExpression[equations.size()];
+
+		functions = new DoubleUnaryOperator[equations.size()];
+
+		for (int e = 0; e < expressions.length; e++) {
+
+			// spaces are allowed here, since equations are often quoted on the command line
+
+			expressions[e] = new EquationSolver().compile(equations.get(e).replace(" ", ""));
+
+			if (expressions[e].getForm() != CompiledExpression.FUNCTION) {
+
+				throw new Exception("Only functions of x can be tabulated: " + equations.get(e));
+			}
+
+			functions[e] = BytecodeGenerator.generate(expressions[e]);
+		}
+	}
+
+	/**
+	 * Reads the options and equations within a file. Every line is an equation, or an option followed by its value, and
+	 * blank lines and lines starting with # are skipped.
+	 * @param file The path of the file.
+	 * @return arguments The options, values, and equations in order.
+	 * @throws IOException The file cannot be read.
+	 */
+
+	private static ArrayList<String> readFile(String file) throws IOException {
+
+		ArrayList<String> arguments = new ArrayList<>();
+
+		for (String line : Files.readAllLines(Paths.get(file))) {
+
+			line = line.trim();
+
+			if (line.isEmpty() || line.startsWith("#")) {
+
+				continue;
+			}
+
+			if (line.startsWith("--")) {
+
+				// an option and its value are separated by whitespace
+
+				for (String part : line.split("\\s+", 2)) {
+
+					arguments.add(part);
+				}
+			}
+
+			else {
+
+				arguments.add(line);
+			}
+		}
+
+		return arguments;
+	}
+
+	/**
+	 * Parses the finite number given for an option.
+	 * @param option The option.
+	 * @param value The value given for the option.
+	 * @return number The parsed number.
+	 * @throws Exception The value is not a finite number.
+	 */
+
+	private static double parseNumber(String option, String value) throws Exception {
+
+		try {
+
+			double number = Double.parseDouble(value);
+
+			if (Double.isFinite(number)) {
+
+				return number;
+			}
+		}
+
+		catch (NumberFormatException e) {
+
+			// reported below
+		}
+
+		throw new Exception("Not a finite number for " + option + ": " + value);
+	}
+
+	/**
+	 * Evaluates every equation at every point of the grid and writes the results to the output.
+	 * @return evaluations The amount of evaluations.
+	 * @throws IOException The results cannot be written.
+	 */
+
+	long run() throws IOException {
+
+		if (format.equals("summary")) {
+
+			return summarize();
+		}
+
+		OutputStream out = null;
+
+		CurveFile.Writer writer = null;
+
+		if (format.equals("curve")) {
+
+			// every equation gets room for every point, of which those without a finite value are left out
+
+			long[] capacities = new long[expressions.length];
+
+			Arrays.fill(capacities, points);
+
+			writer = new CurveFile.Writer(Paths.get(output), capacities);
+		}
+
+		else {
+
+			out = new BufferedOutputStream(output == null ? new FileOutputStream(FileDescriptor.out)
+					: Files.newOutputStream(Paths.get(output)), 1 << 16);
+		}
+
+		try {
+
+			if (format.equals("csv")) {
+
+				out.write(("x," + String.join(",", equations) + "\n").getBytes(StandardCharsets.UTF_8));
+			}
+
+			long blocks = (points + BLOCK_SIZE - 1) / BLOCK_SIZE;
+
+			// enough blocks per batch to keep every core busy while the batch before is written
+
+			int batchSize = 4 * ForkJoinPool.commonPool().getParallelism();
+
+			BlockTask next = new BlockTask(0, Math.min(batchSize, blocks));
+
+			ForkJoinPool.commonPool().execute(next);
+
+			for (long first = 0; first < blocks; first += batchSize) {
+
+				BlockTask current = next;
+
+				current.join();
+
+				long nextFirst = first + batchSize;
+
+				if (nextFirst < blocks) {
+
+					long nextLast = Math.min(nextFirst + batchSize, blocks);
+
+					next = new BlockTask(nextFirst, nextLast);
+
+					ForkJoinPool.commonPool().execute(next);
+				}
+
+				for (int k = 0; k < current.chunks.length; k++) {
+
+					if (writer != null) {
+
+						addColumns(writer, current.columns[k]);
+					}
+
+					else {
+
+						out.write(current.chunks[k]);
+					}
+				}
+			}
+		}
+
+		finally {
+
+			if (writer != null) {
+
+				writer.close();
+			}
+
+			else if (output == null) {
+
+				out.flush();
+			}
+
+			else {
+
+				out.close();
+			}
+		}
+
+		return points * expressions.length;
+	}
+
+	/**
+	 * Reduces the values of every equation at every point of the grid to a summary and writes a row of CSV per equation.
+	 * Every equation is streamed in parallel, a block at a time, so nothing but the summaries is ever kept.
+	 * @return evaluations The amount of evaluations.
+	 * @throws IOException The results cannot be written.
+	 */
+
+	private long summarize() throws IOException {
+
+		PrintStream out = output == null ? System.out : new PrintStream(Files.newOutputStream(Paths.get(output)), false,
+				StandardCharsets.UTF_8);
+
+		try {
+
+			out.println("equation,points,nan,min,max,sum");
+
+			for (int e = 0; e < expressions.length; e++) {
+
+				Summary summary = expressions[e].stream(from, to, points).parallel().collect(Summary::new, Summary::accept,
+						Summary::combine);
+
+				DoubleSummaryStatistics numbers = summary.numbers;
+
+				// min and max are left empty if every value is NaN
+
+				out.println(equations.get(e) + "," + (numbers.getCount() + summary.nanCount) + "," + summary.nanCount + ","
+						+ (numbers.getCount() == 0 ? "," : numbers.getMin() + "," + numbers.getMax()) + "," + numbers.getSum());
+			}
+		}
+
+		finally {
+
+			if (output == null) {
+
+				out.flush();
+			}
+
+			else {
+
+				out.close();
+			}
+		}
+
+		if (out.checkError()) {
+
+			throw new IOException("The summary could not be written");
+		}
+
+		return points * expressions.length;
+	}
+
+	/**
+	 * Gets the x-axis value of the given point of the grid, the same way the stream of a summary does.
+	 * @param index The index of the point.
+	 * @return x The x-axis value.
+	 */
+
+	private double getX(long index) {
+
+		return ExpressionSpliterator.getX(from, to, points, index);
+	}
+
+	/**
+	 * Adds the points of a single block to the curve of every equation, in order.
+	 * @param writer The writer of the curve file.
+	 * @param columns The x-axis values of the block followed by the values of every equation.
+	 */
+
+	private static void addColumns(CurveFile.Writer writer, double[][] columns) {
+
+		double[] xs = columns[0];
+
+		for (int e = 1; e < columns.length; e++) {
+
+			double[] ys = columns[e];
+
+			for (int i = 0; i < xs.length; i++) {
+
+				writer.add(e - 1, xs[i], ys[i]);
+			}
+		}
+	}
+
+	/**
+	 * Evaluates every equation at every point of a single block.
+	 * @param block The index of the block.
+	 * @return columns The x-axis values of the block followed by the values of every equation.
+	 */
+
+	private double[][] evaluateBlock(long block) {
+
+		long start = block * BLOCK_SIZE;
+
+		int count = (int) Math.min(BLOCK_SIZE, points - start);
+
+		double[] xs = new double[count];
+
+		for (int i = 0; i < count; i++) {
+
+			xs[i] = getX(start + i);
+		}
+
+		double[][] columns = new double[expressions.length + 1][];
+
+		columns[0] = xs;
+
+		for (int e = 0; e < expressions.length; e++) {
+
+			double[] ys = new double[count];
+
+			columns[e + 1] = ys;
+
+			DoubleUnaryOperator function = functions[e];
+
+			if (function == null) {
+
+				expressions[e].copy().evaluate(xs, ys);
+
+				continue;
+			}
+
+			for (int i = 0; i < count; i++) {
+
+				ys[i] = function.applyAsDouble(xs[i]);
+			}
+		}
+
+		return columns;
+	}
+
+	/**
+	 * Formats the rows of a single block.
+	 * @param columns The x-axis values of the block followed by the values of every equation.
+	 * @return chunk The formatted rows.
+	 */
+
+	private byte[] format(double[][] columns) {
+
+		double[] xs = columns[0];
+
+		double[][] ys = Arrays.copyOfRange(columns, 1, columns.length);
+
+		int count = xs.length;
+
+		if (format.equals("binary")) {
+
+			ByteBuffer buffer = ByteBuffer.allocate(count * (expressions.length + 1) * Double.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+
+			for (int i = 0; i < count; i++) {
+
+				buffer.putDouble(xs[i]);
+
+				for (double[] column : ys) {
+
+					buffer.putDouble(column[i]);
+				}
+			}
+
+			return buffer.array();
+		}
+
+		StringBuilder builder = new StringBuilder(count * (expressions.length + 1) * 12);
+
+		for (int i = 0; i < count; i++) {
+
+			builder.append(xs[i]);
+
+			for (double[] column : ys) {
+
+				builder.append(',').append(column[i]);
+			}
+
+			builder.append('\n');
+		}
+
+		return builder.toString().getBytes(StandardCharsets.US_ASCII);
+	}
+
+	/**
+	 * The amount of values of an equation that are not a number, and the statistics of the rest.
+	 */
+
+	private static class Summary {
+
+		/**
+		 * The amount of values that are not a number.
+		 */
+
+		private long nanCount;
+
+		/**
+		 * The amount, smallest, largest, and sum of the values that are numbers.
+		 */
+
+		private final DoubleSummaryStatistics numbers = new DoubleSummaryStatistics();
+
+		/**
+		 * Adds a value to the summary.
+		 * @param value The value of the equation at a point.
+		 */
+
+		void accept(double value) {
+
+			if (Double.isNaN(value)) {
+
+				nanCount++;
+			}
+
+			else {
+
+				numbers.accept(value);
+			}
+		}
+
+		/**
+		 * Adds the values of another summary to this one, such as the summary of another part of the grid.
+		 * @param other The other summary.
+		 */
+
+		void combine(Summary other) {
+
+			nanCount += other.nanCount;
+
+			numbers.combine(other.numbers);
+		}
+	}
+
+	/**
+	 * Evaluates and formats a range of blocks, splitting the range in half until it is a single block. Blocks for a curve
+	 * file are only evaluated, since their points are added to the file one by one.
+	 */
+
+	private class BlockTask extends RecursiveAction {
+
+		/**
+		 * The version of the task for serialization.
+		 */
+
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * The index of the first block of the range.
+		 */
+
+		private final long first;
+
+		/**
+		 * The index after the last block of the range.
+		 */
+
+		private final long last;
+
+		/**
+		 * Receives the formatted rows of every block of the batch this range belongs to, by their position within the batch.
+		 */
+
+		private final byte[][] chunks;
+
+		/**
+		 * Receives the evaluated columns of every block of the batch this range belongs to instead, for a curve file.
+		 */
+
+		private final double[][][] columns;
+
+		/**
+		 * The index of the first block of the batch.
+		 */
+
+		private final long batchFirst;
+
+		/**
+		 * Initializes the task for a whole batch.
+		 * @param first The index of the first block of the batch.
+		 * @param last The index after the last block of the batch.
+		 */
+
+		BlockTask(long first, long last) {
+
+			this(first, last, new byte[(int) (last - first)][], new double[(int) (last - first)][][], first);
+		}
+
+		/**
+		 * Initializes the task for part of a batch.
+		 * @param first The index of the first block of the range.
+		 * @param last The index after the last block of the range.
+		 * @param chunks Receives the formatted rows of every block of the batch.
+		 * @param columns Receives the evaluated columns of every block of the batch.
+		 * @param batchFirst The index of the first block of the batch.
+		 */
+
+		BlockTask(long first, long last, byte[][] chunks, double[][][] columns, long batchFirst) {
+
+			this.first = first;
+
+			this.last = last;
+
+			this.chunks = chunks;
+
+			this.columns = columns;
+
+			this.batchFirst = batchFirst;
+		}
+
+		@Override
+		protected void compute() {
+
+			if (last - first == 1) {
+
+				int index = (int) (first - batchFirst);
+
+				if (format.equals("curve")) {
+
+					columns[index] = evaluateBlock(first);
+				}
+
+				else {
+
+					chunks[index] = format(evaluateBlock(first));
+				}
+
+				return;
+			}
+
+			long middle = first + (last - first) / 2;
+
+			invokeAll(new BlockTask(first, middle, chunks, columns, batchFirst),
+					new BlockTask(middle, last, chunks, columns, batchFirst));
+		}
+	}
+}
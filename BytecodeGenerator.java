@@ -0,0 +1,619 @@
+package application;
+
+import java.io.ByteArrayOutputStream;
+
+import java.io.DataOutputStream;
+
+import java.io.IOException;
+
+import java.lang.invoke.MethodHandles;
+
+import java.lang.invoke.MethodType;
+
+import java.util.HashMap;
+
+import java.util.IdentityHashMap;
+
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Turns a compiled expression into a real JVM class that implements DoubleUnaryOperator. The expression tree is written out
+ * as straight-line bytecode (loads of x and constants followed by the matching arithmetic instructions) so the JIT compiler
+ * can inline and register-allocate the arithmetic like hand-written Java. Every class is defined as a hidden class that is
+ * not strongly linked to its class loader, so it is unloaded as soon as nothing references the returned operator anymore.
+ *
+ * @author Eitan Tuchin
+ *
+ */
+
+public class BytecodeGenerator {
+
+	/**
+	 * The name of every generated class. The JVM gives each hidden class its own unique suffix.
+	 */
+
+	private static final String CLASS_NAME = "application/GeneratedExpression";
+
+	/**
+	 * The class file version of Java 17.
+	 */
+
+	private static final int CLASS_VERSION = 61;
+
+	/**
+	 * The largest amount of code allowed within a single method.
+	 */
+
+	private static final int MAX_CODE_LENGTH = 65535;
+
+	/**
+	 * The largest amount of entries allowed within the constant pool.
+	 */
+
+	private static final int MAX_CONSTANTS = 65535;
+
+	/**
+	 * Constant pool entries that every generated class uses.
+	 */
+
+	private static final int THIS_CLASS = 2, OBJECT_CLASS = 4, OPERATOR_INTERFACE = 6, INIT_NAME = 7, VOID_DESCRIPTOR = 8,
+			OBJECT_INIT = 10, APPLY_NAME = 11, APPLY_DESCRIPTOR = 12, CODE_ATTRIBUTE = 13, MATH_POW = 19,
+			MATH_LOG = 22;
+
+	/**
+	 * Opcodes used by the generated code.
+	 */
+
+	private static final int DCONST_0 = 0x0e, DCONST_1 = 0x0f, LDC2_W = 0x14, DLOAD_1 = 0x27, ALOAD_0 = 0x2a, DADD = 0x63,
+			DSUB = 0x67, DMUL = 0x6b, DDIV = 0x6f, DNEG = 0x77, DRETURN = 0xaf, RETURN = 0xb1, INVOKESPECIAL = 0xb7,
+			INVOKESTATIC = 0xb8, DLOAD = 0x18, DSTORE = 0x39, DUP2 = 0x5c, WIDE = 0xc4;
+
+	/**
+	 * The largest amount of local variable slots allowed within a single method.
+	 */
+
+	private static final int MAX_LOCALS = 65535;
+
+	/**
+	 * Holds the constant pool, starting with the entries every generated class uses.
+	 */
+
+	private final ByteArrayOutputStream constantBytes = new ByteArrayOutputStream();
+
+	/**
+	 * Writes to the constant pool.
+	 */
+
+	private final DataOutputStream constants = new DataOutputStream(constantBytes);
+
+	/**
+	 * The index the next constant pool entry will have.
+	 */
+
+	private int constantCount = 1;
+
+	/**
+	 * Assigns the bits of every double already in the constant pool to its index.
+	 */
+
+	private final HashMap<Long, Integer> doubleMap = new HashMap<>();
+
+	/**
+	 * Holds the code of the applyAsDouble method.
+	 */
+
+	private final ByteArrayOutputStream codeBytes = new ByteArrayOutputStream();
+
+	/**
+	 * Writes to the code of the applyAsDouble method.
+	 */
+
+	private final DataOutputStream code = new DataOutputStream(codeBytes);
+
+	/**
+	 * The amount of stack slots the generated code currently uses.
+	 */
+
+	private int stackSize;
+
+	/**
+	 * The largest amount of stack slots the generated code ever uses.
+	 */
+
+	private int maxStackSize;
+
+	/**
+	 * The amount of uses of every node of the expression.
+	 */
+
+	private IdentityHashMap<ExpressionNode, Integer> uses;
+
+	/**
+	 * Assigns every shared node that has already been written to the local variable that holds its value.
+	 */
+
+	private final IdentityHashMap<ExpressionNode, Integer> localMap = new IdentityHashMap<>();
+
+	/**
+	 * The amount of local variable slots used so far: this, x, and one double for every shared node.
+	 */
+
+	private int maxLocals = 3;
+
+	/**
+	 * Generates a class for the given expression and creates an instance of it. The instance holds no state, so it can be
+	 * called by any amount of threads at once.
+	 * @param expression The compiled expression of a function of x.
+	 * @return operator An operator that evaluates the expression at the given x-axis value, or null if the expression is
+	 * too large to fit within a single method and has to keep running its program.
+	 */
+
+	public static DoubleUnaryOperator generate(CompiledExpression expression) {
+
+		try {
+
+			byte[] classBytes = new BytecodeGenerator().writeClass(expression.getRoot());
+
+			if (classBytes == null) {
+
+				return null;
+			}
+
+			// the lookup is not kept anywhere so only the returned operator keeps the class alive
+
+			MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(classBytes, true);
+
+			return (DoubleUnaryOperator) lookup.findConstructor(lookup.lookupClass(), MethodType.methodType(void.class))
+					.invoke();
+		}
+
+		catch (Throwable e) {
+
+			throw new IllegalStateException("Could not generate a class for " + expression.getSource(), e);
+		}
+	}
+
+	/**
+	 * Writes the class file of the given expression.
+	 * @param root The root of the expression tree.
+	 * @return classBytes The class file, or null if the expression is too large.
+	 * @throws IOException The class file could not be written.
+	 */
+
+	private byte[] writeClass(ExpressionNode root) throws IOException {
+
+		writeCommonConstants();
+
+		uses = ExpressionOptimizer.countUses(root);
+
+		writeNode(root);
+
+		code.writeByte(DRETURN);
+
+		if (codeBytes.size() > MAX_CODE_LENGTH || constantCount > MAX_CONSTANTS || maxLocals > MAX_LOCALS) {
+
+			return null;
+		}
+
+		ByteArrayOutputStream classBytes = new ByteArrayOutputStream();
+
+		DataOutputStream out = new DataOutputStream(classBytes);
+
+		out.writeInt(0xCAFEBABE);
+
+		out.writeShort(0);
+
+		out.writeShort(CLASS_VERSION);
+
+		out.writeShort(constantCount);
+
+		constantBytes.writeTo(out);
+
+		// public final class implementing DoubleUnaryOperator
+
+		out.writeShort(0x0031);
+
+		out.writeShort(THIS_CLASS);
+
+		out.writeShort(OBJECT_CLASS);
+
+		out.writeShort(1);
+
+		out.writeShort(OPERATOR_INTERFACE);
+
+		// no fields
+
+		out.writeShort(0);
+
+		out.writeShort(2);
+
+		// public constructor that only calls the constructor of Object
+
+		byte[] initCode = { (byte) ALOAD_0, (byte) INVOKESPECIAL, 0, (byte) OBJECT_INIT, (byte) RETURN };
+
+		writeMethod(out, 0x0001, INIT_NAME, VOID_DESCRIPTOR, 1, 1, initCode);
+
+		// public final double applyAsDouble(double x)
+
+		writeMethod(out, 0x0011, APPLY_NAME, APPLY_DESCRIPTOR, maxStackSize, maxLocals, codeBytes.toByteArray());
+
+		// no class attributes
+
+		out.writeShort(0);
+
+		return classBytes.toByteArray();
+	}
+
+	/**
+	 * Writes the constant pool entries every generated class uses in the order of the indices defined above.
+	 * @throws IOException The constant pool could not be written.
+	 */
+
+	private void writeCommonConstants() throws IOException {
+
+		writeUtf8(CLASS_NAME);
+
+		writeClassConstant(1);
+
+		writeUtf8("java/lang/Object");
+
+		writeClassConstant(3);
+
+		writeUtf8("java/util/function/DoubleUnaryOperator");
+
+		writeClassConstant(5);
+
+		writeUtf8("<init>");
+
+		writeUtf8("()V");
+
+		writeReference(12, INIT_NAME, VOID_DESCRIPTOR);
+
+		writeReference(10, OBJECT_CLASS, 9);
+
+		writeUtf8("applyAsDouble");
+
+		writeUtf8("(D)D");
+
+		writeUtf8("Code");
+
+		writeUtf8("java/lang/Math");
+
+		writeClassConstant(14);
+
+		writeUtf8("pow");
+
+		writeUtf8("(DD)D");
+
+		writeReference(12, 16, 17);
+
+		writeReference(10, 15, 18);
+
+		writeUtf8("log");
+
+		writeReference(12, 20, APPLY_DESCRIPTOR);
+
+		writeReference(10, 15, 21);
+	}
+
+	/**
+	 * Writes the code for the given node after the code for its operands so that the operands are on the stack when the
+	 * operator is applied. A shared node is computed the first time it is used and kept in a local variable, from which it
+	 * is loaded everywhere else.
+	 * @param node The current node.
+	 * @throws IOException The code could not be written.
+	 */
+
+	private void writeNode(ExpressionNode node) throws IOException {
+
+		Integer local = localMap.get(node);
+
+		if (local != null) {
+
+			writeLocal(DLOAD, local);
+
+			push();
+
+			return;
+		}
+
+		switch (node.getType()) {
+
+			case ExpressionNode.NUMBER:
+
+				writeNumber(node.getValue());
+
+				break;
+
+			case ExpressionNode.VARIABLE:
+
+				// the operator only takes x, or the parameter in its place, and y is not a number like it is in
+				// CompiledExpression.evaluate(x)
+
+				if (node.getValue() == ExpressionNode.Y) {
+
+					writeNumber(Double.NaN);
+
+					break;
+				}
+
+				code.writeByte(DLOAD_1);
+
+				push();
+
+				break;
+
+			case ExpressionNode.NEGATE:
+
+				writeNode(node.getLeft());
+
+				code.writeByte(DNEG);
+
+				break;
+
+			case ExpressionNode.LOG:
+
+				writeNode(node.getLeft());
+
+				code.writeByte(INVOKESTATIC);
+
+				code.writeShort(MATH_LOG);
+
+				break;
+
+			default:
+
+				writeNode(node.getLeft());
+
+				writeNode(node.getRight());
+
+				writeOperator(node.getType());
+
+				// two operands are replaced by one result
+
+				stackSize -= 2;
+		}
+
+		if (node.getLeft() != null && uses.get(node) > 1) {
+
+			// keep a copy of the result for every other use
+
+			code.writeByte(DUP2);
+
+			writeLocal(DSTORE, maxLocals);
+
+			localMap.put(node, maxLocals);
+
+			// a double takes up two local variable slots
+
+			maxLocals += 2;
+
+			push();
+
+			stackSize -= 2;
+		}
+	}
+
+	/**
+	 * Writes an instruction that loads or stores the local variable at the given index.
+	 * @param opcode The opcode of the instruction.
+	 * @param index The index of the local variable.
+	 * @throws IOException The code could not be written.
+	 */
+
+	private void writeLocal(int opcode, int index) throws IOException {
+
+		if (index > 255) {
+
+			code.writeByte(WIDE);
+
+			code.writeByte(opcode);
+
+			code.writeShort(index);
+		}
+
+		else {
+
+			code.writeByte(opcode);
+
+			code.writeByte(index);
+		}
+	}
+
+	/**
+	 * Writes the instruction of the given binary operator.
+	 * @param type The type of the operator node.
+	 * @throws IOException The code could not be written.
+	 */
+
+	private void writeOperator(int type) throws IOException {
+
+		switch (type) {
+
+			case ExpressionNode.ADD:
+
+				code.writeByte(DADD);
+
+				break;
+
+			case ExpressionNode.SUBTRACT:
+
+				code.writeByte(DSUB);
+
+				break;
+
+			case ExpressionNode.MULTIPLY:
+
+				code.writeByte(DMUL);
+
+				break;
+
+			case ExpressionNode.DIVIDE:
+
+				code.writeByte(DDIV);
+
+				break;
+
+			case ExpressionNode.POWER:
+
+				code.writeByte(INVOKESTATIC);
+
+				code.writeShort(MATH_POW);
+
+				break;
+
+			default:
+
+				throw new IllegalArgumentException("Invalid node type: " + type);
+		}
+	}
+
+	/**
+	 * Writes the instruction that pushes the given number, adding it to the constant pool if needed.
+	 * @param value The number.
+	 * @throws IOException The code could not be written.
+	 */
+
+	private void writeNumber(double value) throws IOException {
+
+		long bits = Double.doubleToRawLongBits(value);
+
+		if (bits == Double.doubleToRawLongBits(0.0)) {
+
+			code.writeByte(DCONST_0);
+		}
+
+		else if (bits == Double.doubleToRawLongBits(1.0)) {
+
+			code.writeByte(DCONST_1);
+		}
+
+		else {
+
+			Integer index = doubleMap.get(bits);
+
+			if (index == null) {
+
+				index = constantCount;
+
+				doubleMap.put(bits, index);
+
+				constants.writeByte(6);
+
+				constants.writeDouble(value);
+
+				// a double takes up two entries within the constant pool
+
+				constantCount += 2;
+			}
+
+			code.writeByte(LDC2_W);
+
+			code.writeShort(index);
+		}
+
+		push();
+	}
+
+	/**
+	 * Keeps track of a new double on the stack, which takes up two stack slots.
+	 */
+
+	private void push() {
+
+		stackSize += 2;
+
+		maxStackSize = Math.max(maxStackSize, stackSize);
+	}
+
+	/**
+	 * Writes a Utf8 entry into the constant pool.
+	 * @param text The text of the entry.
+	 * @throws IOException The constant pool could not be written.
+	 */
+
+	private void writeUtf8(String text) throws IOException {
+
+		constants.writeByte(1);
+
+		constants.writeUTF(text);
+
+		constantCount++;
+	}
+
+	/**
+	 * Writes a Class entry into the constant pool.
+	 * @param nameIndex The index of the name of the class.
+	 * @throws IOException The constant pool could not be written.
+	 */
+
+	private void writeClassConstant(int nameIndex) throws IOException {
+
+		constants.writeByte(7);
+
+		constants.writeShort(nameIndex);
+
+		constantCount++;
+	}
+
+	/**
+	 * Writes an entry that refers to two other entries, such as a NameAndType or a Methodref, into the constant pool.
+	 * @param tag The tag of the entry.
+	 * @param first The index of the first entry.
+	 * @param second The index of the second entry.
+	 * @throws IOException The constant pool could not be written.
+	 */
+
+	private void writeReference(int tag, int first, int second) throws IOException {
+
+		constants.writeByte(tag);
+
+		constants.writeShort(first);
+
+		constants.writeShort(second);
+
+		constantCount++;
+	}
+
+	/**
+	 * Writes a method with a single Code attribute.
+	 * @param out The class file being written.
+	 * @param flags The access flags of the method.
+	 * @param name The index of the name of the method.
+	 * @param descriptor The index of the descriptor of the method.
+	 * @param maxStack The largest amount of stack slots the method uses.
+	 * @param maxLocals The amount of local variable slots the method uses.
+	 * @param methodCode The instructions of the method.
+	 * @throws IOException The method could not be written.
+	 */
+
+	private static void writeMethod(DataOutputStream out, int flags, int name, int descriptor, int maxStack, int maxLocals,
+			byte[] methodCode) throws IOException {
+
+		out.writeShort(flags);
+
+		out.writeShort(name);
+
+		out.writeShort(descriptor);
+
+		out.writeShort(1);
+
+		out.writeShort(CODE_ATTRIBUTE);
+
+		// max stack, max locals, code length, code, no exception table, no attributes
+
+		out.writeInt(2 + 2 + 4 + methodCode.length + 2 + 2);
+
+		out.writeShort(maxStack);
+
+		out.writeShort(maxLocals);
+
+		out.writeInt(methodCode.length);
+
+		out.write(methodCode);
+
+		out.writeShort(0);
+
+		out.writeShort(0);
+	}
+}
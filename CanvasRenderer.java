@@ -0,0 +1,447 @@
+package application;
+
+import java.util.LinkedHashMap;
+
+import java.util.Map;
+
+import javafx.application.Platform;
+
+import javafx.scene.Node;
+
+import javafx.scene.canvas.Canvas;
+
+import javafx.scene.canvas.GraphicsContext;
+
+import javafx.scene.layout.Pane;
+
+import javafx.scene.paint.Color;
+
+import javafx.scene.shape.Rectangle;
+
+import javafx.scene.text.Font;
+
+/**
+ * Draws the curves of the graph directly onto a Canvas. The grid, both axes, and their labels are drawn by hand and every
+ * segment of a curve is stroked as a single polyline straight from the primitive arrays of the sampled curve, so no node is
+ * created per point or per curve. Any amount of changes made within the same pulse are drawn together in one redraw, which
+ * keeps the graph interactive with hundreds of equations and hundreds of thousands of points.
+ *
+ * @author Eitan Tuchin
+ *
+ */
+
+public class CanvasRenderer implements PlotRenderer {
+
+	/**
+	 * The approximate distance in pixels between two grid lines.
+	 */
+
+	private static final double GRID_SPACING = 80;
+
+	/**
+	 * The farthest a point is drawn outside of the canvas in pixels. Points farther away are moved to this distance so the
+	 * canvas never has to deal with enormous coordinates near an asymptote.
+	 */
+
+	private static final double MAX_OVERDRAW = 100000;
+
+	/**
+	 * The radius in pixels of the circle drawn at every marked point.
+	 */
+
+	private static final double MARKER_RADIUS = 4;
+
+	/**
+	 * Holds the canvas and resizes it with the layout.
+	 */
+
+	private Pane pane = new Pane();
+
+	/**
+	 * The canvas everything is drawn onto.
+	 */
+
+	private Canvas canvas = new Canvas();
+
+	/**
+	 * Assigns every plotted curve to its key in the order the curves were first plotted.
+	 */
+
+	private LinkedHashMap<Object, SampledCurve> curveMap = new LinkedHashMap<>();
+
+	/**
+	 * Assigns the color of every plotted curve to its key.
+	 */
+
+	private LinkedHashMap<Object, Color> colorMap = new LinkedHashMap<>();
+
+	/**
+	 * The marked points, such as roots and intersections.
+	 */
+
+	private SampledCurve markers = new SampledCurve();
+
+	/**
+	 * The visible part of both axes.
+	 */
+
+	private double xLower = Graph.LOWER_BOUND, xUpper = Graph.UPPER_BOUND, yLower = Graph.LOWER_BOUND, yUpper = Graph.UPPER_BOUND;
+
+	/**
+	 * Reused arrays of screen coordinates for stroking polylines.
+	 */
+
+	private double[] screenXs = new double[256], screenYs = new double[256];
+
+	/**
+	 * Whether a redraw has already been requested for the next pulse.
+	 */
+
+	private boolean redrawPending;
+
+	/**
+	 * Initializes the canvas and redraws it whenever its size changes.
+	 */
+
+	public CanvasRenderer() {
+
+		pane.setPrefSize(800, 600);
+
+		pane.setMinSize(0, 0);
+
+		pane.getChildren().add(canvas);
+
+		canvas.widthProperty().bind(pane.widthProperty());
+
+		canvas.heightProperty().bind(pane.heightProperty());
+
+		canvas.widthProperty().addListener((observable, oldValue, newValue) -> requestRedraw());
+
+		canvas.heightProperty().addListener((observable, oldValue, newValue) -> requestRedraw());
+
+		// nothing is drawn outside of the pane
+
+		Rectangle clip = new Rectangle();
+
+		clip.widthProperty().bind(pane.widthProperty());
+
+		clip.heightProperty().bind(pane.heightProperty());
+
+		pane.setClip(clip);
+	}
+
+	@Override
+	public Node getNode() {
+
+		return pane;
+	}
+
+	@Override
+	public void setViewport(double xLower, double xUpper, double yLower, double yUpper) {
+
+		this.xLower = xLower;
+
+		this.xUpper = xUpper;
+
+		this.yLower = yLower;
+
+		this.yUpper = yUpper;
+
+		requestRedraw();
+	}
+
+	@Override
+	public void setCurve(Object key, SampledCurve curve, Color color) {
+
+		curveMap.put(key, curve);
+
+		colorMap.put(key, color);
+
+		requestRedraw();
+	}
+
+	@Override
+	public void removeCurve(Object key) {
+
+		if (curveMap.remove(key) != null) {
+
+			colorMap.remove(key);
+
+			requestRedraw();
+		}
+	}
+
+	@Override
+	public void setMarkers(SampledCurve markers) {
+
+		this.markers = markers;
+
+		requestRedraw();
+	}
+
+	@Override
+	public double getPlotWidth() {
+
+		return canvas.getWidth() > 0 ? canvas.getWidth() : pane.getPrefWidth();
+	}
+
+	@Override
+	public double getPlotHeight() {
+
+		return canvas.getHeight() > 0 ? canvas.getHeight() : pane.getPrefHeight();
+	}
+
+	@Override
+	public double getXValue(double x, double y) {
+
+		return xLower + x / getPlotWidth() * (xUpper - xLower);
+	}
+
+	@Override
+	public double getYValue(double x, double y) {
+
+		return yUpper - y / getPlotHeight() * (yUpper - yLower);
+	}
+
+	/**
+	 * Redraws the canvas on the next pulse unless a redraw has already been requested.
+	 */
+
+	private void requestRedraw() {
+
+		if (!redrawPending) {
+
+			redrawPending = true;
+
+			Platform.runLater(this::redraw);
+		}
+	}
+
+	/**
+	 * Draws the grid, both axes, and every curve.
+	 */
+
+	private void redraw() {
+
+		redrawPending = false;
+
+		double width = canvas.getWidth(), height = canvas.getHeight();
+
+		GraphicsContext gc = canvas.getGraphicsContext2D();
+
+		gc.setFill(Color.WHITE);
+
+		gc.fillRect(0, 0, width, height);
+
+		if (width <= 0 || height <= 0) {
+
+			return;
+		}
+
+		drawGrid(gc, width, height);
+
+		gc.setLineWidth(2);
+
+		for (Map.Entry<Object, SampledCurve> entry : curveMap.entrySet()) {
+
+			gc.setStroke(colorMap.get(entry.getKey()));
+
+			drawCurve(gc, entry.getValue(), width, height);
+		}
+
+		drawMarkers(gc, width, height);
+	}
+
+	/**
+	 * Draws the grid lines, both axes, and the labels of the grid lines.
+	 * @param gc The graphics context of the canvas.
+	 * @param width The width of the canvas.
+	 * @param height The height of the canvas.
+	 */
+
+	private void drawGrid(GraphicsContext gc, double width, double height) {
+
+		double xStep = PlotRenderer.getGridStep((xUpper - xLower) * GRID_SPACING / width);
+
+		double yStep = PlotRenderer.getGridStep((yUpper - yLower) * GRID_SPACING / height);
+
+		// keep the labels next to the axes, or at the edge of the canvas if an axis is not visible
+
+		double xAxisPosition = Math.min(Math.max(toScreenY(0, height), 0), height - 15);
+
+		double yAxisPosition = Math.min(Math.max(toScreenX(0, width), 0), width - 40);
+
+		gc.setLineWidth(1);
+
+		gc.setFont(new Font(11));
+
+		for (long k = (long) Math.ceil(xLower / xStep); k * xStep <= xUpper; k++) {
+
+			double x = k * xStep;
+
+			double sx = Math.round(toScreenX(x, width)) + 0.5;
+
+			gc.setStroke(Color.LIGHTGRAY);
+
+			gc.strokeLine(sx, 0, sx, height);
+
+			gc.setFill(Color.DIMGRAY);
+
+			gc.fillText(formatLabel(x, xStep), sx + 2, xAxisPosition + 12);
+		}
+
+		for (long k = (long) Math.ceil(yLower / yStep); k * yStep <= yUpper; k++) {
+
+			double y = k * yStep;
+
+			double sy = Math.round(toScreenY(y, height)) + 0.5;
+
+			gc.setStroke(Color.LIGHTGRAY);
+
+			gc.strokeLine(0, sy, width, sy);
+
+			gc.setFill(Color.DIMGRAY);
+
+			gc.fillText(formatLabel(y, yStep), yAxisPosition + 2, sy - 2);
+		}
+
+		gc.setStroke(Color.BLACK);
+
+		gc.setLineWidth(1.5);
+
+		if (xLower <= 0 && xUpper >= 0) {
+
+			double sx = toScreenX(0, width);
+
+			gc.strokeLine(sx, 0, sx, height);
+		}
+
+		if (yLower <= 0 && yUpper >= 0) {
+
+			double sy = toScreenY(0, height);
+
+			gc.strokeLine(0, sy, width, sy);
+		}
+	}
+
+	/**
+	 * Strokes every segment of the given curve as a single polyline.
+	 * @param gc The graphics context of the canvas.
+	 * @param curve The sampled curve.
+	 * @param width The width of the canvas.
+	 * @param height The height of the canvas.
+	 */
+
+	private void drawCurve(GraphicsContext gc, SampledCurve curve, double width, double height) {
+
+		for (int s = 0; s < curve.getSegmentCount(); s++) {
+
+			int start = curve.getSegmentStart(s);
+
+			int count = curve.getSegmentEnd(s) - start;
+
+			if (count > screenXs.length) {
+
+				screenXs = new double[count];
+
+				screenYs = new double[count];
+			}
+
+			for (int i = 0; i < count; i++) {
+
+				screenXs[i] = clamp(toScreenX(curve.getX(start + i), width), width);
+
+				screenYs[i] = clamp(toScreenY(curve.getY(start + i), height), height);
+			}
+
+			gc.strokePolyline(screenXs, screenYs, count);
+		}
+	}
+
+	/**
+	 * Draws a circle at every marked point that is visible.
+	 * @param gc The graphics context of the canvas.
+	 * @param width The width of the canvas.
+	 * @param height The height of the canvas.
+	 */
+
+	private void drawMarkers(GraphicsContext gc, double width, double height) {
+
+		gc.setFill(Color.WHITE);
+
+		gc.setStroke(Color.BLACK);
+
+		gc.setLineWidth(1.5);
+
+		for (int i = 0; i < markers.size(); i++) {
+
+			double sx = toScreenX(markers.getX(i), width), sy = toScreenY(markers.getY(i), height);
+
+			if (sx < -MARKER_RADIUS || sx > width + MARKER_RADIUS || sy < -MARKER_RADIUS || sy > height + MARKER_RADIUS) {
+
+				continue;
+			}
+
+			gc.fillOval(sx - MARKER_RADIUS, sy - MARKER_RADIUS, 2 * MARKER_RADIUS, 2 * MARKER_RADIUS);
+
+			gc.strokeOval(sx - MARKER_RADIUS, sy - MARKER_RADIUS, 2 * MARKER_RADIUS, 2 * MARKER_RADIUS);
+		}
+	}
+
+	/**
+	 * Converts an x-axis value to a horizontal position on the canvas.
+	 * @param x The x-axis value.
+	 * @param width The width of the canvas.
+	 * @return position The horizontal position in pixels.
+	 */
+
+	private double toScreenX(double x, double width) {
+
+		return (x - xLower) * width / (xUpper - xLower);
+	}
+
+	/**
+	 * Converts a y-axis value to a vertical position on the canvas.
+	 * @param y The y-axis value.
+	 * @param height The height of the canvas.
+	 * @return position The vertical position in pixels.
+	 */
+
+	private double toScreenY(double y, double height) {
+
+		return (yUpper - y) * height / (yUpper - yLower);
+	}
+
+	/**
+	 * Keeps a position within a reasonable distance of the canvas.
+	 * @param position The position in pixels.
+	 * @param size The width or height of the canvas.
+	 * @return position The clamped position.
+	 */
+
+	private static double clamp(double position, double size) {
+
+		return Math.min(Math.max(position, -MAX_OVERDRAW), size + MAX_OVERDRAW);
+	}
+
+	/**
+	 * Formats the label of a grid line with as many decimals as the distance between grid lines needs.
+	 * @param value The value of the grid line.
+	 * @param step The distance between two grid lines.
+	 * @return label The formatted value.
+	 */
+
+	private static String formatLabel(double value, double step) {
+
+		int decimals = (int) Math.max(0, -Math.floor(Math.log10(step)));
+
+		// avoid showing -0 for the grid line at the origin
+
+		if (Math.abs(value) < step / 2) {
+
+			value = 0;
+		}
+
+		return String.format("%." + decimals + "f", value);
+	}
+}
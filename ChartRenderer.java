@@ -0,0 +1,321 @@
+package application;
+
+import java.util.ArrayList;
+
+import java.util.HashMap;
+
+import java.util.List;
+
+import javafx.geometry.Point2D;
+
+import javafx.scene.Node;
+
+import javafx.scene.chart.LineChart;
+
+import javafx.scene.chart.NumberAxis;
+
+import javafx.scene.chart.XYChart;
+
+import javafx.scene.paint.Color;
+
+import javafx.scene.shape.Circle;
+
+/**
+ * Draws the curves of the graph with a LineChart. Every segment of a curve becomes its own XYChart.Series object so that
+ * no line is drawn across an asymptote, and every series of a curve is styled with the color of its equation. Plotting a
+ * curve again only touches the series of that curve: series it already had get their points replaced in a single change,
+ * and only the series it has more or fewer of than before are added to or removed from the chart.
+ *
+ * @author Eitan Tuchin
+ *
+ */
+
+public class ChartRenderer implements PlotRenderer {
+
+	/**
+	 * The approximate distance in pixels between two tick marks, which keeps one tick per unit at the initial zoom.
+	 */
+
+	private static final double TICK_SPACING = 15;
+
+	/**
+	 * The radius in pixels of the circle drawn at every marked point.
+	 */
+
+	private static final double MARKER_RADIUS = 4;
+
+	/**
+	 * The x-axis of the graph.
+	 */
+
+	private NumberAxis xAxis = new NumberAxis(Graph.LOWER_BOUND, Graph.UPPER_BOUND, 1);
+
+	/**
+	 * The y-axis of the graph.
+	 */
+
+	private NumberAxis yAxis = new NumberAxis(Graph.LOWER_BOUND, Graph.UPPER_BOUND, 1);
+
+	/**
+	 * The graph constructed with both axes.
+	 */
+
+	private LineChart<Number, Number> lineChart = new LineChart<>(xAxis, yAxis);
+
+	/**
+	 * Assigns the series of every plotted curve to the key of that curve.
+	 */
+
+	private HashMap<Object, ArrayList<XYChart.Series<Number, Number>>> seriesMap = new HashMap<>();
+
+	/**
+	 * The series whose points are the marked points, drawn as circles without a line between them.
+	 */
+
+	private XYChart.Series<Number, Number> markerSeries;
+
+	/**
+	 * Initializes the chart.
+	 */
+
+	public ChartRenderer() {
+
+		lineChart.setPrefSize(800, 600);
+
+		lineChart.setCreateSymbols(false); // ensures that every individual point that was plotted is shown
+
+		lineChart.setLegendVisible(false);
+
+		lineChart.setAnimated(false);
+
+		// points are drawn in the order they were traced, so closed curves stay closed
+
+		lineChart.setAxisSortingPolicy(LineChart.SortingPolicy.NONE);
+
+		// keep the tick marks a readable distance apart at any zoom and any size of the chart
+
+		xAxis.widthProperty().addListener((observable, oldValue, newValue) -> updateTickUnits());
+
+		yAxis.heightProperty().addListener((observable, oldValue, newValue) -> updateTickUnits());
+	}
+
+	@Override
+	public Node getNode() {
+
+		return lineChart;
+	}
+
+	@Override
+	public void setViewport(double xLower, double xUpper, double yLower, double yUpper) {
+
+		xAxis.setLowerBound(xLower);
+
+		xAxis.setUpperBound(xUpper);
+
+		yAxis.setLowerBound(yLower);
+
+		yAxis.setUpperBound(yUpper);
+
+		updateTickUnits();
+	}
+
+	@Override
+	public void setCurve(Object key, SampledCurve curve, Color color) {
+
+		ArrayList<XYChart.Series<Number, Number>> seriesArr = seriesMap.computeIfAbsent(key, k -> new ArrayList<>());
+
+		int segmentCount = curve.getSegmentCount();
+
+		int reused = Math.min(seriesArr.size(), segmentCount);
+
+		// replace the points of the series the curve already has, one change per series
+
+		for (int s = 0; s < reused; s++) {
+
+			seriesArr.get(s).getData().setAll(createData(curve, s));
+		}
+
+		// only add or remove the series that the new curve has more or fewer of
+
+		if (seriesArr.size() > segmentCount) {
+
+			List<XYChart.Series<Number, Number>> surplus = seriesArr.subList(segmentCount, seriesArr.size());
+
+			lineChart.getData().removeAll(surplus);
+
+			surplus.clear();
+		}
+
+		else if (segmentCount > reused) {
+
+			ArrayList<XYChart.Series<Number, Number>> added = new ArrayList<>();
+
+			for (int s = reused; s < segmentCount; s++) {
+
+				XYChart.Series<Number, Number> series = new XYChart.Series<>();
+
+				series.getData().setAll(createData(curve, s));
+
+				added.add(series);
+			}
+
+			lineChart.getData().addAll(added);
+
+			seriesArr.addAll(added);
+		}
+
+		// make color the same for every series in the equation
+
+		String rgb = String.format("%d, %d, %d", (int) (color.getRed() * 255), (int) (color.getGreen() * 255),
+				(int) (color.getBlue() * 255));
+
+		for (XYChart.Series<Number, Number> s : seriesArr) {
+
+			Node currLine = s.getNode().lookup(".chart-series-line");
+
+			currLine.setStyle("-fx-stroke: rgba(" + rgb + ", 1.0);");
+		}
+	}
+
+	@Override
+	public void removeCurve(Object key) {
+
+		ArrayList<XYChart.Series<Number, Number>> seriesArr = seriesMap.remove(key);
+
+		if (seriesArr != null) {
+
+			lineChart.getData().removeAll(seriesArr);
+		}
+	}
+
+	@Override
+	public void setMarkers(SampledCurve markers) {
+
+		ArrayList<XYChart.Data<Number, Number>> data = new ArrayList<>(markers.size());
+
+		for (int i = 0; i < markers.size(); i++) {
+
+			XYChart.Data<Number, Number> point = new XYChart.Data<>(markers.getX(i), markers.getY(i));
+
+			Circle circle = new Circle(MARKER_RADIUS, Color.WHITE);
+
+			circle.setStroke(Color.BLACK);
+
+			circle.setStrokeWidth(1.5);
+
+			point.setNode(circle); // a point with its own node is drawn even though the chart creates no symbols
+
+			data.add(point);
+		}
+
+		// keep the markers on top of every curve plotted since they were last added
+
+		if (markerSeries != null && lineChart.getData().indexOf(markerSeries) != lineChart.getData().size() - 1) {
+
+			lineChart.getData().remove(markerSeries);
+
+			markerSeries = null;
+		}
+
+		if (markerSeries == null) {
+
+			markerSeries = new XYChart.Series<>();
+
+			markerSeries.getData().setAll(data);
+
+			lineChart.getData().add(markerSeries);
+
+			markerSeries.getNode().lookup(".chart-series-line").setStyle("-fx-stroke: transparent;");
+		}
+
+		else {
+
+			markerSeries.getData().setAll(data);
+		}
+	}
+
+	@Override
+	public double getPlotWidth() {
+
+		// use the preferred width of the chart until it has been laid out
+
+		return xAxis.getWidth() > 0 ? xAxis.getWidth() : lineChart.getPrefWidth();
+	}
+
+	@Override
+	public double getPlotHeight() {
+
+		return yAxis.getHeight() > 0 ? yAxis.getHeight() : lineChart.getPrefHeight();
+	}
+
+	@Override
+	public double getXValue(double x, double y) {
+
+		Point2D point = xAxis.sceneToLocal(lineChart.localToScene(x, y));
+
+		return xAxis.getValueForDisplay(point.getX()).doubleValue();
+	}
+
+	@Override
+	public double getYValue(double x, double y) {
+
+		Point2D point = yAxis.sceneToLocal(lineChart.localToScene(x, y));
+
+		return yAxis.getValueForDisplay(point.getY()).doubleValue();
+	}
+
+	/**
+	 * Picks the distance between tick marks of both axes from their ranges and sizes.
+	 */
+
+	private void updateTickUnits() {
+
+		xAxis.setTickUnit(PlotRenderer.getGridStep((xAxis.getUpperBound() - xAxis.getLowerBound()) * TICK_SPACING / getPlotWidth()));
+
+		yAxis.setTickUnit(PlotRenderer.getGridStep((yAxis.getUpperBound() - yAxis.getLowerBound()) * TICK_SPACING / getPlotHeight()));
+	}
+
+	/**
+	 * Turns every segment of the given sampled curve into its own XYChart.Series object so that no line is drawn across
+	 * an asymptote.
+	 * @param curve The sampled curve.
+	 * @return seriesArr An array of series objects that together represent the plotted equation.
+	 */
+
+	static ArrayList<XYChart.Series<Number, Number>> createSeries(SampledCurve curve) {
+
+		ArrayList<XYChart.Series<Number, Number>> seriesArr = new ArrayList<>();
+
+		for (int s = 0; s < curve.getSegmentCount(); s++) {
+
+			XYChart.Series<Number, Number> series = new XYChart.Series<>();
+
+			series.getData().setAll(createData(curve, s));
+
+			seriesArr.add(series);
+		}
+
+		return seriesArr;
+	}
+
+	/**
+	 * Creates the data points of one segment of the given sampled curve, to be handed to a series all at once.
+	 * @param curve The sampled curve.
+	 * @param segment The index of the segment.
+	 * @return data The data points of the segment.
+	 */
+
+	static ArrayList<XYChart.Data<Number, Number>> createData(SampledCurve curve, int segment) {
+
+		int start = curve.getSegmentStart(segment), end = curve.getSegmentEnd(segment);
+
+		ArrayList<XYChart.Data<Number, Number>> data = new ArrayList<>(end - start);
+
+		for (int i = start; i < end; i++) {
+
+			data.add(new XYChart.Data<>(curve.getX(i), curve.getY(i)));
+		}
+
+		return data;
+	}
+}
@@ -0,0 +1,745 @@
+package application;
+
+import java.util.Arrays;
+
+import java.util.IdentityHashMap;
+
+import java.util.function.DoubleUnaryOperator;
+
+import java.util.stream.DoubleStream;
+
+import java.util.stream.StreamSupport;
+
+/**
+ * An equation that has already been tokenized and parsed by the equation solver. The parsed expression tree is
+ * flattened into a postfix program of operator codes with a slot for the x and y variables, which runs on a primitive
+ * stack that is created once. A parametric equation has two expression trees, one for each axis, which are flattened
+ * into the same program and leave their results next to each other on the stack. Evaluating the same equation at every
+ * x-axis value of the graph does no String work and allocates nothing. A subexpression that is shared by several nodes
+ * of an optimized expression is computed once, stored in a register, and loaded from there wherever else it is used. A
+ * compiled expression reuses its stack between calls, so it must not be evaluated by more than one thread at a time;
+ * every other thread should evaluate its own copy.
+ *
+ * @author Eitan Tuchin
+ *
+ */
+
+public class CompiledExpression {
+
+	/**
+	 * The instruction that copies the top of the stack into a register. Numbered after the node types.
+	 */
+
+	static final int STORE = 8;
+
+	/**
+	 * The instruction that pushes the value of a register.
+	 */
+
+	static final int LOAD = 9;
+
+	/**
+	 * The form of an equation that is a function of x.
+	 */
+
+	public static final int FUNCTION = 0;
+
+	/**
+	 * The form of an equation that is a relation between x and y, which holds wherever the expression is 0.
+	 */
+
+	public static final int RELATION = 1;
+
+	/**
+	 * The form of an equation that gives both axes as functions of t.
+	 */
+
+	public static final int PARAMETRIC = 2;
+
+	/**
+	 * The form of an equation that gives the distance from the origin as a function of the angle t.
+	 */
+
+	public static final int POLAR = 3;
+
+	/**
+	 * If the batch evaluation applies its arithmetic with the Vector API, which is only possible when the JVM was started
+	 * with --add-modules jdk.incubator.vector. Otherwise the plain loops are used, which the JIT compiler vectorizes on its
+	 * own where it can.
+	 */
+
+	static final boolean VECTORIZED = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+
+	/**
+	 * The equation this expression was compiled from, with every number written the same way.
+	 */
+
+	private final String source;
+
+	/**
+	 * The roots of the optimized expressions, in which equal subexpressions are shared.
+	 */
+
+	private final ExpressionNode[] roots;
+
+	/**
+	 * The form of the equation.
+	 */
+
+	private final int form;
+
+	/**
+	 * The node types of the expression tree in postfix order, along with the instructions that store and load shared
+	 * subexpressions.
+	 */
+
+	private final int[] program;
+
+	/**
+	 * The number pushed by every instruction of the program that is a number.
+	 */
+
+	private final double[] constants;
+
+	/**
+	 * The register used by every instruction of the program that stores or loads a register, or the index of the variable
+	 * pushed by every instruction that is a variable.
+	 */
+
+	private final int[] slots;
+
+	/**
+	 * Keeps the values of shared subexpressions while the program runs for a single x-axis value.
+	 */
+
+	private final double[] registers;
+
+	/**
+	 * Keeps the values of shared subexpressions while the program runs for an array of x-axis values.
+	 */
+
+	private double[][] registerColumns;
+
+	/**
+	 * The class generated for this expression by the bytecode generator, which evaluate(double) calls instead of running
+	 * the program, or null. It holds no state, so every copy shares it.
+	 */
+
+	private DoubleUnaryOperator function;
+
+	/**
+	 * Keeps track of the operands while the program runs for a single x-axis value.
+	 */
+
+	private final double[] stack;
+
+	/**
+	 * Keeps track of the operands while the program runs for an array of x-axis values. Created on the first batch call
+	 * and reused as long as the arrays keep the same length.
+	 */
+
+	private double[][] columns;
+
+	/**
+	 * Initializes the compiled expression by flattening the expression trees into a postfix program.
+	 * @param source The normalized equation.
+	 * @param form The form of the equation.
+	 * @param roots The roots of the optimized expressions, one for each result.
+	 */
+
+	CompiledExpression(String source, int form, ExpressionNode... roots) {
+
+		this.source = source;
+
+		this.form = form;
+
+		this.roots = roots;
+
+		IdentityHashMap<ExpressionNode, Integer> uses = ExpressionOptimizer.countUses(roots);
+
+		// a number or variable is pushed wherever it is used, any other shared node is stored once and loaded everywhere else
+
+		int size = 0, registerCount = 0;
+
+		for (IdentityHashMap.Entry<ExpressionNode, Integer> entry : uses.entrySet()) {
+
+			if (entry.getKey().getLeft() == null) {
+
+				size += entry.getValue();
+			}
+
+			else if (entry.getValue() > 1) {
+
+				size += entry.getValue() + 1;
+
+				registerCount++;
+			}
+
+			else {
+
+				size++;
+			}
+		}
+
+		program = new int[size];
+
+		constants = new double[size];
+
+		slots = new int[size];
+
+		registers = new double[registerCount];
+
+		// every result stays on the stack below the ones after it
+
+		int stackSize = 0;
+
+		int[] next = new int[2];
+
+		IdentityHashMap<ExpressionNode, Integer> registerMap = new IdentityHashMap<>();
+
+		for (int i = 0; i < roots.length; i++) {
+
+			stackSize = flatten(roots[i], i, stackSize, next, uses, registerMap);
+		}
+
+		stack = new double[stackSize];
+	}
+
+	/**
+	 * Initializes a copy of the given compiled expression that shares its program but has a stack of its own.
+	 * @param other The compiled expression to copy.
+	 */
+
+	private CompiledExpression(CompiledExpression other) {
+
+		source = other.source;
+
+		roots = other.roots;
+
+		form = other.form;
+
+		program = other.program;
+
+		constants = other.constants;
+
+		slots = other.slots;
+
+		function = other.function;
+
+		registers = new double[other.registers.length];
+
+		stack = new double[other.stack.length];
+	}
+
+	/**
+	 * Creates a copy of this expression that can be evaluated on another thread at the same time as this one.
+	 * @return copy The copied expression.
+	 */
+
+	public CompiledExpression copy() {
+
+		return new CompiledExpression(this);
+	}
+
+	/**
+	 * Estimates how many bytes this expression takes up, for caching.
+	 * @return bytes The estimated amount of bytes.
+	 */
+
+	long getByteSize() {
+
+		// every node of the tree plus its instruction and constant, the stack, and the text of the equation
+
+		return 64 + program.length * 64L + (stack.length + registers.length) * 8L + source.length() * 2L;
+	}
+
+	/**
+	 * Writes the given node into the program after its operands, or loads it from its register if it is a shared node that
+	 * has already been written.
+	 * @param node The current node.
+	 * @param depth The amount of operands on the stack before this node runs.
+	 * @param maxDepth The largest amount of operands on the stack so far.
+	 * @param next Holds the index of the next instruction and the index of the next free register.
+	 * @param uses The amount of uses of every node.
+	 * @param registerMap Assigns every shared node that has already been written to its register.
+	 * @return maxDepth The largest amount of operands on the stack after this node runs.
+	 */
+
+	private int flatten(ExpressionNode node, int depth, int maxDepth, int[] next, IdentityHashMap<ExpressionNode, Integer> uses,
+			IdentityHashMap<ExpressionNode, Integer> registerMap) {
+
+		Integer register = registerMap.get(node);
+
+		if (register != null) {
+
+			program[next[0]] = LOAD;
+
+			slots[next[0]] = register;
+
+			next[0]++;
+
+			return Math.max(maxDepth, depth + 1);
+		}
+
+		if (node.getLeft() != null) {
+
+			maxDepth = flatten(node.getLeft(), depth, maxDepth, next, uses, registerMap);
+		}
+
+		if (node.getRight() != null) {
+
+			maxDepth = flatten(node.getRight(), depth + 1, maxDepth, next, uses, registerMap);
+		}
+
+		program[next[0]] = node.getType();
+
+		constants[next[0]] = node.getValue();
+
+		if (node.getType() == ExpressionNode.VARIABLE) {
+
+			slots[next[0]] = (int) node.getValue();
+		}
+
+		next[0]++;
+
+		if (node.getLeft() != null && uses.get(node) > 1) {
+
+			registerMap.put(node, next[1]);
+
+			program[next[0]] = STORE;
+
+			slots[next[0]] = next[1]++;
+
+			next[0]++;
+		}
+
+		return Math.max(maxDepth, depth + 1);
+	}
+
+	/**
+	 * Evaluates the expression at the given x-axis value, with the generated class of the expression if it has one.
+	 * @param x The current x-axis value.
+	 * @return result The evaluated number.
+	 */
+
+	public double evaluate(double x) {
+
+		if (function != null) {
+
+			return function.applyAsDouble(x);
+		}
+
+		// a function of x never reads y
+
+		return evaluate(x, Double.NaN);
+	}
+
+	/**
+	 * Makes evaluate(double) call the given class generated for this expression instead of running the program, for this
+	 * expression and every copy made from now on. The class stays loaded as long as any of them is used, so the caller
+	 * decides how long it lives by how long it keeps the expression. Only a function of x can be given a class, since the
+	 * class computes a single result from x alone.
+	 * @param function The operator returned by the bytecode generator for this expression, or null to run the program.
+	 */
+
+	void setFunction(DoubleUnaryOperator function) {
+
+		if (function != null && form != FUNCTION) {
+
+			throw new IllegalArgumentException("Only a function of x can be evaluated by a generated class.");
+		}
+
+		this.function = function;
+	}
+
+	/**
+	 * Evaluates the expression at the given point of the graph. The parameter of a parametric or polar equation is given
+	 * as x.
+	 * @param x The current x-axis value, or the parameter.
+	 * @param y The current y-axis value.
+	 * @return result The evaluated number, the first result if there are several.
+	 */
+
+	public double evaluate(double x, double y) {
+
+		int top = -1;
+
+		for (int i = 0; i < program.length; ++i) {
+
+			switch (program[i]) {
+
+				case ExpressionNode.NUMBER:
+
+					stack[++top] = constants[i];
+
+					break;
+
+				case ExpressionNode.VARIABLE:
+
+					stack[++top] = slots[i] == ExpressionNode.Y ? y : x;
+
+					break;
+
+				case STORE:
+
+					registers[slots[i]] = stack[top];
+
+					break;
+
+				case LOAD:
+
+					stack[++top] = registers[slots[i]];
+
+					break;
+
+				case ExpressionNode.NEGATE:
+
+					stack[top] = -stack[top];
+
+					break;
+
+				case ExpressionNode.LOG:
+
+					stack[top] = Math.log(stack[top]);
+
+					break;
+
+				case ExpressionNode.ADD:
+
+					top--;
+
+					stack[top] += stack[top + 1];
+
+					break;
+
+				case ExpressionNode.SUBTRACT:
+
+					top--;
+
+					stack[top] -= stack[top + 1];
+
+					break;
+
+				case ExpressionNode.MULTIPLY:
+
+					top--;
+
+					stack[top] *= stack[top + 1];
+
+					break;
+
+				case ExpressionNode.DIVIDE:
+
+					top--;
+
+					stack[top] /= stack[top + 1];
+
+					break;
+
+				case ExpressionNode.POWER:
+
+					top--;
+
+					stack[top] = Math.pow(stack[top], stack[top + 1]);
+
+					break;
+
+				default:
+
+					throw new IllegalStateException("Invalid node type: " + program[i]);
+			}
+		}
+
+		return stack[0];
+	}
+
+	/**
+	 * Evaluates the expression at every given x-axis value in a single call. Every instruction of the program is applied to
+	 * the whole array in a single loop over primitive doubles. Sums, differences, products, quotients, and negations use
+	 * the Vector API when its module is there, and otherwise plain loops that the JIT compiler turns into vector
+	 * instructions where it can. The y variable is not a number, and only the first result is written.
+	 * @param xs The x-axis values.
+	 * @param ys The array the evaluated numbers are written to, at least as long as xs.
+	 */
+
+	public void evaluate(double[] xs, double[] ys) {
+
+		if (ys.length < xs.length) {
+
+			throw new IllegalArgumentException("Output array is shorter than the input array.");
+		}
+
+		int length = xs.length;
+
+		if (columns == null || columns[0].length != length) {
+
+			columns = new double[stack.length][length];
+
+			registerColumns = new double[registers.length][length];
+		}
+
+		int top = -1;
+
+		for (int i = 0; i < program.length; ++i) {
+
+			int type = program[i];
+
+			if (type == ExpressionNode.NUMBER) {
+
+				Arrays.fill(columns[++top], constants[i]);
+
+				continue;
+			}
+
+			else if (type == ExpressionNode.VARIABLE) {
+
+				if (slots[i] != ExpressionNode.Y) {
+
+					System.arraycopy(xs, 0, columns[++top], 0, length);
+				}
+
+				else {
+
+					Arrays.fill(columns[++top], Double.NaN);
+				}
+
+				continue;
+			}
+
+			else if (type == STORE) {
+
+				System.arraycopy(columns[top], 0, registerColumns[slots[i]], 0, length);
+
+				continue;
+			}
+
+			else if (type == LOAD) {
+
+				System.arraycopy(registerColumns[slots[i]], 0, columns[++top], 0, length);
+
+				continue;
+			}
+
+			else if (type == ExpressionNode.NEGATE) {
+
+				double[] a = columns[top];
+
+				if (VECTORIZED) {
+
+					VectorKernel.negate(a, length);
+
+					continue;
+				}
+
+				for (int j = 0; j < length; ++j) {
+
+					a[j] = -a[j];
+				}
+
+				continue;
+			}
+
+			else if (type == ExpressionNode.LOG) {
+
+				double[] a = columns[top];
+
+				for (int j = 0; j < length; ++j) {
+
+					a[j] = Math.log(a[j]);
+				}
+
+				continue;
+			}
+
+			top--;
+
+			double[] a = columns[top];
+
+			double[] b = columns[top + 1];
+
+			// the Vector API is only touched when its module is there, so the class using it is never loaded otherwise
+
+			if (VECTORIZED && VectorKernel.apply(type, a, b, length)) {
+
+				continue;
+			}
+
+			switch (type) {
+
+				case ExpressionNode.ADD:
+
+					for (int j = 0; j < length; ++j) {
+
+						a[j] += b[j];
+					}
+
+					break;
+
+				case ExpressionNode.SUBTRACT:
+
+					for (int j = 0; j < length; ++j) {
+
+						a[j] -= b[j];
+					}
+
+					break;
+
+				case ExpressionNode.MULTIPLY:
+
+					for (int j = 0; j < length; ++j) {
+
+						a[j] *= b[j];
+					}
+
+					break;
+
+				case ExpressionNode.DIVIDE:
+
+					for (int j = 0; j < length; ++j) {
+
+						a[j] /= b[j];
+					}
+
+					break;
+
+				case ExpressionNode.POWER:
+
+					for (int j = 0; j < length; ++j) {
+
+						a[j] = Math.pow(a[j], b[j]);
+					}
+
+					break;
+
+				default:
+
+					throw new IllegalStateException("Invalid node type: " + type);
+			}
+		}
+
+		System.arraycopy(columns[0], 0, ys, 0, length);
+	}
+
+	/**
+	 * Creates a stream of the values of the expression at count evenly spaced x-axis values, from the first given one to
+	 * exactly the last. Nothing is evaluated until the stream is consumed, and then only a block of values at a time, so
+	 * reducing billions of values takes next to no memory. A parallel stream splits the range between threads. The
+	 * stream evaluates copies of this expression, so it can be consumed while this expression is used elsewhere.
+	 * @param from The first x-axis value.
+	 * @param to The last x-axis value.
+	 * @param count The amount of x-axis values.
+	 * @return stream The sequential stream of values in the order of the x-axis values.
+	 */
+
+	public DoubleStream stream(double from, double to, long count) {
+
+		if (count < 0) {
+
+			throw new IllegalArgumentException("The amount of values cannot be negative.");
+		}
+
+		return StreamSupport.doubleStream(new ExpressionSpliterator(this, from, to, count, 0, count), false);
+	}
+
+	/**
+	 * Gets the equation this expression was compiled from, with every number written the same way.
+	 * @return source The normalized equation.
+	 */
+
+	public String getSource() {
+
+		return source;
+	}
+
+	/**
+	 * Gets the result with the given index computed by the last evaluation at a single value, such as the y part of a
+	 * parametric equation.
+	 * @param index The index of the result, in the order the parts of the equation are written.
+	 * @return result The evaluated number.
+	 */
+
+	public double getResult(int index) {
+
+		return stack[index];
+	}
+
+	/**
+	 * Gets the amount of results the expression computes.
+	 * @return resultCount The amount of results, 2 for a parametric equation and 1 for any other.
+	 */
+
+	public int getResultCount() {
+
+		return roots.length;
+	}
+
+	/**
+	 * Gets the form of the equation, which decides how it is plotted: FUNCTION, RELATION, PARAMETRIC, or POLAR.
+	 * @return form The form of the equation.
+	 */
+
+	public int getForm() {
+
+		return form;
+	}
+
+	/**
+	 * Gets the program of the expression.
+	 * @return program The instructions in postfix order.
+	 */
+
+	int[] getProgram() {
+
+		return program;
+	}
+
+	/**
+	 * Gets the numbers pushed by the instructions of the program.
+	 * @return constants The number of every instruction that is a number.
+	 */
+
+	double[] getConstants() {
+
+		return constants;
+	}
+
+	/**
+	 * Gets the registers used by the instructions of the program.
+	 * @return slots The register or variable of every instruction that uses one.
+	 */
+
+	int[] getSlots() {
+
+		return slots;
+	}
+
+	/**
+	 * Gets the amount of registers the program uses.
+	 * @return registerCount The amount of registers.
+	 */
+
+	int getRegisterCount() {
+
+		return registers.length;
+	}
+
+	/**
+	 * Gets the largest amount of operands on the stack while the program runs.
+	 * @return stackSize The size of the stack.
+	 */
+
+	int getStackSize() {
+
+		return stack.length;
+	}
+
+	/**
+	 * Gets the root of the optimized expression of the first result, in which equal subexpressions are shared.
+	 * @return root The root node.
+	 */
+
+	ExpressionNode getRoot() {
+
+		return roots[0];
+	}
+}
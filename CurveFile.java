@@ -0,0 +1,572 @@
+package application;
+
+import java.io.Closeable;
+
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+
+import java.nio.ByteOrder;
+
+import java.nio.DoubleBuffer;
+
+import java.nio.IntBuffer;
+
+import java.nio.MappedByteBuffer;
+
+import java.nio.channels.FileChannel;
+
+import java.nio.file.Files;
+
+import java.nio.file.Path;
+
+import java.nio.file.StandardCopyOption;
+
+import java.nio.file.StandardOpenOption;
+
+import java.util.ArrayList;
+
+import java.util.Arrays;
+
+import java.util.List;
+
+/**
+ * Writes sampled curves to a simple columnar binary file and reads them back by mapping the file into memory, so opening
+ * a file with a hundred million points takes no longer than opening one with a hundred: nothing is parsed or copied, and
+ * the operating system only loads the parts of the file that are actually read. Every number is little-endian. The file
+ * starts with a header of four ints, the magic number, the version, the amount of curves, and 0, followed by a directory
+ * of five longs per curve: its amount of points, its amount of segments, and the positions within the file of its column
+ * of x-axis values, its column of y-axis values, and its table of segments. Each column holds the values of every point
+ * of the curve as contiguous doubles, and the table of segments holds the index of the first point of every segment as
+ * an int, so a segment is a contiguous range of both columns and a new segment starts wherever the curve was broken, such
+ * as at an asymptote. Columns are 8-byte aligned and may be followed by unused space, which lets a writer reserve room for
+ * as many points as it may write before it knows how many it will. A file is always written next to the file it replaces
+ * under another name and only moved over it once it is complete, so curves that are still mapped from the old file, such
+ * as the ones that were imported from it, keep reading the old points instead of a file that was truncated beneath them.
+ *
+ * @author Eitan Tuchin
+ *
+ */
+
+public class CurveFile {
+
+	/**
+	 * The first int of every curve file, which reads GCRV.
+	 */
+
+	static final int MAGIC = 0x56524347;
+
+	/**
+	 * The version of the format.
+	 */
+
+	static final int VERSION = 1;
+
+	/**
+	 * The length of the header in bytes.
+	 */
+
+	static final int HEADER_BYTES = 16;
+
+	/**
+	 * The length of the directory entry of a single curve in bytes.
+	 */
+
+	static final int ENTRY_BYTES = 40;
+
+	/**
+	 * The most points a single curve may have, which keeps every column within a single mapping.
+	 */
+
+	static final long MAX_POINTS = Integer.MAX_VALUE / Double.BYTES;
+
+	/**
+	 * Writes the given curves to a file, replacing it if it already exists.
+	 * @param path The path of the file.
+	 * @param curves The curves to write.
+	 * @throws IOException The file cannot be written.
+	 */
+
+	public static void write(Path path, List<SampledCurve> curves) throws IOException {
+
+		long[] capacities = new long[curves.size()];
+
+		for (int i = 0; i < capacities.length; i++) {
+
+			capacities[i] = curves.get(i).size();
+		}
+
+		try (Writer writer = new Writer(path, capacities)) {
+
+			for (int i = 0; i < capacities.length; i++) {
+
+				writer.addAll(i, curves.get(i));
+			}
+		}
+	}
+
+	/**
+	 * Maps a curve file into memory and returns its curves, which read their points straight from the mapped file. The
+	 * curves stay readable after this method returns, until they are no longer used.
+	 * @param path The path of the file.
+	 * @return curves The curves within the file in order.
+	 * @throws IOException The file cannot be read or is not a valid curve file.
+	 */
+
+	public static List<SampledCurve> read(Path path) throws IOException {
+
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+
+			long length = channel.size();
+
+			if (length < HEADER_BYTES) {
+
+				throw new IOException("Not a curve file: " + path);
+			}
+
+			ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+
+			if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+
+				throw new IOException("Not a curve file of version " + VERSION + ": " + path);
+			}
+
+			int curveCount = header.getInt(8);
+
+			if (curveCount < 0 || HEADER_BYTES + (long) curveCount * ENTRY_BYTES > length) {
+
+				throw new IOException("Damaged curve file: " + path);
+			}
+
+			ByteBuffer directory = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES, (long) curveCount * ENTRY_BYTES)
+					.order(ByteOrder.LITTLE_ENDIAN);
+
+			ArrayList<SampledCurve> curves = new ArrayList<>(curveCount);
+
+			for (int i = 0; i < curveCount; i++) {
+
+				int entry = i * ENTRY_BYTES;
+
+				long size = directory.getLong(entry), segmentCount = directory.getLong(entry + 8);
+
+				long xOffset = directory.getLong(entry + 16), yOffset = directory.getLong(entry + 24);
+
+				long segmentOffset = directory.getLong(entry + 32);
+
+				if (size < 0 || size > MAX_POINTS || segmentCount < 0 || segmentCount > size
+						|| !fits(xOffset, size * Double.BYTES, length) || !fits(yOffset, size * Double.BYTES, length)
+						|| !fits(segmentOffset, segmentCount * Integer.BYTES, length)) {
+
+					throw new IOException("Damaged curve file: " + path);
+				}
+
+				// the segments are small enough to copy, while the columns stay within the mapped file
+
+				int[] segmentStarts = new int[(int) segmentCount];
+
+				map(channel, segmentOffset, segmentCount * Integer.BYTES).asIntBuffer().get(segmentStarts);
+
+				if (!isValid(segmentStarts, size)) {
+
+					throw new IOException("Damaged curve file: " + path);
+				}
+
+				DoubleBuffer xs = map(channel, xOffset, size * Double.BYTES).asDoubleBuffer();
+
+				DoubleBuffer ys = map(channel, yOffset, size * Double.BYTES).asDoubleBuffer();
+
+				curves.add(new SampledCurve(xs, ys, segmentStarts));
+			}
+
+			return curves;
+		}
+	}
+
+	/**
+	 * Maps part of a file into memory for reading.
+	 * @param channel The channel of the file.
+	 * @param offset The position of the part within the file.
+	 * @param length The length of the part in bytes.
+	 * @return buffer The mapped part, little-endian.
+	 * @throws IOException The file cannot be mapped.
+	 */
+
+	private static ByteBuffer map(FileChannel channel, long offset, long length) throws IOException {
+
+		return channel.map(FileChannel.MapMode.READ_ONLY, offset, length).order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	/**
+	 * Checks if a part of a file lies within the file.
+	 * @param offset The position of the part.
+	 * @param length The length of the part in bytes.
+	 * @param fileLength The length of the file in bytes.
+	 * @return true/false If the whole part lies within the file.
+	 */
+
+	private static boolean fits(long offset, long length, long fileLength) {
+
+		return offset >= 0 && offset <= fileLength - length;
+	}
+
+	/**
+	 * Checks if a table of segments splits a curve into segments that are not empty.
+	 * @param segmentStarts The index of the first point of every segment.
+	 * @param size The amount of points of the curve.
+	 * @return true/false If the first segment starts at 0 and every segment starts after the one before and before the end.
+	 */
+
+	private static boolean isValid(int[] segmentStarts, long size) {
+
+		for (int s = 0; s < segmentStarts.length; s++) {
+
+			if (segmentStarts[s] >= size || (s == 0 ? segmentStarts[s] != 0 : segmentStarts[s] <= segmentStarts[s - 1])) {
+
+				return false;
+			}
+		}
+
+		return segmentStarts.length > 0 || size == 0;
+	}
+
+	/**
+	 * Rounds a length in bytes up to the next multiple of 8.
+	 * @param length The length in bytes.
+	 * @return aligned The rounded length.
+	 */
+
+	private static long align(long length) {
+
+		return (length + 7) & ~7L;
+	}
+
+	/**
+	 * Writes curves into a curve file point by point, straight into the columns mapped into memory, so a curve can be
+	 * written while it is being evaluated without ever being held on the heap as a whole. Room is reserved for a given
+	 * amount of points per curve, of which any amount may be written, and the directory and the tables of segments are
+	 * written once the writer is closed, when the finished file replaces the file at the given path.
+	 */
+
+	public static class Writer implements Closeable {
+
+		/**
+		 * The channel of the file.
+		 */
+
+		private final FileChannel channel;
+
+		/**
+		 * The path the file replaces once it is complete.
+		 */
+
+		private final Path target;
+
+		/**
+		 * The temporary file within the same directory that the curves are written to.
+		 */
+
+		private final Path temporary;
+
+		/**
+		 * The mapped columns of every curve, kept to flush them when the writer is closed.
+		 */
+
+		private final MappedByteBuffer[] xMappings, yMappings;
+
+		/**
+		 * The columns of every curve.
+		 */
+
+		private final DoubleBuffer[] xColumns, yColumns;
+
+		/**
+		 * The positions within the file of the columns of every curve.
+		 */
+
+		private final long[] xOffsets, yOffsets;
+
+		/**
+		 * The amount of points written to every curve so far.
+		 */
+
+		private final int[] sizes;
+
+		/**
+		 * The index of the first point of every segment of every curve so far.
+		 */
+
+		private final int[][] segmentStarts;
+
+		/**
+		 * The amount of segments of every curve so far.
+		 */
+
+		private final int[] segmentCounts;
+
+		/**
+		 * Whether the next point of every curve starts a new segment.
+		 */
+
+		private final boolean[] broken;
+
+		/**
+		 * The position right after the last column.
+		 */
+
+		private final long dataEnd;
+
+		/**
+		 * Creates a temporary file next to the given path and reserves room for the given amount of points of every curve.
+		 * @param path The path of the file, which is replaced once the writer is closed if it already exists.
+		 * @param capacities The most points every curve may have.
+		 * @throws IOException The file cannot be created.
+		 */
+
+		public Writer(Path path, long[] capacities) throws IOException {
+
+			int count = capacities.length;
+
+			xMappings = new MappedByteBuffer[count];
+
+			yMappings = new MappedByteBuffer[count];
+
+			xColumns = new DoubleBuffer[count];
+
+			yColumns = new DoubleBuffer[count];
+
+			xOffsets = new long[count];
+
+			yOffsets = new long[count];
+
+			sizes = new int[count];
+
+			segmentStarts = new int[count][4];
+
+			segmentCounts = new int[count];
+
+			broken = new boolean[count];
+
+			Arrays.fill(broken, true);
+
+			for (long capacity : capacities) {
+
+				if (capacity < 0 || capacity > MAX_POINTS) {
+
+					throw new IOException("A curve file cannot hold more than " + MAX_POINTS + " points per curve");
+				}
+			}
+
+			target = path.toAbsolutePath();
+
+			// within the same directory, so the finished file can be moved over the old one in a single step
+
+			temporary = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+
+			try {
+
+				channel = FileChannel.open(temporary, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+			}
+
+			catch (IOException e) {
+
+				Files.deleteIfExists(temporary);
+
+				throw e;
+			}
+
+			long position = align(HEADER_BYTES + (long) count * ENTRY_BYTES);
+
+			try {
+
+				for (int i = 0; i < count; i++) {
+
+					long length = capacities[i] * Double.BYTES;
+
+					xOffsets[i] = position;
+
+					xMappings[i] = channel.map(FileChannel.MapMode.READ_WRITE, position, length);
+
+					xColumns[i] = xMappings[i].order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+
+					position += length;
+
+					yOffsets[i] = position;
+
+					yMappings[i] = channel.map(FileChannel.MapMode.READ_WRITE, position, length);
+
+					yColumns[i] = yMappings[i].order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+
+					position += length;
+				}
+			}
+
+			catch (IOException e) {
+
+				channel.close();
+
+				Files.deleteIfExists(temporary);
+
+				throw e;
+			}
+
+			dataEnd = position;
+		}
+
+		/**
+		 * Adds a point to the end of the given curve. A point that is not a finite number breaks the curve instead.
+		 * @param curve The index of the curve.
+		 * @param x The x-axis value.
+		 * @param y The y-axis value.
+		 */
+
+		public void add(int curve, double x, double y) {
+
+			if (!SampledCurve.isValid(y)) {
+
+				broken[curve] = true;
+
+				return;
+			}
+
+			int size = sizes[curve];
+
+			if (broken[curve]) {
+
+				addSegment(curve, size);
+
+				broken[curve] = false;
+			}
+
+			xColumns[curve].put(size, x);
+
+			yColumns[curve].put(size, y);
+
+			sizes[curve] = size + 1;
+		}
+
+		/**
+		 * Ends the current segment of the given curve so that its next point starts a new one.
+		 * @param curve The index of the curve.
+		 */
+
+		public void breakSegment(int curve) {
+
+			broken[curve] = true;
+		}
+
+		/**
+		 * Adds every point of a sampled curve to the end of the given curve in bulk, starting a new segment.
+		 * @param curve The index of the curve.
+		 * @param other The sampled curve.
+		 */
+
+		public void addAll(int curve, SampledCurve other) {
+
+			int size = sizes[curve];
+
+			for (int s = 0; s < other.getSegmentCount(); s++) {
+
+				addSegment(curve, size + other.getSegmentStart(s));
+			}
+
+			DoubleBuffer xs = xColumns[curve].duplicate(), ys = yColumns[curve].duplicate();
+
+			xs.position(size);
+
+			ys.position(size);
+
+			other.copyTo(xs, ys);
+
+			sizes[curve] = size + other.size();
+
+			broken[curve] = true;
+		}
+
+		/**
+		 * Records that a segment of the given curve starts at the given point.
+		 * @param curve The index of the curve.
+		 * @param start The index of the first point of the segment.
+		 */
+
+		private void addSegment(int curve, int start) {
+
+			if (segmentCounts[curve] == segmentStarts[curve].length) {
+
+				segmentStarts[curve] = Arrays.copyOf(segmentStarts[curve], segmentCounts[curve] * 2);
+			}
+
+			segmentStarts[curve][segmentCounts[curve]++] = start;
+		}
+
+		/**
+		 * Writes the tables of segments and the directory, flushes the columns to the file, closes it, and moves it over the
+		 * file at the given path.
+		 * @throws IOException The file cannot be written or moved.
+		 */
+
+		@Override
+		public void close() throws IOException {
+
+			try {
+
+				int count = sizes.length;
+
+				ByteBuffer directory = ByteBuffer.allocate(HEADER_BYTES + count * ENTRY_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+
+				directory.putInt(MAGIC).putInt(VERSION).putInt(count).putInt(0);
+
+				long position = dataEnd;
+
+				for (int i = 0; i < count; i++) {
+
+					ByteBuffer table = ByteBuffer.allocate(segmentCounts[i] * Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+
+					IntBuffer starts = table.asIntBuffer();
+
+					starts.put(segmentStarts[i], 0, segmentCounts[i]);
+
+					writeFully(table, position);
+
+					directory.putLong(sizes[i]).putLong(segmentCounts[i]).putLong(xOffsets[i]).putLong(yOffsets[i]).putLong(position);
+
+					position += align(table.capacity());
+
+					xMappings[i].force();
+
+					yMappings[i].force();
+				}
+
+				directory.flip();
+
+				writeFully(directory, 0);
+
+				channel.close();
+
+				Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			}
+
+			finally {
+
+				channel.close();
+
+				Files.deleteIfExists(temporary);
+			}
+		}
+
+		/**
+		 * Writes the whole buffer at the given position of the file.
+		 * @param buffer The buffer to write.
+		 * @param position The position within the file.
+		 * @throws IOException The file cannot be written.
+		 */
+
+		private void writeFully(ByteBuffer buffer, long position) throws IOException {
+
+			while (buffer.hasRemaining()) {
+
+				position += channel.write(buffer, position);
+			}
+		}
+	}
+}
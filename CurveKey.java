@@ -0,0 +1,90 @@
+package application;
+
+/**
+ * Identifies a sampled curve by everything it depends on: the normalized equation, the visible part of both axes, and
+ * the size of the graph in pixels. Two keys are equal only if sampling them would give the exact same curve.
+ *
+ * @author Eitan Tuchin
+ *
+ */
+
+public final class CurveKey {
+
+	/**
+	 * The equation with every number written the same way.
+	 */
+
+	private final String equation;
+
+	/**
+	 * The visible part of both axes.
+	 */
+
+	private final double xLower, xUpper, yLower, yUpper;
+
+	/**
+	 * The size of the graph in pixels.
+	 */
+
+	private final double width, height;
+
+	/**
+	 * Initializes the key.
+	 * @param equation The normalized equation.
+	 * @param xLower The lower bound of the visible x-axis.
+	 * @param xUpper The upper bound of the visible x-axis.
+	 * @param yLower The lower bound of the visible y-axis.
+	 * @param yUpper The upper bound of the visible y-axis.
+	 * @param width The width of the graph in pixels.
+	 * @param height The height of the graph in pixels.
+	 */
+
+	public CurveKey(String equation, double xLower, double xUpper, double yLower, double yUpper, double width, double height) {
+
+		this.equation = equation;
+
+		this.xLower = xLower;
+
+		this.xUpper = xUpper;
+
+		this.yLower = yLower;
+
+		this.yUpper = yUpper;
+
+		this.width = width;
+
+		this.height = height;
+	}
+
+	@Override
+	public boolean equals(Object other) {
+
+		if (!(other instanceof CurveKey)) {
+
+			return false;
+		}
+
+		CurveKey key = (CurveKey) other;
+
+		return equation.equals(key.equation) && xLower == key.xLower && xUpper == key.xUpper && yLower == key.yLower
+				&& yUpper == key.yUpper && width == key.width && height == key.height;
+	}
+
+	@Override
+	public int hashCode() {
+
+		int hash = equation.hashCode();
+
+		hash = 31 * hash + Double.hashCode(xLower);
+
+		hash = 31 * hash + Double.hashCode(xUpper);
+
+		hash = 31 * hash + Double.hashCode(yLower);
+
+		hash = 31 * hash + Double.hashCode(yUpper);
+
+		hash = 31 * hash + Double.hashCode(width);
+
+		return 31 * hash + Double.hashCode(height);
+	}
+}
@@ -0,0 +1,202 @@
+package application;
+
+import java.util.IdentityHashMap;
+
+/**
+ * Differentiates a parsed expression tree with respect to x symbolically. The derivative of every node is a new
+ * expression tree built from its operands and their derivatives by the sum, product, quotient, power, and chain rules,
+ * so the result is exact, with no finite differences and no loss of precision. The derivative reuses the nodes of the
+ * expression wherever a rule needs their values, and once the optimizer has shared them the compiled program of the
+ * derivative computes each of those values a single time. Only the derivative is returned; the expression itself is
+ * still compiled and evaluated as a program of its own. A derivative that is known to be 0, such as that of a number,
+ * is never built, so constant parts of an expression cost nothing extra.
+ *
+ * @author Eitan Tuchin
+ *
+ */
+
+public class Differentiator {
+
+	/**
+	 * The derivative of every node differentiated so far, so a node that is used more than once is only differentiated
+	 * once. A node whose derivative is 0 is assigned null.
+	 */
+
+	private final IdentityHashMap<ExpressionNode, ExpressionNode> derivatives = new IdentityHashMap<>();
+
+	/**
+	 * Differentiates the given expression tree with respect to x.
+	 * @param root The root of the expression tree, a function of x.
+	 * @return derivative The root of the expression tree of the derivative, which shares nodes with the given tree.
+	 */
+
+	public static ExpressionNode differentiate(ExpressionNode root) {
+
+		ExpressionNode derivative = new Differentiator().derivative(root);
+
+		return derivative == null ? new ExpressionNode(0) : derivative;
+	}
+
+	/**
+	 * Gets the derivative of the given node, differentiating it the first time.
+	 * @param node The current node.
+	 * @return derivative The derivative, or null if it is 0.
+	 */
+
+	private ExpressionNode derivative(ExpressionNode node) {
+
+		if (derivatives.containsKey(node)) {
+
+			return derivatives.get(node);
+		}
+
+		ExpressionNode derivative = differentiateNode(node);
+
+		derivatives.put(node, derivative);
+
+		return derivative;
+	}
+
+	/**
+	 * Applies the chain rule to the given node.
+	 * @param node The current node.
+	 * @return derivative The derivative, or null if it is 0.
+	 */
+
+	private ExpressionNode differentiateNode(ExpressionNode node) {
+
+		ExpressionNode a = node.getLeft(), b = node.getRight();
+
+		switch (node.getType()) {
+
+			case ExpressionNode.NUMBER:
+
+				return null;
+
+			case ExpressionNode.VARIABLE:
+
+				return node.getValue() == ExpressionNode.X ? new ExpressionNode(1) : null;
+
+			case ExpressionNode.NEGATE:
+
+				return negate(derivative(a));
+
+			case ExpressionNode.LOG:
+
+				// (ln a)' = a' / a
+
+				return divide(derivative(a), a);
+
+			case ExpressionNode.ADD:
+
+				return add(derivative(a), derivative(b));
+
+			case ExpressionNode.SUBTRACT:
+
+				return add(derivative(a), negate(derivative(b)));
+
+			case ExpressionNode.MULTIPLY:
+
+				// (ab)' = a'b + ab'
+
+				return add(multiply(derivative(a), b), multiply(a, derivative(b)));
+
+			case ExpressionNode.DIVIDE:
+
+				// (a/b)' = (a' - (a/b)b') / b, which reuses the quotient instead of squaring b
+
+				return divide(add(derivative(a), negate(multiply(node, derivative(b)))), b);
+
+			case ExpressionNode.POWER:
+
+				return differentiatePower(node);
+
+			default:
+
+				throw new IllegalArgumentException("Invalid node type: " + node.getType());
+		}
+	}
+
+	/**
+	 * Applies the chain rule to a power. A constant exponent gives (a^c)' = c a^(c-1) a', which the optimizer turns into
+	 * multiplications for a small whole exponent, and a variable exponent gives (a^b)' = a^b (b' ln a + b a' / a).
+	 * @param node The power node.
+	 * @return derivative The derivative, or null if it is 0.
+	 */
+
+	private ExpressionNode differentiatePower(ExpressionNode node) {
+
+		ExpressionNode a = node.getLeft(), b = node.getRight();
+
+		ExpressionNode da = derivative(a), db = derivative(b);
+
+		if (db == null) {
+
+			if (da == null) {
+
+				return null;
+			}
+
+			ExpressionNode power = new ExpressionNode(ExpressionNode.POWER, a,
+					new ExpressionNode(ExpressionNode.SUBTRACT, b, new ExpressionNode(1)));
+
+			return multiply(multiply(b, power), da);
+		}
+
+		ExpressionNode log = new ExpressionNode(ExpressionNode.LOG, a, null);
+
+		return multiply(node, add(multiply(db, log), divide(multiply(b, da), a)));
+	}
+
+	/**
+	 * Adds two derivatives, either of which may be 0.
+	 * @param a The first derivative, or null.
+	 * @param b The second derivative, or null.
+	 * @return sum The sum, or null if both are 0.
+	 */
+
+	private static ExpressionNode add(ExpressionNode a, ExpressionNode b) {
+
+		if (a == null || b == null) {
+
+			return a == null ? b : a;
+		}
+
+		return new ExpressionNode(ExpressionNode.ADD, a, b);
+	}
+
+	/**
+	 * Negates a derivative that may be 0.
+	 * @param a The derivative, or null.
+	 * @return negative The negative, or null if the derivative is 0.
+	 */
+
+	private static ExpressionNode negate(ExpressionNode a) {
+
+		return a == null ? null : new ExpressionNode(ExpressionNode.NEGATE, a, null);
+	}
+
+	/**
+	 * Multiplies two nodes, either of which may be a derivative that is 0.
+	 * @param a The first node, or null.
+	 * @param b The second node, or null.
+	 * @return product The product, or null if either is 0.
+	 */
+
+	private static ExpressionNode multiply(ExpressionNode a, ExpressionNode b) {
+
+		return a == null || b == null ? null : new ExpressionNode(ExpressionNode.MULTIPLY, a, b);
+	}
+
+	/**
+	 * Divides a derivative that may be 0 by a node.
+	 * @param a The derivative, or null.
+	 * @param b The divisor.
+	 * @return quotient The quotient, or null if the derivative is 0.
+	 */
+
+	private static ExpressionNode divide(ExpressionNode a, ExpressionNode b) {
+
+		return a == null ? null : new ExpressionNode(ExpressionNode.DIVIDE, a, b);
+	}
+}
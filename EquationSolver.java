@@ -1,784 +1,587 @@
 package application;
 
 import java.util.ArrayList;
-import java.util.EmptyStackException;
-import java.util.Stack;
 
 /**
- * Solves an equation that is provided by the user by compartmentalizing different pieces of the equation into different tokens firstly.
- * Next uses a stack of operators and numbers to allow for simpler computation. Has various helper methods to solve edge cases that can
- * appear in special types of equations. Any equation that is inputted by the user that is illegal ends up being recognized as an exception.
- * Checks for infinite loops throughout.
- * 
+ * Solves an equation that is provided by the user by compartmentalizing different pieces of the equation into different
+ * tokens firstly. Next parses the tokens into an expression tree that follows the order of operations, including
+ * implicit multiplication and negatives, optimizes that tree, and compiles it so it can be evaluated at any x-axis
+ * value. An equation is either a function of x, which may be written with or without y= in front, a relation between x
+ * and y such as x^2+y^2=25, which is compiled as the difference of its two sides, a parametric equation such as
+ * (t^2, t^3) that gives both axes as functions of t, or a polar equation such as r=t that gives the distance from the
+ * origin as a function of the angle t, which may also be written as θ. Within a function of x, d/dx(...) is replaced by
+ * the exact derivative of the expression within its parentheses. Any equation that is inputted by the user that is
+ * illegal ends up being recognized as an exception.
+ *
  * @author Eitan Tuchin
  *
  */
 
 public class EquationSolver {
-	
+
+	/**
+	 * The most levels of parentheses, derivatives, and negatives an equation may be nested in, which keeps the parser, which
+	 * goes several calls deeper per level, well within the stack of any thread.
+	 */
+
+	static final int MAX_NESTING = 256;
+
 	/**
-	 * A list of individual or multiple characters within the String provided by the user in order.
+	 * The deepest an expression tree may be, counting every operation of a chain such as x+x+x on its own, since the
+	 * optimizer, the compiled expression, and the bytecode generator each go one call deeper per level of the tree.
 	 */
-	
-	private ArrayList<String> tokens;
+
+	static final int MAX_DEPTH = 1024;
 
 	/**
-	 * Keeps track of how operators position themselves relative to each other within the expression.
+	 * The compiled expressions of the equations compiled most recently, by normalized equation, so retyping or switching
+	 * back to an equation does not parse it again.
 	 */
-	
-	private Stack<String> operators = new Stack<>();
+
+	private static final LruCache<String, CompiledExpression> CACHE = new LruCache<>(1024, 8L << 20,
+			CompiledExpression::getByteSize);
 
 	/**
-	 * Keeps track of how operands position themselves relative to each other within the expression.
+	 * The tokens of the equation that is currently being compiled in order.
 	 */
-	
-	private Stack<Double> numbers = new Stack<>();
+
+	private ArrayList<Token> tokens;
 
 	/**
-	 * Counts how many open parentheses are in the expression.
+	 * The position of the next token to be read while an equation is being compiled.
 	 */
-	
-	private int countOpenParen;
-	
+
+	private int position;
+
 	/**
-	 * Counts how many closed parentheses are in the expression.
+	 * The amount of levels the parser is currently nested in while an equation is being compiled.
 	 */
-	
-	private int countClosedParen;
+
+	private int nesting;
 
 	/**
-	 * The maximum amount of iterations allowed within a loop. Checks for infinite loops.
+	 * The form of the equation that is currently being compiled.
 	 */
-	
-	private static final int MAX_ITERATIONS_ALLOWED = 50;
+
+	private int form;
 
 	/**
-	 * Tokenizes the given equation, identifies special sequences of tokens, and evaluates the expression. 
-	 * Checks for illegal expressions.
+	 * Compiles the given equation and evaluates it at the given x-axis value. Checks for illegal expressions.
 	 * @param equation The user inputted equation.
 	 * @param x The curent x-axis value.
 	 * @return result The evaluated number.
 	 * @throws Exception All possible thrown exceptions at any stage within the evaluation process.
 	 */
-	
-	public double parseEquation(String equation, double x) throws Exception {
-		
-		try {
-			
-			// Tokenize the expression
-			
-			tokens = tokenize(equation, x);
-
-			countParentheses();
 
-			if (countOpenParen != countClosedParen) {
-				
-				throw new Exception();
-			}
-
-			// find decimals and make sure they will operate correctly in this system
-			
-			identifyDecimals();
-
-			// find fractions and make sure they will operate correctly in this system
-			
-			identifyFractions();
-
-			// find negatives and make sure they will operate correctly in this system
-			
-			identifyNegatives();
-
-			// Use a simple stack-based approach to evaluate the expression
-			
-			double result = evaluateExpression();
-			
-			return result;
-		} 
-		catch (Exception e) {
-			
-			// if any exception occurs we throw an exception to show that the user inputted an illegal expression
-			
-			e.printStackTrace();
-			
-			throw new Exception();
+	public double parseEquation(String equation, double x) throws Exception {
 
-		}
+		return compile(equation).evaluate(x);
 	}
 
 	/**
-	 * Finds all sequences of tokens within the array that comprise a decimal number and updates the array accordingly.
-	 * @throws Exception The index is out of bounds.
+	 * Evaluates the given equation at every given x-axis value in a single call. The equation is only tokenized and parsed
+	 * once for the whole array. Checks for illegal expressions.
+	 * @param equation The user inputted equation.
+	 * @param xs The x-axis values.
+	 * @param ys The array the evaluated numbers are written to, at least as long as xs.
+	 * @throws Exception The equation is not a legal expression.
 	 */
-	
-	private void identifyDecimals() throws Exception {
-		
-		for (int i = 0; i <= tokens.size() - 1; ++i) {
-			
-			try {
-				
-				// check for all possible combinations of decimals occuring within the expression
-				
-				if (tokens.get(i).equals(".") && isNumeric(tokens.get(i + 1))) {
-					
-					if (tokens.get(i).equals(".") && i == 0) {
-						
-						replace(i);
-					} 
-					
-					else if (tokens.get(i).equals(".") && i != 0) {
-						
-						if (isNumeric(tokens.get(i - 1))) {
-							
-							// replace tokens with decimal number
-							
-							String replacement = tokens.get(i - 1) + "." + tokens.get(i + 1);
-							
-							tokens.remove(i - 1);
-							
-							tokens.remove(i - 1);
-							
-							tokens.remove(i - 1);
-							
-							tokens.add(i - 1, replacement);
-						} 
-						
-						else {
-							
-							replace(i);
-						}
-					}
-				} 
-				
-				// a decimal point must be followed by a integer
-				
-				else if (tokens.get(i).equals(".") && (!isNumeric(tokens.get(i + 1)))) {
-					
-					throw new Exception();
-				}
-			} 
-			
-			catch (IndexOutOfBoundsException e) {
-				
-				throw new Exception();
-			}
 
-		}
+	public void evaluate(String equation, double[] xs, double[] ys) throws Exception {
+
+		compile(equation).evaluate(xs, ys);
 	}
 
 	/**
-	 * Finds all sequences of tokens within the array that comprise a fractional number and updates the array accordingly.
+	 * Tokenizes the given equation once and parses it into an expression tree that can be evaluated at any x-axis value
+	 * without tokenizing the equation again. Equations that were compiled before, even if their numbers were written
+	 * differently, are not parsed again but copied from a cache. Checks for illegal expressions.
+	 * @param equation The user inputted equation.
+	 * @return expression The compiled expression, which belongs to the caller alone.
+	 * @throws Exception The equation is not a legal expression.
 	 */
-	
-	private void identifyFractions() {
-		
-		for (int k = 1; k < tokens.size() - 1; ++k) {
-			
-			try {
-				
-				// checks if the tokens around index k form a fraction and takes into account precedence of other operators
-				
-				if (tokens.get(k).equals("/") && isNumeric(tokens.get(k - 1)) && isNumeric(tokens.get(k + 1))
-						&& !hasPrecedence(tokens.get(k + 2), tokens.get(k))) {
-					
-					Double numerator = Double.parseDouble(tokens.get(k - 1));
-					
-					Double denominator = Double.parseDouble(tokens.get(k + 1));
-					
-					Double replacement = numerator / denominator;
-					
-					// replace tokens with fractional number
-					
-					tokens.remove(k - 1);
-					
-					tokens.remove(k);
-					
-					tokens.remove(k - 1);
-					
-					tokens.add(k - 1, String.valueOf(replacement));
-				}
-			} 
-			
-			catch (IndexOutOfBoundsException e) {
-			}
+
+	public CompiledExpression compile(String equation) throws Exception {
+
+		String normalized = tokenize(equation);
+
+		CompiledExpression expression = CACHE.get(normalized);
+
+		if (expression == null) {
+
+			expression = parse(normalized);
+
+			CACHE.put(normalized, expression);
 		}
+
+		// the cached expression is never evaluated itself, so every caller can use its copy on any thread
+
+		return expression.copy();
 	}
 
 	/**
-	 * Finds all sequences of tokens within the array that comprise a negative number and updates the array accordingly.
+	 * Tokenizes and parses the given equation without looking it up in the cache.
+	 * @param equation The user inputted equation.
+	 * @return expression The compiled expression.
+	 * @throws Exception The equation is not a legal expression.
 	 */
-	
-	private void identifyNegatives() {
-
-		// evaluates all possibilities of there being a negative number within the expression
-		
-		for (int i = 0; i < tokens.size() - 1; ++i) {
-			
-			String curr = tokens.get(i);
-			
-			if (tokens.size() > 2) {
-				
-				if (i == 0) {
-					
-					if (curr.equals("-")) {
-						
-						tokens.add(i, "0");
-					}
-				} 
-				else {
-					
-					if (curr.equals("-") && !isNumeric(tokens.get(i - 1))) {
-						
-						curr += "1";
-						
-						tokens.remove(i);
-						
-						tokens.add(i, curr);
-					}
-				}
 
-			} 
-			else {
-				
-				if (curr.equals("-")) {
-					
-					replace(i);
-				}
-			}
-		}
+	CompiledExpression compileUncached(String equation) throws Exception {
+
+		return parse(tokenize(equation));
 	}
 
 	/**
-	 * Replaces token at given index with 2 or more combined tokens.
-	 * @param index The given index in the token array.
+	 * Gets the cache of compiled expressions, to check how well it works.
+	 * @return cache The cache of compiled expressions by normalized equation.
 	 */
-	
-	private void replace(int index) {
-
-		String replacement = tokens.get(index) + tokens.get(index + 1);
-		
-		if (replacement.contains("--")) {
-			
-			replacement = replacement.substring(2);
-		}
-		// for decimals
-		else if (replacement.charAt(0) == '.') {
-			
-			replacement = "0" + replacement;
-		}
 
-		tokens.remove(index);
-		
-		tokens.remove(index);
+	public static LruCache<String, CompiledExpression> getCache() {
 
-		tokens.add(index, replacement);
+		return CACHE;
 	}
 
 	/**
-	 * Evaluates the expression by iterating through the token array and identifying each token individually. Uses helper methods 
-	 * to perform things like order of operations, applying operators to selected operators and operands within their respective stacks,
-	 * and some other ones. Handles implicit multiplication and identifies illegal expressions.
-	 * @return number The operand that is left at the top and bottom of the stack.
-	 * @throws Exception An infinite loop has been detected.
+	 * Tokenizes the given equation and finds out which form it has from how it is written. An equation of the form y=f(x)
+	 * is turned into f(x), so it is plotted and cached like any other function of x.
+	 * @param equation The user inputted equation.
+	 * @return normalized The normalized equation.
+	 * @throws Exception The equation has an illegal character, or uses a variable, an equals sign, a comma, an r, or d/dx where
+	 * its form does not allow it.
 	 */
-	
-	private double evaluateExpression() throws Exception {
-		
-		// will hold numbers that are evaluated later because of location within sets of parentheses 
-		
-		ArrayList<Double> toBeEvaluated = new ArrayList<>();
-
-		for (int i = 0; i < tokens.size(); ++i) {
-
-			String token = tokens.get(i);
-
-			if (isNumeric(token)) {
-				
-				numbers.push(Double.parseDouble(token));
-			} 
-			
-			else if (isOperator(token)) {
-				
-				try {
-					
-					// begin to evaluate expression if order of operations holds
-					
-					while (!operators.isEmpty() && hasPrecedence(operators.peek(), token)) {
-						
-						applyOperator(numbers.elementAt(numbers.size() - 2),	
-								numbers.elementAt(numbers.size() - 1), operators.pop(), numbers.size() - 2);
+
+	private String tokenize(String equation) throws Exception {
+
+		tokens = Lexer.tokenize(equation);
+
+		int equals = -1, comma = -1, radius = -1, derivative = -1;
+
+		// the amount of uses of x, y, and t
+
+		int[] variables = new int[3];
+
+		for (int i = 0; i < tokens.size(); i++) {
+
+			Token token = tokens.get(i);
+
+			switch (token.getType()) {
+
+				case Token.EQUALS:
+
+					if (equals >= 0) {
+
+						throw new Exception("Unexpected = at index " + token.getOffset());
 					}
-					
-					operators.push(token);
-					
-					// check again if operations need to be done after updated operator stack
-					
-					if (hasPrecedence(operators.peek(), operators.elementAt(operators.size() - 2))
-							&& !operators.elementAt(operators.size() - 2).equals("(")) {
-						
-						numbers.push(Double.parseDouble(tokens.get(i + 1)));
-						
-						i++;
-						
-						applyOperator(numbers.elementAt(numbers.size() - 2),
-								numbers.elementAt(numbers.size() - 1), operators.pop(), numbers.size() - 2);
+
+					equals = i;
+
+					break;
+
+				case Token.COMMA:
+
+					comma = comma < 0 ? i : comma;
+
+					break;
+
+				case Token.RADIUS:
+
+					if (radius >= 0 || i != 0) {
+
+						throw new Exception("Unexpected r at index " + token.getOffset());
 					}
-				} 
-				
-				catch (IndexOutOfBoundsException | EmptyStackException e) {
-				}
-			} 
-			
-			else if (token.equals("(")) {
-				
-				operators.push(token);
-			} 
-			
-			else if (token.equals(")")) {
-				
-				// reverse nums stack for easier evaluation
-				
-				numbers = reverseNums();
-				
-				int index = findPosition();
-
-				int k = 0;
-				
-				// operators between two sets of parentheses
-				
-				int operatorsBetween = numOperatorsBetween();
-				
-				while (k < operatorsBetween) {
-					
-					k++;
-					
-					toBeEvaluated.add(numbers.pop());
-				}
 
-				numbers = reverseNums();
-				
-				// apply order of operations starting from first number after first parentheses encountered
+					radius = i;
 
-				orderOfOperations(operators.size() - index);
+					break;
 
-				for (int m = toBeEvaluated.size() - 1; m >= 0; --m) {
-					
-					numbers.add(0, toBeEvaluated.get(m));
-				}
-				
-				toBeEvaluated.removeAll(toBeEvaluated);
+				case Token.VARIABLE:
 
-			}
-			
-			// check for implicit multiplication
-			
-			if (i + 1 < tokens.size() && isImplicitMultiplication(tokens.get(i), tokens.get(i + 1))) {
+					variables[(int) token.getValue()]++;
+
+					break;
 
-				operators.push("*");
+				case Token.DERIVATIVE:
+
+					derivative = derivative < 0 ? i : derivative;
+
+					break;
 			}
 		}
 
-		try {
-			
-			int iterationNum = 0;
-			
-			while (!operators.isEmpty()) {
-				
-				// Check for infnite loop
-				
-				iterationNum++;
-				
-				if (iterationNum > MAX_ITERATIONS_ALLOWED) {
-					
-					throw new Exception();
-				}
-				
-				// evaluate last bits left
-				
-				orderOfOperations(0);
+		if (radius >= 0 || comma >= 0) {
+
+			// r= followed by a function of t, or a pair of functions of t within parentheses
+
+			form = radius >= 0 ? CompiledExpression.POLAR : CompiledExpression.PARAMETRIC;
+
+			if (radius >= 0 ? equals != 1 : equals >= 0) {
+
+				throw new Exception(equals < 0 ? "Expected = at index 1" : "Unexpected = at index " + tokens.get(equals).getOffset());
+			}
+
+			if (radius < 0 && tokens.get(0).getType() != Token.OPEN_PAREN) {
+
+				throw new Exception("Unexpected , at index " + tokens.get(comma).getOffset());
+			}
+
+			if (variables[ExpressionNode.X] > 0 || variables[ExpressionNode.Y] > 0) {
+
+				throw new Exception("Parametric and polar equations use t instead of x and y");
 			}
-		} 
-		
-		catch (IndexOutOfBoundsException e) {
 		}
 
-		return numbers.pop();
-	}
+		else {
 
-	/**
-	 * Performs order of operations based on a given starting position within the operator stack which can be interpreted
-	 * as evaluating the expression up until the the the first open parentheses is found (in most cases). Uses a priority system to 
-	 * first evaluate higher priority operators within the expression.
-	 * @param startingPos The given starting position within the operator stack.
-	 * @throws Exception An infinite loop has been detected.
-	 */
-	
-	private void orderOfOperations(int startingPos) throws Exception {
-		int iterationNum = 0;
-
-		// start with highest priority possible
-		
-		int currentPriority = 3;
-		
-		while (numbers.size() > 1) {
-
-			int i = startingPos;
-			
-			while (i < operators.size()) {
-				
-				// Check for infnite loop
-				
-				iterationNum++;
-				
-				if (iterationNum > MAX_ITERATIONS_ALLOWED) {
-					
-					throw new Exception();
-				}
+			if (variables[ExpressionNode.T] > 0) {
 
-				int index = i - startingPos + 1;
-				
-				try {
-					
-					// apply the operator if priority matches 
-					
-					if (getPriority(operators.elementAt(i)) == currentPriority) {
-						
-						String currentOperator = operators.elementAt(i);
-						
-						applyOperator(numbers.elementAt(index - 1), numbers.elementAt(index), currentOperator, index - 1);
-						
-						operators.remove(i);
-					} 
-					
-					else {
-						
-						i++;
-					}
-				} 
-				
-				catch (IndexOutOfBoundsException e) {
-				}
+				throw new Exception("t can only be used in a parametric or polar equation");
+			}
+
+			form = equals < 0 ? CompiledExpression.FUNCTION : CompiledExpression.RELATION;
+
+			// y= followed by a function of x is the function itself
+
+			if (equals == 1 && variables[ExpressionNode.Y] == 1 && tokens.get(0).getType() == Token.VARIABLE
+					&& tokens.get(0).getValue() == ExpressionNode.Y) {
+
+				tokens = new ArrayList<>(tokens.subList(2, tokens.size()));
+
+				form = CompiledExpression.FUNCTION;
+			}
+
+			else if (equals < 0 && variables[ExpressionNode.Y] > 0) {
+
+				throw new Exception("y can only be used in an equation with =");
 			}
-			
-			currentPriority--;
 		}
-		
-		// remove operator from the stack only if it is an open parentheses
-		
-		if (!operators.isEmpty() && operators.peek().equals("(")) {
-			
-			operators.pop();
+
+		if (derivative >= 0 && form != CompiledExpression.FUNCTION) {
+
+			throw new Exception("d/dx can only be used in a function of x");
 		}
+
+		return Lexer.normalize(tokens);
 	}
 
 	/**
-	 * Counts the number of operators between two parentheses.
-	 * @return count The number of operators.
+	 * Parses the tokens of an equation into an expression tree and compiles it. The two sides of a relation are parsed
+	 * separately and subtracted, so the relation holds wherever the expression is 0, and the two parts of a parametric
+	 * equation are parsed into an expression tree each.
+	 * @param normalized The normalized equation the tokens belong to.
+	 * @return expression The compiled expression.
+	 * @throws Exception The tokens do not form a legal expression.
 	 */
-	
-	private int numOperatorsBetween() {
-		
-		int count = 0;
-		
-		for (int i = operators.size() - 1; i >= 0; --i) {
-			
-			if (operators.elementAt(i).equals("(")) {
-				
-				for (int j = i - 1; j >= 0; --j) {
-					
-					if (!operators.elementAt(j).equals("(")) {
-						
-						count++;
-					} 
-					
-					else {
-						
-						break;
-					}
+
+	private CompiledExpression parse(String normalized) throws Exception {
+
+		nesting = 0;
+
+		try {
+
+			ExpressionNode[] roots;
+
+			if (form == CompiledExpression.PARAMETRIC) {
+
+				position = 1;
+
+				ExpressionNode first = parseSum();
+
+				expect(Token.COMMA, ',');
+
+				ExpressionNode second = parseSum();
+
+				expect(Token.CLOSED_PAREN, ')');
+
+				roots = new ExpressionNode[] { first, second };
+			}
+
+			else {
+
+				// skip the r= in front of a polar equation
+
+				position = form == CompiledExpression.POLAR ? 2 : 0;
+
+				ExpressionNode root = parseSum();
+
+				if (position < tokens.size() && tokens.get(position).getType() == Token.EQUALS) {
+
+					position++;
+
+					root = operation(ExpressionNode.SUBTRACT, root, parseSum());
 				}
+
+				roots = new ExpressionNode[] { root };
 			}
-		}
-		
-		return count;
-	}
 
-	/**
-	 * Finds the position of the first open parentheses within the operator stack.
-	 * @return index The index of that open parentheses.
-	 */
-	
-	private int findPosition() {
-		
-		int index = 0;
-		
-		for (int i = operators.size() - 1; i >= 0; --i) {
-			
-			if (operators.elementAt(i).equals("(")) {
-				
-				return index;
+			// every token must be part of the expression tree
+
+			if (position != tokens.size()) {
+
+				throw new Exception("Unexpected token at index " + tokens.get(position).getOffset());
 			}
-			
-			index++;
+
+			// fold constants, turn small powers into multiplications, and share equal subexpressions
+
+			return new CompiledExpression(normalized, form, ExpressionOptimizer.optimize(roots));
+		}
+		catch (IndexOutOfBoundsException e) {
+
+			// the equation ended while an operand was still expected
+
+			throw new Exception("Incomplete equation");
 		}
-		
-		return -1;
 	}
 
 	/**
-	 * Counts how many parentheses of both types that are in the expression.
+	 * Skips over the token at the current position, which must be of the given type.
+	 * @param type The expected type of token.
+	 * @param character The character of the expected token.
+	 * @throws Exception The token at the current position has a different type.
 	 */
-	
-	private void countParentheses() {
-		
-		for (int i = 0; i < tokens.size(); ++i) {
-			
-			if (tokens.get(i).equals("(")) {
-				
-				countOpenParen++;
-			} 
-			
-			else if (tokens.get(i).equals(")")) {
-				
-				countClosedParen++;
-			}
+
+	private void expect(int type, char character) throws Exception {
+
+		if (tokens.get(position).getType() != type) {
+
+			throw new Exception("Expected " + character + " at index " + tokens.get(position).getOffset());
 		}
+
+		position++;
 	}
 
 	/**
-	 * Reverses the numbers stack.
-	 * @return retStk The reversed numbers stack.
+	 * Enters one more level of nesting before an operand within parentheses, a derivative, or a negative is parsed.
+	 * @throws Exception The equation is nested more deeply than it may be.
 	 */
-	
-	private Stack<Double> reverseNums() {
-		
-		Stack<Double> retStk = new Stack<>();
-		
-		while (!numbers.isEmpty()) {
-			
-			retStk.push(numbers.pop());
-		
+
+	private void nest() throws Exception {
+
+		if (++nesting > MAX_NESTING) {
+
+			throw new Exception("Nested more than " + MAX_NESTING + " levels deep");
 		}
-		
-		return retStk;
 	}
 
 	/**
-	 * Checks for implicit multiplication between two tokens within the token array.
-	 * @param currentToken The current token at index i within the evaluateExpression() method.
-	 * @param nextToken The token at index i + 1 within the evaluateExpression() method.
-	 * @return true/false If the relationship between the two tokens holds true for this case.
+	 * Creates a node of the given type with the given operands, as long as the expression tree stays shallow enough.
+	 * @param type The type of the node.
+	 * @param left The left operand.
+	 * @param right The right operand or null.
+	 * @return node The new node.
+	 * @throws Exception The expression tree would be deeper than it may be.
 	 */
-	
-	private boolean isImplicitMultiplication(String currentToken, String nextToken) {
-		
-		// Check if implicit multiplication is needed between currentToken and nextToken
-		
-		return (isNumeric(currentToken) || currentToken.equals(")")) && (isNumeric(nextToken) || nextToken.equals("("));
+
+	private static ExpressionNode operation(int type, ExpressionNode left, ExpressionNode right) throws Exception {
+
+		return limit(new ExpressionNode(type, left, right));
 	}
 
 	/**
-	 * Determines if the first given operator has higher or lower priority over the second operator.
-	 * @param op1 The first operator.
-	 * @param op2 The second operator.
-	 * @return true/false Depending on op1's and op2's priorities.
+	 * Checks that an expression tree is not deeper than it may be.
+	 * @param node The root of the expression tree.
+	 * @return node The root of the expression tree.
+	 * @throws Exception The expression tree is deeper than it may be.
 	 */
-	
-	private boolean hasPrecedence(String op1, String op2) {
-		
-		int precedenceOp1 = getPriority(op1);
-		
-		int precedenceOp2 = getPriority(op2);
-
-		return precedenceOp1 > precedenceOp2;
+
+	private static ExpressionNode limit(ExpressionNode node) throws Exception {
+
+		if (node.getDepth() > MAX_DEPTH) {
+
+			throw new Exception("More than " + MAX_DEPTH + " operations deep");
+		}
+
+		return node;
 	}
 
 	/**
-	 * Gets the priority of the given operator using a switch.
-	 * @param operator The given operator.
-	 * @return priority An integer assigned to given operator.
+	 * Parses a sequence of additions and subtractions starting at the current token position.
+	 * @return node The parsed expression tree.
+	 * @throws Exception An illegal sequence of tokens has been identified.
 	 */
-	
-	private int getPriority(String operator) {
-		
-		switch (operator) {
-			
-			case "^":
-				
-				return 3;
-			
-			case "*":
-			case "/":
-				
-				return 2;
-				
-			case "+":
-			case "-":
-				
-				return 1;
-				
-			default:
-				
-				return 0;
+
+	private ExpressionNode parseSum() throws Exception {
+
+		ExpressionNode node = parseProduct();
+
+		while (position < tokens.size() && (tokens.get(position).isOperator('+') || tokens.get(position).isOperator('-'))) {
+
+			int type = tokens.get(position).isOperator('+') ? ExpressionNode.ADD : ExpressionNode.SUBTRACT;
+
+			position++;
+
+			node = operation(type, node, parseProduct());
 		}
+
+		return node;
 	}
 
 	/**
-	 * Applies the operator given for the two numbers given at given index. Allows for subtraction, addition, multiplication,
-	 *  division, and exponentiation operations.
-	 * @param a The operand to the left of the operator.
-	 * @param b The operand to the right of the operator.
-	 * @param operator The given operator.
-	 * @param index The index within the numbers stack.
+	 * Parses a sequence of multiplications and divisions starting at the current token position. Two operands that follow
+	 * each other without an operator between them are multiplied.
+	 * @return node The parsed expression tree.
+	 * @throws Exception An illegal sequence of tokens has been identified.
 	 */
-	
-	private void applyOperator(double a, double b, String operator, int index) {
-		
-		numbers.remove(index);
-		
-		numbers.remove(index);
-		
-		try {
-			
-			switch (operator) {
-				
-				case "+":
-					
-					numbers.add(index, a + b);
-					
-					break;
-				
-				case "-":
-					numbers.add(index, a - b);
-					
-					break;
-				
-				case "*":
-					
-					numbers.add(index, a * b);
-					
-					break;
-				
-				case "/":
-					
-					numbers.add(index, a / b);
-					
-					break;
-				
-				case "^":
-					
-					numbers.add(index, Math.pow(a, b));
-					
-					break;
-				
-				default:
-					
-					throw new IllegalArgumentException("Invalid operator: " + operator);
+
+	private ExpressionNode parseProduct() throws Exception {
+
+		ExpressionNode node = parseNegative();
+
+		while (position < tokens.size()) {
+
+			Token token = tokens.get(position);
+
+			if (token.isOperator('*') || token.isOperator('/')) {
+
+				int type = token.isOperator('*') ? ExpressionNode.MULTIPLY : ExpressionNode.DIVIDE;
+
+				position++;
+
+				node = operation(type, node, parseNegative());
+			}
+
+			// check for implicit multiplication
+
+			else if (token.getType() == Token.NUMBER || token.getType() == Token.VARIABLE
+					|| token.getType() == Token.OPEN_PAREN || token.getType() == Token.DERIVATIVE) {
+
+				node = operation(ExpressionNode.MULTIPLY, node, parsePower());
+			}
+
+			else {
+
+				break;
 			}
-		} 
-		catch (ArithmeticException e) {
 		}
+
+		return node;
 	}
 
 	/**
-	 * Evaluates whether or not a given token is numeric or not.
-	 * @param str The given token.
-	 * @return true/false If the given string represents a number.
+	 * Parses an operand that may be negated starting at the current token position. A negative binds less tightly than
+	 * exponentiation so -x^2 is the negative of x^2.
+	 * @return node The parsed expression tree.
+	 * @throws Exception An illegal sequence of tokens has been identified.
 	 */
-	
-	private boolean isNumeric(String str) {
-		
-		return str.matches("-?\\d+(\\.\\d+)?");
+
+	private ExpressionNode parseNegative() throws Exception {
+
+		if (tokens.get(position).isOperator('-')) {
+
+			position++;
+
+			nest();
+
+			ExpressionNode operand = parseNegative();
+
+			nesting--;
+
+			return operation(ExpressionNode.NEGATE, operand, null);
+		}
+
+		return parsePower();
 	}
 
 	/**
-	 * Evaluates whether or not a given token is an operator or not.
-	 * @param str The given token.
-	 * @return true/false If the given string represents an operator.
+	 * Parses an operand that may be raised to one or more powers starting at the current token position. Exponents are applied
+	 * from left to right like every other operator so 2^3^2 is (2^3)^2. An exponent may itself be negative.
+	 * @return node The parsed expression tree.
+	 * @throws Exception An illegal sequence of tokens has been identified.
 	 */
-	
-	
-	private boolean isOperator(String str) {
-		
-		return str.matches("[+\\-*/^]");
+
+	private ExpressionNode parsePower() throws Exception {
+
+		ExpressionNode node = parseOperand();
+
+		while (position < tokens.size() && tokens.get(position).isOperator('^')) {
+
+			position++;
+
+			node = operation(ExpressionNode.POWER, node, parseExponent());
+		}
+
+		return node;
 	}
 
 	/**
-	 * Splits the expression into tokens. Replaces all variables with the current x-axis value. Properly identifies integers
-	 * with 2 or more digits. Checks for illegal expressions.
-	 * @param expression The given equation.
-	 * @param x The current x-axis value.
-	 * @return tokenList The array of tokens.
-	 * @throws Exception An illegal character has been identified.
+	 * Parses the operand of an exponent, which may be negated, starting at the current token position.
+	 * @return node The parsed expression tree.
+	 * @throws Exception An illegal sequence of tokens has been identified.
 	 */
-	
-	private ArrayList<String> tokenize(String expression, double x) throws Exception {
-		
-		ArrayList<String> tokenList = new ArrayList<>();
-
-		for (int i = 0; i < expression.length(); ++i) {
-			
-			String currToken = String.valueOf(expression.charAt(i));
-			
-			try {
-				
-				// mechanism to check if an integer has two digits at least and bind those tokens together if it is
-				
-				if (isNumeric(currToken) && isNumeric(String.valueOf(expression.charAt(i - 1)))) {
-					
-					String lastToken = tokenList.get(tokenList.size() - 1);
-					
-					if (isNumeric(lastToken)) {
-						
-						lastToken += expression.charAt(i);
-						
-						tokenList.remove(tokenList.size() - 1);
-						
-						tokenList.add(lastToken);
-					} 
-					
-					else {
-						
-						tokenList.add(currToken);
-					}
-				} 
-				
-				// replace x with the it's current value
-				
-				else if (expression.charAt(i) == 'x') {
-					
-					tokenList.add(String.valueOf(x));
-				}
 
-				else if (isValidInput(expression.charAt(i))) {
-					
-					tokenList.add(currToken);
-				} 
-				
-				else {
-					
-					// if none of the above are true then the user inputted an illegal character
-					
-					throw new Exception();
-				}
-			} 
-			
-			catch (IndexOutOfBoundsException e) {
-				
-				tokenList.add(currToken);
-			}
+	private ExpressionNode parseExponent() throws Exception {
+
+		if (tokens.get(position).isOperator('-')) {
+
+			position++;
+
+			nest();
+
+			ExpressionNode operand = parseExponent();
+
+			nesting--;
+
+			return operation(ExpressionNode.NEGATE, operand, null);
 		}
-		
-		return tokenList;
+
+		return parseOperand();
 	}
 
 	/**
-	 * Checks if the user inputted a valid character into the expression or not.
-	 * @param input The current character in the string expression.
-	 * @return true/false The evaluated boolean depending on the input.
+	 * Parses a single number, a variable, an expression within a set of parentheses, or the derivative of one starting at the
+	 * current token position.
+	 * @return node The parsed expression tree.
+	 * @throws Exception An illegal sequence of tokens has been identified.
 	 */
-	
-	private boolean isValidInput(char input) {
-		
-		return isNumeric(String.valueOf(input)) || input == '(' || input == ')' || input == '*' || input == '/'
-				|| input == '-' || input == '+' || input == '.' || input == '^';
+
+	private ExpressionNode parseOperand() throws Exception {
+
+		Token token = tokens.get(position);
+
+		position++;
+
+		switch (token.getType()) {
+
+			case Token.NUMBER:
+
+				return new ExpressionNode(token.getValue());
+
+			case Token.VARIABLE:
+
+				return ExpressionNode.variable((int) token.getValue());
+
+			case Token.OPEN_PAREN:
+
+				nest();
+
+				ExpressionNode node = parseSum();
+
+				// every open parentheses must be closed
+
+				expect(Token.CLOSED_PAREN, ')');
+
+				nesting--;
+
+				return node;
+
+			case Token.DERIVATIVE:
+
+				expect(Token.OPEN_PAREN, '(');
+
+				nest();
+
+				ExpressionNode inner = parseSum();
+
+				expect(Token.CLOSED_PAREN, ')');
+
+				nesting--;
+
+				// the derivative shares the nodes of the expression, so values that several rules need are computed once
+
+				return limit(Differentiator.differentiate(inner));
+
+			default:
+
+				throw new Exception("Unexpected token at index " + token.getOffset());
+		}
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,222 @@
+package application;
+
+/**
+ * A single node of a parsed equation. A node is either a number, a variable, a negation or natural logarithm of another
+ * node, or one of the binary operators supported by the equation solver applied to two other nodes. The nodes form a
+ * tree that is turned into a program by the compiled expression, so the original String never has to be looked at
+ * again.
+ *
+ * @author Eitan Tuchin
+ *
+ */
+
+public class ExpressionNode {
+
+	/**
+	 * Node type of a constant number.
+	 */
+
+	static final int NUMBER = 0;
+
+	/**
+	 * Node type of a variable, whose value is the index of the variable.
+	 */
+
+	static final int VARIABLE = 1;
+
+	/**
+	 * Node type of an addition.
+	 */
+
+	static final int ADD = 2;
+
+	/**
+	 * Node type of a subtraction.
+	 */
+
+	static final int SUBTRACT = 3;
+
+	/**
+	 * Node type of a multiplication.
+	 */
+
+	static final int MULTIPLY = 4;
+
+	/**
+	 * Node type of a division.
+	 */
+
+	static final int DIVIDE = 5;
+
+	/**
+	 * Node type of an exponentiation.
+	 */
+
+	static final int POWER = 6;
+
+	/**
+	 * Node type of a negation.
+	 */
+
+	static final int NEGATE = 7;
+
+	/**
+	 * Node type of a natural logarithm. It cannot be typed, and is only built when a power with a variable exponent is
+	 * differentiated. Its number follows the register instructions of the compiled expression.
+	 */
+
+	static final int LOG = 10;
+
+	/**
+	 * Index of the x variable.
+	 */
+
+	static final int X = 0;
+
+	/**
+	 * Index of the y variable.
+	 */
+
+	static final int Y = 1;
+
+	/**
+	 * Index of the parameter of a parametric or polar equation, which is read wherever x would be, because such an equation
+	 * never uses x.
+	 */
+
+	static final int T = 2;
+
+	/**
+	 * The type of this node.
+	 */
+
+	private final int type;
+
+	/**
+	 * The value of this node if it is a number, or the index of the variable if it is a variable.
+	 */
+
+	private final double value;
+
+	/**
+	 * The left operand of this node, or the only operand if this node is a negation or a logarithm.
+	 */
+
+	private final ExpressionNode left;
+
+	/**
+	 * The right operand of this node.
+	 */
+
+	private final ExpressionNode right;
+
+	/**
+	 * The amount of nodes on the longest path from this node down to a number or a variable, including both.
+	 */
+
+	private final int depth;
+
+	/**
+	 * Creates a number node.
+	 * @param value The number.
+	 */
+
+	ExpressionNode(double value) {
+
+		this(NUMBER, value, null, null);
+	}
+
+	/**
+	 * Creates a variable node.
+	 * @param index The index of the variable.
+	 * @return node The variable node.
+	 */
+
+	static ExpressionNode variable(int index) {
+
+		return new ExpressionNode(VARIABLE, index, null, null);
+	}
+
+	/**
+	 * Creates a node of the given type with the given operands.
+	 * @param type The type of the node.
+	 * @param left The left operand or null.
+	 * @param right The right operand or null.
+	 */
+
+	ExpressionNode(int type, ExpressionNode left, ExpressionNode right) {
+
+		this(type, 0, left, right);
+	}
+
+	/**
+	 * Creates a node with all of its properties.
+	 * @param type The type of the node.
+	 * @param value The value of the node if it is a number, or the index of the variable if it is a variable.
+	 * @param left The left operand or null.
+	 * @param right The right operand or null.
+	 */
+
+	private ExpressionNode(int type, double value, ExpressionNode left, ExpressionNode right) {
+
+		this.type = type;
+
+		this.value = value;
+
+		this.left = left;
+
+		this.right = right;
+
+		this.depth = 1 + Math.max(left == null ? 0 : left.depth, right == null ? 0 : right.depth);
+	}
+
+	/**
+	 * Gets the type of this node.
+	 * @return type The type of this node.
+	 */
+
+	int getType() {
+
+		return type;
+	}
+
+	/**
+	 * Gets the value of this node.
+	 * @return value The number if this node is a number, or the index of the variable if it is a variable.
+	 */
+
+	double getValue() {
+
+		return value;
+	}
+
+	/**
+	 * Gets the left operand of this node.
+	 * @return left The left operand.
+	 */
+
+	ExpressionNode getLeft() {
+
+		return left;
+	}
+
+	/**
+	 * Gets the right operand of this node.
+	 * @return right The right operand.
+	 */
+
+	ExpressionNode getRight() {
+
+		return right;
+	}
+	/**
+	 * Gets the depth of the expression tree below this node.
+	 * @return depth The amount of nodes on the longest path from this node down to a number or a variable.
+	 */
+
+	int getDepth() {
+
+		return depth;
+	}
+
+}
@@ -0,0 +1,392 @@
+package application;
+
+import java.util.HashMap;
+
+import java.util.IdentityHashMap;
+
+/**
+ * Rewrites a parsed expression tree into one that does less work for every x-axis value. Subtrees without a variable are
+ * folded into a single number, powers with a small whole exponent become multiplications by repeated squaring instead of
+ * calls to Math.pow, and operations that change nothing, such as multiplying by 1, adding 0, or raising to the power of 1,
+ * are removed. Every node is built only once for each distinct operator and pair of operands, so equal subexpressions
+ * become one shared node, and the compiled program evaluates a shared node once and reuses its result. In (x+1)^2*(x+1),
+ * x+1 is computed a single time.
+ *
+ * @author Eitan Tuchin
+ *
+ */
+
+public class ExpressionOptimizer {
+
+	/**
+	 * The largest whole exponent, positive or negative, that is turned into multiplications.
+	 */
+
+	static final int MAX_POWER = 32;
+
+	/**
+	 * Every node built so far by its operator and operands.
+	 */
+
+	private final HashMap<NodeKey, ExpressionNode> nodes = new HashMap<>();
+
+	/**
+	 * Optimizes the given expression tree.
+	 * @param root The root of the parsed expression tree.
+	 * @return root The root of the optimized expression, in which equal subexpressions are shared.
+	 */
+
+	public static ExpressionNode optimize(ExpressionNode root) {
+
+		return new ExpressionOptimizer().rewrite(root);
+	}
+
+	/**
+	 * Optimizes the given expression trees together, so a subexpression they have in common is shared between them as
+	 * well, like t^2 in (t^2, t^3).
+	 * @param roots The roots of the parsed expression trees.
+	 * @return roots The roots of the optimized expressions in the same order.
+	 */
+
+	public static ExpressionNode[] optimize(ExpressionNode[] roots) {
+
+		ExpressionOptimizer optimizer = new ExpressionOptimizer();
+
+		ExpressionNode[] optimized = new ExpressionNode[roots.length];
+
+		for (int i = 0; i < roots.length; i++) {
+
+			optimized[i] = optimizer.rewrite(roots[i]);
+		}
+
+		return optimized;
+	}
+
+	/**
+	 * Counts how many times every node of one or more expressions is used as an operand, plus one for every root. A shared
+	 * node is counted once for every distinct node that uses it, and the nodes below it are only counted once.
+	 * @param roots The roots of the expressions.
+	 * @return uses The amount of uses of every node.
+	 */
+
+	static IdentityHashMap<ExpressionNode, Integer> countUses(ExpressionNode... roots) {
+
+		IdentityHashMap<ExpressionNode, Integer> uses = new IdentityHashMap<>();
+
+		for (ExpressionNode root : roots) {
+
+			countUses(root, uses);
+		}
+
+		return uses;
+	}
+
+	/**
+	 * Counts one use of the given node, and of its operands the first time the node is seen.
+	 * @param node The current node.
+	 * @param uses The amount of uses of every node so far.
+	 */
+
+	private static void countUses(ExpressionNode node, IdentityHashMap<ExpressionNode, Integer> uses) {
+
+		Integer count = uses.get(node);
+
+		uses.put(node, count == null ? 1 : count + 1);
+
+		if (count == null) {
+
+			if (node.getLeft() != null) {
+
+				countUses(node.getLeft(), uses);
+			}
+
+			if (node.getRight() != null) {
+
+				countUses(node.getRight(), uses);
+			}
+		}
+	}
+
+	/**
+	 * Optimizes the operands of the given node and then the node itself.
+	 * @param node The current node.
+	 * @return node The optimized node.
+	 */
+
+	private ExpressionNode rewrite(ExpressionNode node) {
+
+		if (node.getLeft() == null) {
+
+			return intern(node);
+		}
+
+		ExpressionNode left = rewrite(node.getLeft());
+
+		ExpressionNode right = node.getRight() == null ? null : rewrite(node.getRight());
+
+		return simplify(node.getType(), left, right);
+	}
+
+	/**
+	 * Builds the simplest node that applies the given operator to the given, already optimized, operands.
+	 * @param type The type of the operator node.
+	 * @param left The left operand, or the only operand of a negative or a logarithm.
+	 * @param right The right operand, or null for a negative.
+	 * @return node The optimized node.
+	 */
+
+	private ExpressionNode simplify(int type, ExpressionNode left, ExpressionNode right) {
+
+		// an operator applied to numbers only is a number as well
+
+		if (isNumber(left) && (right == null || isNumber(right))) {
+
+			return number(apply(type, left.getValue(), right == null ? 0 : right.getValue()));
+		}
+
+		switch (type) {
+
+			case ExpressionNode.ADD:
+
+				if (isNumber(right, 0)) {
+
+					return left;
+				}
+
+				if (isNumber(left, 0)) {
+
+					return right;
+				}
+
+				break;
+
+			case ExpressionNode.SUBTRACT:
+
+				if (isNumber(right, 0)) {
+
+					return left;
+				}
+
+				break;
+
+			case ExpressionNode.MULTIPLY:
+
+				if (isNumber(right, 1)) {
+
+					return left;
+				}
+
+				if (isNumber(left, 1)) {
+
+					return right;
+				}
+
+				break;
+
+			case ExpressionNode.DIVIDE:
+
+				if (isNumber(right, 1)) {
+
+					return left;
+				}
+
+				break;
+
+			case ExpressionNode.POWER:
+
+				if (isNumber(right) && right.getValue() == Math.rint(right.getValue()) && Math.abs(right.getValue()) <= MAX_POWER) {
+
+					int exponent = (int) right.getValue();
+
+					// anything to the power of 0 is 1, even a number that is not finite
+
+					if (exponent == 0) {
+
+						return number(1);
+					}
+
+					else if (exponent > 0) {
+
+						return power(left, exponent);
+					}
+
+					return intern(new ExpressionNode(ExpressionNode.DIVIDE, number(1), power(left, -exponent)));
+				}
+
+				break;
+
+			case ExpressionNode.NEGATE:
+
+				// the negative of a negative is the original operand
+
+				if (left.getType() == ExpressionNode.NEGATE) {
+
+					return left.getLeft();
+				}
+
+				break;
+		}
+
+		return intern(new ExpressionNode(type, left, right));
+	}
+
+	/**
+	 * Builds the given power of the given base with as few multiplications as possible by repeatedly squaring it.
+	 * @param base The base.
+	 * @param exponent The exponent, at least 1.
+	 * @return node The node that computes the power.
+	 */
+
+	private ExpressionNode power(ExpressionNode base, int exponent) {
+
+		if (exponent == 1) {
+
+			return base;
+		}
+
+		ExpressionNode half = power(base, exponent / 2);
+
+		ExpressionNode square = intern(new ExpressionNode(ExpressionNode.MULTIPLY, half, half));
+
+		return exponent % 2 == 0 ? square : intern(new ExpressionNode(ExpressionNode.MULTIPLY, square, base));
+	}
+
+	/**
+	 * Applies an operator to numbers exactly like the compiled program does.
+	 * @param type The type of the operator node.
+	 * @param a The left operand, or the only operand of a negative or a logarithm.
+	 * @param b The right operand.
+	 * @return result The computed number.
+	 */
+
+	private static double apply(int type, double a, double b) {
+
+		switch (type) {
+
+			case ExpressionNode.ADD:
+
+				return a + b;
+
+			case ExpressionNode.SUBTRACT:
+
+				return a - b;
+
+			case ExpressionNode.MULTIPLY:
+
+				return a * b;
+
+			case ExpressionNode.DIVIDE:
+
+				return a / b;
+
+			case ExpressionNode.POWER:
+
+				return Math.pow(a, b);
+
+			case ExpressionNode.NEGATE:
+
+				return -a;
+
+			case ExpressionNode.LOG:
+
+				return Math.log(a);
+
+			default:
+
+				throw new IllegalArgumentException("Invalid node type: " + type);
+		}
+	}
+
+	/**
+	 * Gets the shared node for the given number.
+	 * @param value The number.
+	 * @return node The number node.
+	 */
+
+	private ExpressionNode number(double value) {
+
+		return intern(new ExpressionNode(value));
+	}
+
+	/**
+	 * Gets the node built before with the same operator and operands as the given one, or the given node if there is none.
+	 * @param node The node, whose operands have already been interned.
+	 * @return node The shared node.
+	 */
+
+	private ExpressionNode intern(ExpressionNode node) {
+
+		return nodes.computeIfAbsent(new NodeKey(node), key -> node);
+	}
+
+	/**
+	 * Checks if the given node is a number.
+	 * @param node The node.
+	 * @return true/false If the node is a number.
+	 */
+
+	private static boolean isNumber(ExpressionNode node) {
+
+		return node.getType() == ExpressionNode.NUMBER;
+	}
+
+	/**
+	 * Checks if the given node is the given number.
+	 * @param node The node.
+	 * @param value The number.
+	 * @return true/false If the node is a number equal to the value.
+	 */
+
+	private static boolean isNumber(ExpressionNode node, double value) {
+
+		return isNumber(node) && node.getValue() == value;
+	}
+
+	/**
+	 * Identifies a node by its type, its number, and the identity of its operands, which are already shared.
+	 */
+
+	private static final class NodeKey {
+
+		/**
+		 * The node this key was made for.
+		 */
+
+		private final ExpressionNode node;
+
+		/**
+		 * Initializes the key.
+		 * @param node The node, whose operands have already been interned.
+		 */
+
+		NodeKey(ExpressionNode node) {
+
+			this.node = node;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+
+			if (!(other instanceof NodeKey)) {
+
+				return false;
+			}
+
+			ExpressionNode otherNode = ((NodeKey) other).node;
+
+			return node.getType() == otherNode.getType()
+					&& Double.doubleToLongBits(node.getValue()) == Double.doubleToLongBits(otherNode.getValue())
+					&& node.getLeft() == otherNode.getLeft() && node.getRight() == otherNode.getRight();
+		}
+
+		@Override
+		public int hashCode() {
+
+			int hash = 31 * node.getType() + Double.hashCode(node.getValue());
+
+			hash = 31 * hash + System.identityHashCode(node.getLeft());
+
+			return 31 * hash + System.identityHashCode(node.getRight());
+		}
+	}
+}
@@ -0,0 +1,208 @@
+package application;
+
+import java.util.Spliterator;
+
+import java.util.function.DoubleConsumer;
+
+/**
+ * Evaluates a compiled expression lazily at evenly spaced x-axis values, as the source of a stream. The x-axis values
+ * are exactly the ones the batch evaluator tabulates for the same grid, and the last one is always the end of the
+ * range. Values are evaluated a block at a time with the batch evaluation of the expression, only once they are asked
+ * for, so a stream over billions of points never holds more than a single block. The range is split in half for
+ * parallel streams, and every half evaluates its own copy of the expression, so the halves can run on different
+ * threads.
+ *
+ * @author Eitan Tuchin
+ *
+ */
+
+public class ExpressionSpliterator implements Spliterator.OfDouble {
+
+	/**
+	 * The amount of values evaluated at a time.
+	 */
+
+	static final int BLOCK_SIZE = 1024;
+
+	/**
+	 * The copy of the expression only this spliterator evaluates.
+	 */
+
+	private final CompiledExpression expression;
+
+	/**
+	 * The first and last x-axis values of the whole range.
+	 */
+
+	private final double from, to;
+
+	/**
+	 * The amount of x-axis values of the whole range.
+	 */
+
+	private final long points;
+
+	/**
+	 * The index of the next x-axis value that has not been evaluated yet.
+	 */
+
+	private long index;
+
+	/**
+	 * The index after the last x-axis value of the range of this spliterator.
+	 */
+
+	private final long end;
+
+	/**
+	 * The x-axis values of the current block, and the values of the expression at them.
+	 */
+
+	private double[] xs, ys;
+
+	/**
+	 * The index of the next value of the current block to hand out, and the amount of values in the block.
+	 */
+
+	private int position, length;
+
+	/**
+	 * Initializes the spliterator for part of the range.
+	 * @param expression The compiled expression, which is copied.
+	 * @param from The first x-axis value of the whole range.
+	 * @param to The last x-axis value of the whole range.
+	 * @param points The amount of x-axis values of the whole range.
+	 * @param first The index of the first x-axis value of the part.
+	 * @param end The index after the last x-axis value of the part.
+	 */
+
+	ExpressionSpliterator(CompiledExpression expression, double from, double to, long points, long first, long end) {
+
+		this.expression = expression.copy();
+
+		this.from = from;
+
+		this.to = to;
+
+		this.points = points;
+
+		this.index = first;
+
+		this.end = end;
+	}
+
+	@Override
+	public boolean tryAdvance(DoubleConsumer action) {
+
+		if (position == length && !evaluateBlock()) {
+
+			return false;
+		}
+
+		action.accept(ys[position++]);
+
+		return true;
+	}
+
+	@Override
+	public void forEachRemaining(DoubleConsumer action) {
+
+		while (position < length || evaluateBlock()) {
+
+			while (position < length) {
+
+				action.accept(ys[position++]);
+			}
+		}
+	}
+
+	/**
+	 * Evaluates the expression at the next block of x-axis values of the range.
+	 * @return true/false If there were any x-axis values left.
+	 */
+
+	private boolean evaluateBlock() {
+
+		if (index == end) {
+
+			return false;
+		}
+
+		int count = (int) Math.min(BLOCK_SIZE, end - index);
+
+		// the batch evaluation works on whole arrays, so only the last block of the range needs shorter ones
+
+		if (xs == null || xs.length != count) {
+
+			xs = new double[count];
+
+			ys = new double[count];
+		}
+
+		for (int i = 0; i < count; i++) {
+
+			xs[i] = getX(from, to, points, index + i);
+		}
+
+		expression.evaluate(xs, ys);
+
+		index += count;
+
+		position = 0;
+
+		length = count;
+
+		return true;
+	}
+
+	/**
+	 * Gets the x-axis value of the given point of an evenly spaced grid. Every point is computed from the bounds on its own
+	 * instead of by adding up steps, so no rounding error builds up, and the last point is exactly the end of the range.
+	 * @param from The first x-axis value of the grid.
+	 * @param to The last x-axis value of the grid.
+	 * @param count The amount of points of the grid.
+	 * @param index The index of the point.
+	 * @return x The x-axis value.
+	 */
+
+	static double getX(double from, double to, long count, long index) {
+
+		if (index == count - 1) {
+
+			return count == 1 ? from : to;
+		}
+
+		return from + (to - from) * index / (count - 1);
+	}
+
+	@Override
+	public Spliterator.OfDouble trySplit() {
+
+		// values that have already been evaluated come before the rest of the range, so the range cannot be split around them
+
+		if (position < length || end - index < 2 * BLOCK_SIZE) {
+
+			return null;
+		}
+
+		long middle = index + (end - index) / 2;
+
+		ExpressionSpliterator prefix = new ExpressionSpliterator(expression, from, to, points, index, middle);
+
+		index = middle;
+
+		return prefix;
+	}
+
+	@Override
+	public long estimateSize() {
+
+		return end - index + length - position;
+	}
+
+	@Override
+	public int characteristics() {
+
+		return ORDERED | SIZED | SUBSIZED | IMMUTABLE | NONNULL;
+	}
+}
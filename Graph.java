@@ -1,34 +1,50 @@
 package application;
 
+import javafx.animation.PauseTransition;
+
+import javafx.application.Platform;
+
 import javafx.beans.value.ObservableValue;
 
 import javafx.event.ActionEvent;
 
 import javafx.event.EventHandler;
 
+import java.io.File;
+
+import java.io.IOException;
+
 import java.util.ArrayList;
 
 import java.util.Arrays;
 
 import java.util.HashMap;
 
+import java.util.HashSet;
+
+import java.util.LinkedHashMap;
+
 import java.util.List;
 
 import java.util.Random;
 
+import java.util.concurrent.Future;
+
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+
+import java.util.concurrent.TimeUnit;
+
 import javafx.beans.value.ChangeListener;
 
 import javafx.geometry.Insets;
 
+import javafx.scene.Cursor;
+
 import javafx.scene.Node;
 
 import javafx.scene.Scene;
 
-import javafx.scene.chart.LineChart;
-
-import javafx.scene.chart.NumberAxis;
-
-import javafx.scene.chart.XYChart;
+import javafx.scene.control.Alert;
 
 import javafx.scene.control.Button;
 
@@ -40,6 +56,8 @@ import javafx.scene.control.ScrollPane.ScrollBarPolicy;
 
 import javafx.scene.control.TextField;
 
+import javafx.scene.control.ToggleButton;
+
 import javafx.scene.layout.HBox;
 
 import javafx.scene.layout.VBox;
@@ -50,6 +68,10 @@ import javafx.scene.shape.Circle;
 
 import javafx.scene.text.Font;
 
+import javafx.stage.FileChooser;
+
+import javafx.util.Duration;
+
 /**
  * Assembles the graph scene of the graphing calculator which allows for many different useful functions. This includes
  * the abulity to plot multiple lines each with consistent coloring, smooth zooming in and out of the desired portion of the graph,
@@ -63,40 +85,67 @@ import javafx.scene.text.Font;
 public class Graph {
 
 	/**
-	 * The lower bound of both axes.
+	 * The lower bound of both axes when the graph is first shown.
 	 */
 	
 	final static int LOWER_BOUND = -25;
 
 	/**
-	 * The upper bound of both axes.
+	 * The upper bound of both axes when the graph is first shown.
 	 */
 	
 	final static int UPPER_BOUND = 25;
 
 	/**
-	 * A copy of the base app.
+	 * The smallest range of an axis relative to the values it shows. Zooming in any further would leave too few distinct
+	 * double values within a pixel to sample the curves.
 	 */
 	
-	private GraphingApp app;
+	final static double MIN_RELATIVE_RANGE = 1e-9;
+
+	/**
+	 * How much scrolling zooms, as the natural logarithm of the zoom factor per pixel scrolled.
+	 */
+	
+	final static double SCROLL_ZOOM_SPEED = 0.005;
+
+	/**
+	 * How many milliseconds to wait after the last keystroke before plotting an equation.
+	 */
+	
+	final static long TYPING_DELAY = 150;
+
+	/**
+	 * Compiles and samples equations in the background, on as many threads as there are cores, so the graph stays responsive
+	 * while long equations are plotted. The threads never keep the app from closing.
+	 */
+	
+	private final static ScheduledThreadPoolExecutor EXECUTOR = createExecutor();
+
+	/**
+	 * The curves sampled most recently, by equation, visible part of the graph, and size of the graph, so typing an
+	 * equation again or zooming back to an earlier view shows the curve without evaluating the equation.
+	 */
+	
+	private final static LruCache<CurveKey, SampledCurve> CURVE_CACHE = new LruCache<>(256, 64L << 20, SampledCurve::getByteSize);
 
 	/**
-	 * The x-axis of the graph.
+	 * The memory budget in bytes for the values every plotted equation has been evaluated at.
 	 */
 	
-	private NumberAxis xAxis = new NumberAxis(LOWER_BOUND, UPPER_BOUND, 1);
+	final static long SAMPLE_CACHE_BYTES = 4L << 20;
 
 	/**
-	 * The y-axis of the graph.
+	 * A copy of the base app.
 	 */
 	
-	private NumberAxis yAxis = new NumberAxis(LOWER_BOUND, UPPER_BOUND, 1);
+	private GraphingApp app;
 
 	/**
-	 * The graph constructed with both axes.
+	 * Draws the curves of the graph, either with a line chart or directly onto a canvas.
 	 */
 	
-	private LineChart<Number, Number> lineChart = new LineChart<>(xAxis, yAxis);
+	private PlotRenderer renderer = new ChartRenderer();
 
 	/**
 	 * Stores all colors that have already been used within the graph.
@@ -108,7 +157,20 @@ public class Graph {
 	 * Assigns every new equation with a textfield to keep track of user input changes.
 	 */
 	
-	private HashMap<TextField, ArrayList<XYChart.Series<Number, Number>>> equationMap = new HashMap<>();
+	private HashMap<TextField, PlottedEquation> equationMap = new HashMap<>();
+
+	/**
+	 * Assigns the derivative of an equation to its textfield while the derivative is shown.
+	 */
+	
+	private HashMap<TextField, PlottedEquation> derivativeMap = new HashMap<>();
+
+	/**
+	 * The color of every curve imported from a curve file, in the order of the file. The points of these curves are read
+	 * straight from the mapped file.
+	 */
+	
+	private LinkedHashMap<PlottedEquation, Color> importMap = new LinkedHashMap<>();
 
 	/**
 	 * Assigns a color with a textfield to keep track of which color belongs to which equation.
@@ -123,12 +185,73 @@ public class Graph {
 	
 	private HashMap<TextField, Label> errorMap = new HashMap<>();
 
+	/**
+	 * Assigns the roots of every plotted function to its equation.
+	 */
+	
+	private HashMap<PlottedEquation, SampledCurve> rootMap = new HashMap<>();
+
+	/**
+	 * Assigns the points at which two plotted functions intersect to that pair of equations.
+	 */
+	
+	private HashMap<EquationPair, SampledCurve> intersectionMap = new HashMap<>();
+
+	/**
+	 * The equations whose curves have changed since their roots and intersections were last found.
+	 */
+	
+	private HashSet<PlottedEquation> changedEquations = new HashSet<>();
+
+	/**
+	 * The latest task that finds roots and intersections, which may still be running.
+	 */
+	
+	private Future<?> markerTask;
+
+	/**
+	 * Whether roots and intersections have already been requested for the next pulse.
+	 */
+	
+	private boolean markersPending;
+
 	/**
 	 * Keeps track of changes to the bounds of the graph from zooming operations.
 	 */
 	
 	private double newXUpper = 0, newXLower = 0, newYUpper = 0, newYLower = 0;
 
+	/**
+	 * The visible part of both axes.
+	 */
+	
+	private double xLower = LOWER_BOUND, xUpper = UPPER_BOUND, yLower = LOWER_BOUND, yUpper = UPPER_BOUND;
+
+	/**
+	 * Waits for the size of the graph to settle before sampling every curve again, so resizing the window only resamples
+	 * once instead of on every change of its size.
+	 */
+	
+	private PauseTransition resizePause = new PauseTransition(Duration.millis(150));
+
+	/**
+	 * Waits for scrolling or dragging to stop before sampling every curve again at full detail.
+	 */
+	
+	private PauseTransition gesturePause = new PauseTransition(Duration.millis(200));
+
+	/**
+	 * Whether coarse curves have already been requested for the next pulse.
+	 */
+	
+	private boolean coarsePending;
+
+	/**
+	 * Where the mouse was pressed within the graph to start dragging, and the visible part of both axes at that moment.
+	 */
+	
+	private double dragX, dragY, dragXLower, dragXUpper, dragYLower, dragYUpper;
+
 	/**
 	 * Initializes the graph.
 	 * @param app The base app.
@@ -138,6 +261,46 @@ public class Graph {
 
 		this.app = app;
 
+		resizePause.setOnFinished(e -> resampleAll());
+
+		gesturePause.setOnFinished(e -> resampleAll());
+
+	}
+
+	/**
+	 * Creates the executor that plots equations in the background.
+	 * @return executor The executor.
+	 */
+	
+	private static ScheduledThreadPoolExecutor createExecutor() {
+
+		ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(Runtime.getRuntime().availableProcessors(), task -> {
+
+			Thread thread = new Thread(task, "plotter");
+
+			thread.setDaemon(true);
+
+			return thread;
+
+		});
+
+		// forget cancelled tasks right away instead of keeping them queued until their delay runs out
+
+		executor.setRemoveOnCancelPolicy(true);
+
+		return executor;
+
+	}
+
+	/**
+	 * Gets the cache of sampled curves, to check how well it works.
+	 * @return cache The cache of sampled curves.
+	 */
+	
+	public static LruCache<CurveKey, SampledCurve> getCurveCache() {
+
+		return CURVE_CACHE;
+
 	}
 
 	/**
@@ -172,67 +335,91 @@ public class Graph {
 
 	private void zoomInOrOut(double x, double y, char op) {
 
-		double xRange = xAxis.getUpperBound() - xAxis.getLowerBound();
+		double xRange = xUpper - xLower;
 
-		double yRange = yAxis.getUpperBound() - yAxis.getLowerBound();
+		double yRange = yUpper - yLower;
 
 		newXUpper = x + doOp(xRange, op);
 
 		newYUpper = y + doOp(yRange, op);
 
-		newYLower = x - doOp(xRange, op);
-
-		newXLower = y - doOp(yRange, op);
+		newYLower = y - doOp(yRange, op);
 
-		// Set new axis ranges
+		newXLower = x - doOp(xRange, op);
 
-		xAxis.setLowerBound(Math.max(newXLower, LOWER_BOUND));
+		// sample every curve again for the part of the graph that is now visible
 
-		xAxis.setUpperBound(Math.min(newXUpper, UPPER_BOUND));
+		if (setViewport(newXLower, newXUpper, newYLower, newYUpper)) {
 
-		yAxis.setLowerBound(Math.max(newYLower, LOWER_BOUND));
+			resampleAll();
 
-		yAxis.setUpperBound(Math.min(newYUpper, UPPER_BOUND));
+		}
 
 	}
 
 	/**
-	 * Creates a new scrollable graph scene that contains a line chart with an equation box and options to add equations, 
-	 * return back to the menu, remove an equation, or make a new graph scene. Allows for the graph to update dynamically. (Real time
-	 * graph updates.)
-	 * @return scene A new graph scene.
+	 * Changes the visible part of both axes. The renderer immediately shows the curves it already has under the new bounds,
+	 * until they are sampled again.
+	 * @param newXLower The new lower bound of the x-axis.
+	 * @param newXUpper The new upper bound of the x-axis.
+	 * @param newYLower The new lower bound of the y-axis.
+	 * @param newYUpper The new upper bound of the y-axis.
+	 * @return changed Whether the bounds were changed.
 	 */
 	
-	protected Scene createGraphScene() {
+	private boolean setViewport(double newXLower, double newXUpper, double newYLower, double newYUpper) {
 
-		// allow use to zoom in and out depening on mouse location within the chart
-		// -------------------------------------------------------------------------
-		lineChart.setOnMousePressed( e -> {
+		// stop zooming once the axes can no longer be told apart from one pixel to the next, or no longer fit in a double
 
-			Number dataX = xAxis.getValueForDisplay(e.getX());
+		if (!isValidRange(newXLower, newXUpper) || !isValidRange(newYLower, newYUpper)) {
 
-			Number dataY = yAxis.getValueForDisplay(e.getY());
+			return false;
 
-			if (e.isPrimaryButtonDown() && e.getClickCount() >= 2) {
+		}
 
-				// one finger to zoom-in with double click
+		// Set new axis ranges
 
-				zoomInOrOut((Double) dataX, (Double) dataY, '/');
+		xLower = newXLower;
 
-			}
+		xUpper = newXUpper;
 
-			else if (e.isSecondaryButtonDown()) {
+		yLower = newYLower;
 
-				// two fingers to zoom-out
+		yUpper = newYUpper;
 
-				zoomInOrOut((Double) dataX, (Double) dataY, '*');
+		renderer.setViewport(xLower, xUpper, yLower, yUpper);
 
-			}
+		return true;
 
-		});
-		// -------------------------------------------------------------------------
+	}
+
+	/**
+	 * Checks whether an axis can show the given range.
+	 * @param lower The lower bound of the axis.
+	 * @param upper The upper bound of the axis.
+	 * @return valid Whether the range is finite and not too small.
+	 */
+	
+	private static boolean isValidRange(double lower, double upper) {
+
+		double range = upper - lower;
+
+		return Double.isFinite(range) && range >= MIN_RELATIVE_RANGE * Math.max(1, Math.max(Math.abs(lower), Math.abs(upper)));
+
+	}
+
+	/**
+	 * Creates a new scrollable graph scene that contains a line chart with an equation box and options to add equations, 
+	 * return back to the menu, remove an equation, or make a new graph scene. Allows for the graph to update dynamically. (Real time
+	 * graph updates.)
+	 * @return scene A new graph scene.
+	 */
+	
+	protected Scene createGraphScene() {
 
-		lineChart.setPrefSize(800, 600);
+		installZoomHandlers();
+
+		installResizeHandler();
 
 		// Make scene scrollable
 
@@ -283,7 +470,7 @@ public class Graph {
 
 		initialEquationBox.setPadding(new Insets(20, 0, 20, 0));
 
-		initialEquationBox.getChildren().addAll(circle, yLabel, initf);
+		initialEquationBox.getChildren().addAll(circle, yLabel, initf, createDerivativeButton(initf));
 
 		Button addEquationButton = createOptionButton("Add Equation", "limegreen", 60);
 
@@ -295,17 +482,45 @@ public class Graph {
 
 		});
 
-		Button menuButton = createOptionButton("Menu", "lightblue", 365);
+		Button menuButton = createOptionButton("Menu", "lightblue", 190);
 
 		menuButton.setOnAction(e -> app.openMenuScene()); // returns you back to the menu
 
-		Button newGraphButton = createOptionButton("New Graph", "orange", 670);
+		Button newGraphButton = createOptionButton("New Graph", "orange", 320);
 
 		newGraphButton.setOnAction(e -> app.openGraphScene()); // creates a fresh graph scene
 
+		Button rendererButton = createOptionButton("Canvas View", "plum", 450);
+
+		// switches between drawing with the line chart and drawing onto a canvas, which is faster for many curves
+
+		rendererButton.setOnAction(e -> {
+
+			switchRenderer(mainVBox);
+
+			rendererButton.setText(renderer instanceof ChartRenderer ? "Canvas View" : "Chart View");
+
+		});
+
 		HBox buttonBox = new HBox();
 
-		buttonBox.getChildren().addAll(addEquationButton, menuButton, newGraphButton);
+		buttonBox.getChildren().addAll(addEquationButton, menuButton, newGraphButton, rendererButton);
+
+		// saves every curve on the graph to a curve file, or plots the curves of one
+
+		Button exportButton = createOptionButton("Export", "khaki", 60);
+
+		exportButton.setOnAction(e -> exportCurves(exportButton));
+
+		Button importButton = createOptionButton("Import", "lightsalmon", 190);
+
+		importButton.setOnAction(e -> importCurves(importButton));
+
+		HBox fileBox = new HBox();
+
+		fileBox.setPadding(new Insets(10, 0, 0, 0));
+
+		fileBox.getChildren().addAll(exportButton, importButton);
 		
 		finalEquationBox.getChildren().addAll(equationLabel, initialEquationBox);
 
@@ -313,7 +528,7 @@ public class Graph {
 
 		// Add the VBox containing all the equations to the main VBox
 
-		mainVBox.getChildren().addAll(lineChart, buttonBox, bottomPanelVBox);
+		mainVBox.getChildren().addAll(renderer.getNode(), buttonBox, fileBox, bottomPanelVBox);
 
 		// Add the main VBox to the rootPane
 
@@ -338,9 +553,7 @@ public class Graph {
 					
 					// remove the error if any and the line from the chart
 					
-					lineChart.getData().removeAll(equationMap.get(initf));
-
-					equationMap.remove(initf);
+					removeEquation(initf);
 
 					Circle c = (Circle) initialEquationBox.getChildren().get(0);
 
@@ -397,226 +610,1078 @@ public class Graph {
 	}
 
 	/**
-	 * Method that does the magic. Plots data points at intervals of 1/25 over the interval from LOWER_BOUND
-	 * to UPPER_BOUND and identifies asymptotes by creating a new XYChart.Series object to continue plotting the equation.
-	 * Catches illegal user input.
-	 * @param equationBox The given equation box.
-	 * @param equation The current user inputted expression to plot.
+	 * Creates the button that shows or hides the derivative of the equation typed into the given textfield.
+	 * @param tf The textfield of the equation.
+	 * @return button The toggle button.
 	 */
 	
-	private void plotEquation(HBox equationBox, String equation) {
+	private ToggleButton createDerivativeButton(TextField tf) {
 
-		Circle c = (Circle) equationBox.getChildren().get(0);
+		ToggleButton button = new ToggleButton("d/dx");
 
-		TextField tf = (TextField) equationBox.getChildren().get(2);
+		button.setPrefSize(70, 40);
 
-		try {
-			
-			// use an equation solver object to plot the line
-			
-			EquationSolver EQ = new EquationSolver();
+		button.setFont(new Font(16));
 
-			XYChart.Series<Number, Number> series = new XYChart.Series<>();
+		button.setOnAction(e -> {
 
-			ArrayList<XYChart.Series<Number, Number>> seriesArr = equationMap.get(tf);
-			
-			// if the line has been plotted before we create a new line
-			
-			if (seriesArr == null) {
+			PlottedEquation plotted = equationMap.get(tf);
 
-				seriesArr = new ArrayList<>();
+			if (!button.isSelected()) {
 
-				equationMap.put(tf, seriesArr);
+				removeDerivative(tf);
 
 			}
-			
-			// remove all lines from the chart
-
-			lineChart.getData().removeAll(seriesArr);
-
-			// logic for creating the graph for given equation
 
-			// -----------------------------------------------
+			else if (plotted != null) {
 
-			seriesArr.clear();
+				plotDerivative(tf, plotted.getEquation(), 0);
 
-			// Create a new series for each valid range of x values
-
-			for (int i = 0; i <= (UPPER_BOUND - LOWER_BOUND) * 25; i++) {
-
-				double x = LOWER_BOUND + i * 0.04;
-
-				double y = EQ.parseEquation(equation, x);
+			}
 
-				// Check if y is a valid number before adding to the series
+		});
 
-				if (!(y == Double.POSITIVE_INFINITY) && !(y == Double.NEGATIVE_INFINITY) && !(Double.isNaN(y))) {
+		return button;
 
-					series.getData().add(new XYChart.Data<>(x, y));
+	}
 
-				}
+	/**
+	 * Method that does the magic. Plots the equation over the visible part of the graph once the user stops typing. The
+	 * equation is compiled and sampled in the background so the graph stays responsive while typing, and anything computed
+	 * for an older version of the equation is thrown away.
+	 * @param equationBox The given equation box.
+	 * @param equation The current user inputted expression to plot.
+	 */
+	
+	private void plotEquation(HBox equationBox, String equation) {
 
-				else {
+		TextField tf = (TextField) equationBox.getChildren().get(2);
 
-					seriesArr.add(series);
+		PlottedEquation plotted = equationMap.computeIfAbsent(tf, key -> new PlottedEquation());
 
-					series = new XYChart.Series<>();
+		plotted.setEquation(equation);
 
-				}
+		schedulePlot(tf, plotted, TYPING_DELAY, false);
 
-			}
+		if (((ToggleButton) equationBox.getChildren().get(3)).isSelected()) {
 
-			// add the last part of the line to the chart
-			
-			seriesArr.add(series);
+			plotDerivative(tf, equation, TYPING_DELAY);
 
-			// -----------------------------------------------
+		}
 
-			equationMap.values().forEach(lineChart.getData()::addAll); // Add all series from the HashMa
-			
-			lineChart.setCreateSymbols(false); // ensures that every individual point that was plotted is shown
+	}
 
-			lineChart.setLegendVisible(false);
+	/**
+	 * Plots the derivative of an equation next to the equation itself. The derivative is compiled from d/dx(...) around
+	 * the equation into an equation of its own, whose exact values are sampled separately from those of the equation.
+	 * @param tf The textfield of the equation.
+	 * @param equation The current user inputted equation.
+	 * @param delay How many milliseconds to wait before starting.
+	 */
+	
+	private void plotDerivative(TextField tf, String equation, long delay) {
 
-			lineChart.setAnimated(false);
+		PlottedEquation derivative = derivativeMap.computeIfAbsent(tf, key -> new PlottedEquation());
 
-			Color color = assignColor(seriesArr, tf);
+		// y= in front of a function of x is left out, since d/dx only applies to a function of x
 
-			c.setFill(color);
+		derivative.setEquation("d/dx(" + (equation.startsWith("y=") ? equation.substring(2) : equation) + ")");
 
-			// removes any error because line was able to be plotted
-			// ------------------------------------------------------
-			VBox parentVBox = (VBox) equationBox.getParent();
+		schedulePlot(tf, derivative, delay, false);
 
-			parentVBox.getChildren().remove(errorMap.get(tf));
+	}
 
-			errorMap.remove(tf);
-			// ------------------------------------------------------
+	/**
+	 * Stops plotting the derivative of an equation and removes its curve from the graph.
+	 * @param tf The textfield of the equation.
+	 */
+	
+	private void removeDerivative(TextField tf) {
 
-		}
+		PlottedEquation derivative = derivativeMap.remove(tf);
 
-		// displays an error message if the line inputted by user was wrong in any way
-		// ----------------------------------------------------------------------------
-		catch (Exception e) {
+		if (derivative != null) {
 
-			c.setFill(Color.WHITE);
+			derivative.cancel();
 
-			displayErrorMessage("Not a valid equation.", tf);
+			renderer.removeCurve(derivative);
 
 		}
-		// ----------------------------------------------------------------------------
 
 	}
 
 	/**
-	 * Adds an equation box to the bottom panel VBox. The equation box has all the same attributes of the initial equation box
-	 * apart from the ability to be removed via the remove button. The equation box contains a textfield, a color identifier, 
-	 * and a remove button. Allows for dynamic updates of the graph.
-	 * 
-	 * @return finalEquationBox The VBox that contains the equation box that allows for error messages to appear below that 
-	 * particular equation box if needed.
+	 * Compiles and samples an equation over the visible part of the graph on a background thread, with more points where
+	 * the curve bends and at most two per pixel, and identifies asymptotes by starting a new segment to continue plotting the
+	 * equation. Relations, parametric equations, and polar equations are each sampled by their own sampler. Cancels whatever
+	 * was started for the equation before.
+	 * @param tf The textfield of the equation.
+	 * @param plotted The plotted equation.
+	 * @param delay How many milliseconds to wait before starting.
+	 * @param coarse If only the coarse grid of the sampler should be sampled, for a quicker curve.
 	 */
 	
-	private VBox addEquationBox() {
-
-		// setting up initial properies of the equation box
-		// -------------------------------------------------
-		VBox finalEquationBox = new VBox();
+	private void schedulePlot(TextField tf, PlottedEquation plotted, long delay, boolean coarse) {
 
-		HBox equationBox = new HBox(); 
+		long generation = plotted.nextGeneration();
 
-		Circle circle = new Circle(20, Color.WHITE);
+		String equation = plotted.getEquation();
 
-		circle.setStroke(Color.BLACK); 
+		// the visible part of the graph can only be read on this thread
 
-		circle.setStrokeWidth(2.0);
+		double xLower = this.xLower, xUpper = this.xUpper, yLower = this.yLower, yUpper = this.yUpper;
 
-		Label yLabel = new Label("y = ");
+		double width = renderer.getPlotWidth(), height = renderer.getPlotHeight();
 
-		yLabel.setFont(new Font(24));
+		plotted.setTask(EXECUTOR.schedule(() -> {
 
-		yLabel.setTranslateX(10);
+			try {
 
-		TextField tf = new TextField();
+				// use an equation solver object to plot the line
 
-		tf.setPrefSize(900, 40);
+				CompiledExpression expression = new EquationSolver().compile(equation);
 
-		tf.setFont(new Font(18));
-		// -------------------------------------------------
-		
-		// dynamically update the graph for that selected text field
+				// the class generated for the equation lives as long as the plotted equation, and its copies share it
 
-		tf.textProperty().addListener(new ChangeListener<String>() {
+				expression.setFunction(plotted.getFunction(expression));
 
-			@Override
+				// an equation that was plotted for this exact view before is shown again without evaluating it
 
-			public void changed(ObservableValue<? extends String> observable, String oldValue, String newValue) {
+				CurveKey key = new CurveKey(expression.getSource(), xLower, xUpper, yLower, yUpper, width, height);
 
-				if (newValue.isEmpty()) {
+				SampledCurve cached = CURVE_CACHE.get(key);
 
-					lineChart.getData().removeAll(equationMap.get(tf));
+				// otherwise only the points that were never evaluated for this equation, at any zoom, are evaluated now
 
-					equationMap.remove(tf);
+				SampledCurve curve = cached != null ? cached : sample(expression, plotted, coarse, xLower, xUpper, yLower, yUpper,
+						width, height);
 
-					// remove color from circle
+				// a cancelled task only sampled part of the curve
 
-					Circle c = (Circle) equationBox.getChildren().get(0);
+				if (Thread.currentThread().isInterrupted()) {
 
-					c.setFill(Color.WHITE);
+					return;
 
-					VBox parentVBox = (VBox) equationBox.getParent();
+				}
 
-					parentVBox.getChildren().remove(errorMap.get(tf));
+				if (cached == null && !coarse) {
 
-					errorMap.remove(tf);
+					CURVE_CACHE.put(key, curve);
 
 				}
 
-				else {
+				// the renderer gets at most four points per pixel column, which look exactly the same
 
-					plotEquation(equationBox, newValue);
+				SampledCurve decimated = M4Decimator.decimate(curve, xLower, xUpper, width);
 
-				}
+				Platform.runLater(() -> showCurve(tf, plotted, generation, expression, curve, decimated));
 
 			}
 
-		});
+			// an equation too complex to compile or sample fails like any illegal one, since anything thrown past here would
+			// only be kept by the scheduled future, leaving the old curve on the graph without an error
 
-		equationBox.setSpacing(10);
+			catch (Exception | StackOverflowError e) {
 
-		equationBox.setPadding(new Insets(20, 0, 20, 0));
+				Platform.runLater(() -> showError(tf, plotted, generation));
 
-		Button removeButton = new Button("X");
+			}
 
-		removeButton.setStyle("-fx-background-color: red; -fx-text-fill: black;");
+		}, delay, TimeUnit.MILLISECONDS));
 
-		removeButton.setFont(new Font(25));
+	}
 
-		removeButton.setPrefSize(40, 40);
+	/**
+	 * Samples an equation with the sampler for its form: a function of x reuses the points evaluated for it before, a
+	 * relation is traced wherever it holds, and a parametric or polar equation is sampled over the range of t.
+	 * @param expression The compiled expression of the equation.
+	 * @param plotted The plotted equation.
+	 * @param coarse If only the coarse grid of the sampler should be sampled.
+	 * @param xLower The lower bound of the visible x-axis.
+	 * @param xUpper The upper bound of the visible x-axis.
+	 * @param yLower The lower bound of the visible y-axis.
+	 * @param yUpper The upper bound of the visible y-axis.
+	 * @param width The width of the graph in pixels.
+	 * @param height The height of the graph in pixels.
+	 * @return curve The sampled curve.
+	 */
+	
+	private static SampledCurve sample(CompiledExpression expression, PlottedEquation plotted, boolean coarse, double xLower,
+			double xUpper, double yLower, double yUpper, double width, double height) {
 
-		// removes that equation box from the bottom panel box if pressed
-		// -----------------------------------------------------------------------
-		removeButton.setOnAction(new EventHandler<ActionEvent>() {
+		switch (expression.getForm()) {
 
-			@Override
+			case CompiledExpression.RELATION:
 
-			public void handle(ActionEvent event) {
+				return ImplicitSampler.sample(expression, coarse ? 0 : ImplicitSampler.MAX_DEPTH, xLower, xUpper, yLower, yUpper,
+						width, height);
+
+			case CompiledExpression.PARAMETRIC:
+			case CompiledExpression.POLAR:
+
+				return ParametricSampler.sample(expression, coarse ? 0 : ParametricSampler.MAX_DEPTH, xLower, xUpper, yLower,
+						yUpper, width, height);
+
+			default:
+
+				return AdaptiveSampler.sample(expression, plotted.getSamples(expression.getSource(), SAMPLE_CACHE_BYTES),
+						coarse ? 0 : AdaptiveSampler.MAX_DEPTH, xLower, xUpper, yLower, yUpper, width, height);
+
+		}
+
+	}
+
+	/**
+	 * Hands a sampled curve to the renderer in place of the one plotted before, unless the equation has changed since.
+	 * @param tf The textfield of the equation.
+	 * @param plotted The plotted equation.
+	 * @param generation The generation the curve was sampled for.
+	 * @param expression The compiled expression of the equation.
+	 * @param curve The sampled curve.
+	 * @param decimated The sampled curve reduced to the points that are visible at the size of the graph.
+	 */
+	
+	private void showCurve(TextField tf, PlottedEquation plotted, long generation, CompiledExpression expression, SampledCurve curve,
+			SampledCurve decimated) {
+
+		if (derivativeMap.get(tf) == plotted) {
+
+			showDerivative(tf, plotted, generation, expression, curve, decimated);
+
+			return;
+
+		}
+
+		if (equationMap.get(tf) != plotted || plotted.getGeneration() != generation) {
+
+			return;
+
+		}
+
+		plotted.setExpression(expression);
+
+		plotted.setCurve(curve);
+
+		Color color = assignColor(tf);
+
+		// replaces the line that was plotted before, if any
+
+		renderer.setCurve(tf, decimated, color);
+
+		// only the roots and intersections of this curve have to be found again
+
+		changedEquations.add(plotted);
+
+		requestMarkers();
+
+		HBox equationBox = (HBox) tf.getParent();
+
+		Circle c = (Circle) equationBox.getChildren().get(0);
+
+		c.setFill(color);
+
+		// removes any error because line was able to be plotted
+		// ------------------------------------------------------
+		VBox parentVBox = (VBox) equationBox.getParent();
+
+		parentVBox.getChildren().remove(errorMap.get(tf));
+
+		errorMap.remove(tf);
+		// ------------------------------------------------------
+
+	}
+
+	/**
+	 * Hands the sampled curve of the derivative of an equation to the renderer, in a darker shade of the color of the
+	 * equation, unless the equation has changed since.
+	 * @param tf The textfield of the equation.
+	 * @param derivative The plotted derivative.
+	 * @param generation The generation the curve was sampled for.
+	 * @param expression The compiled expression of the derivative.
+	 * @param curve The sampled curve.
+	 * @param decimated The sampled curve reduced to the points that are visible at the size of the graph.
+	 */
+	
+	private void showDerivative(TextField tf, PlottedEquation derivative, long generation, CompiledExpression expression,
+			SampledCurve curve, SampledCurve decimated) {
+
+		if (derivative.getGeneration() != generation) {
+
+			return;
+
+		}
+
+		derivative.setExpression(expression);
+
+		derivative.setCurve(curve);
+
+		renderer.setCurve(derivative, decimated, assignColor(tf).darker());
+
+	}
+
+	/**
+	 * Displays an error message if the equation inputted by the user was wrong in any way, unless it has changed since.
+	 * @param tf The textfield of the equation.
+	 * @param plotted The plotted equation.
+	 * @param generation The generation that failed to compile.
+	 */
+	
+	private void showError(TextField tf, PlottedEquation plotted, long generation) {
+
+		// an equation without a derivative, such as a relation, simply shows none
+
+		if (derivativeMap.get(tf) == plotted) {
+
+			if (plotted.getGeneration() == generation) {
+
+				plotted.setCurve(null);
+
+				renderer.removeCurve(plotted);
+
+			}
+
+			return;
+
+		}
+
+		if (equationMap.get(tf) != plotted || plotted.getGeneration() != generation) {
+
+			return;
+
+		}
+
+		Circle c = (Circle) ((HBox) tf.getParent()).getChildren().get(0);
+
+		c.setFill(Color.WHITE);
+
+		displayErrorMessage("Not a valid equation.", tf);
+
+	}
+
+	/**
+	 * Stops plotting an equation and its derivative, and removes their curves from the graph.
+	 * @param tf The textfield of the equation.
+	 */
+	
+	private void removeEquation(TextField tf) {
+
+		removeDerivative(tf);
+
+		PlottedEquation plotted = equationMap.remove(tf);
+
+		if (plotted != null) {
+
+			plotted.cancel();
+
+			changedEquations.remove(plotted);
+
+			forgetMarkers(plotted);
+
+			showMarkers();
+
+		}
+
+		renderer.removeCurve(tf);
+
+	}
+
+	/**
+	 * Finds the roots and intersections of the curves that have changed at most once per pulse, however many curves were
+	 * plotted within that pulse.
+	 */
+	
+	private void requestMarkers() {
+
+		if (!markersPending) {
+
+			markersPending = true;
+
+			Platform.runLater(this::scheduleMarkers);
+
+		}
+
+	}
+
+	/**
+	 * Finds the roots of every function whose curve has changed, and the points at which it intersects every other
+	 * function, on a background thread. Pairs of functions that have not changed keep the intersections found before, so
+	 * typing one equation among many only compares that one with the others. Cancels whatever was started before, which
+	 * is started again here for the curves it had not finished.
+	 */
+	
+	private void scheduleMarkers() {
+
+		markersPending = false;
+
+		if (markerTask != null) {
+
+			markerTask.cancel(true);
+
+		}
+
+		// only functions of x are searched, in the curves that are plotted right now
+
+		ArrayList<PlottedEquation> functions = new ArrayList<>();
+
+		for (PlottedEquation plotted : equationMap.values()) {
+
+			if (plotted.getCurve() != null && plotted.getExpression().getForm() == CompiledExpression.FUNCTION) {
+
+				functions.add(plotted);
+
+			}
+
+			else if (changedEquations.remove(plotted)) {
+
+				forgetMarkers(plotted);
+
+			}
+
+		}
+
+		changedEquations.retainAll(functions);
+
+		if (changedEquations.isEmpty()) {
+
+			showMarkers();
+
+			return;
+
+		}
+
+		CompiledExpression[] expressions = new CompiledExpression[functions.size()];
+
+		SampledCurve[] curves = new SampledCurve[functions.size()];
+
+		ArrayList<int[]> jobs = new ArrayList<>();
+
+		for (int i = 0; i < functions.size(); i++) {
+
+			expressions[i] = functions.get(i).getExpression();
+
+			curves[i] = functions.get(i).getCurve();
+
+			boolean changed = changedEquations.contains(functions.get(i));
+
+			if (changed) {
+
+				jobs.add(new int[] {i});
+
+			}
+
+			// every pair is compared once, if either of its functions has changed
+
+			for (int j = 0; j < i; j++) {
+
+				if (changed || changedEquations.contains(functions.get(j))) {
+
+					jobs.add(new int[] {j, i});
+
+				}
+
+			}
+
+		}
+
+		int[][] jobArr = jobs.toArray(new int[0][]);
+
+		markerTask = EXECUTOR.submit(() -> {
+
+			SampledCurve[] markers = RootFinder.findAll(expressions, curves, jobArr);
+
+			if (!Thread.currentThread().isInterrupted()) {
+
+				Platform.runLater(() -> storeMarkers(functions, curves, jobArr, markers));
+
+			}
+
+		});
+
+	}
+
+	/**
+	 * Keeps the roots and intersections found in the background, except for those of curves that have changed or been
+	 * removed since, and shows every root and intersection known.
+	 * @param functions The plotted equations that were searched.
+	 * @param curves The curve of every equation at the time it was searched.
+	 * @param jobs The indices of the equations of every job.
+	 * @param markers The points found by every job.
+	 */
+	
+	private void storeMarkers(ArrayList<PlottedEquation> functions, SampledCurve[] curves, int[][] jobs, SampledCurve[] markers) {
+
+		HashSet<PlottedEquation> current = new HashSet<>();
+
+		for (int i = 0; i < functions.size(); i++) {
+
+			PlottedEquation plotted = functions.get(i);
+
+			if (plotted.getCurve() == curves[i] && equationMap.containsValue(plotted)) {
+
+				current.add(plotted);
+
+			}
+
+		}
+
+		for (int k = 0; k < jobs.length; k++) {
+
+			PlottedEquation first = functions.get(jobs[k][0]);
+
+			if (!current.contains(first)) {
+
+				continue;
+
+			}
+
+			if (jobs[k].length == 1) {
+
+				rootMap.put(first, markers[k]);
+
+			}
+
+			else if (current.contains(functions.get(jobs[k][1]))) {
+
+				intersectionMap.put(new EquationPair(first, functions.get(jobs[k][1])), markers[k]);
+
+			}
+
+		}
+
+		changedEquations.removeAll(current);
+
+		showMarkers();
+
+	}
+
+	/**
+	 * Forgets the roots of an equation and every intersection with it.
+	 * @param plotted The plotted equation.
+	 */
+	
+	private void forgetMarkers(PlottedEquation plotted) {
+
+		rootMap.remove(plotted);
+
+		intersectionMap.keySet().removeIf(pair -> pair.contains(plotted));
+
+	}
+
+	/**
+	 * Hands every root and intersection known to the renderer.
+	 */
+	
+	private void showMarkers() {
+
+		SampledCurve markers = new SampledCurve();
+
+		ArrayList<SampledCurve> found = new ArrayList<>(rootMap.values());
+
+		found.addAll(intersectionMap.values());
+
+		for (SampledCurve points : found) {
+
+			for (int i = 0; i < points.size(); i++) {
+
+				markers.add(points.getX(i), points.getY(i));
+
+			}
+
+		}
+
+		renderer.setMarkers(markers);
+
+	}
+
+	/**
+	 * Lets the user choose a curve file and writes the sampled curve of every plotted equation, derivative, and imported
+	 * curve to it in the background.
+	 * @param button The button that was pressed, whose window the file chooser belongs to.
+	 */
+	
+	private void exportCurves(Button button) {
+
+		File file = createFileChooser("Export Curves").showSaveDialog(button.getScene().getWindow());
+
+		if (file == null) {
+
+			return;
+
+		}
+
+		ArrayList<SampledCurve> curves = new ArrayList<>();
+
+		equationMap.values().forEach(plotted -> addCurve(curves, plotted));
+
+		derivativeMap.values().forEach(derivative -> addCurve(curves, derivative));
+
+		importMap.keySet().forEach(imported -> addCurve(curves, imported));
+
+		// sampled curves are never changed once they are plotted, so they can be written on another thread
+
+		EXECUTOR.execute(() -> {
+
+			try {
+
+				CurveFile.write(file.toPath(), curves);
+
+			}
+
+			catch (IOException e) {
+
+				Platform.runLater(() -> showFileError("The curves could not be exported", e));
+
+			}
+
+		});
+
+	}
+
+	/**
+	 * Adds the sampled curve of a plotted equation to a list, if it has one.
+	 * @param curves The list of curves.
+	 * @param plotted The plotted equation.
+	 */
+	
+	private static void addCurve(ArrayList<SampledCurve> curves, PlottedEquation plotted) {
+
+		if (plotted.getCurve() != null) {
+
+			curves.add(plotted.getCurve());
+
+		}
+
+	}
+
+	/**
+	 * Lets the user choose a curve file and plots every curve within it in place of the curves imported before. The file
+	 * is mapped into memory instead of being read, so even a file of a hundred million points opens right away, and its
+	 * points are only ever read to reduce them to the pixels of the graph.
+	 * @param button The button that was pressed, whose window the file chooser belongs to.
+	 */
+	
+	private void importCurves(Button button) {
+
+		File file = createFileChooser("Import Curves").showOpenDialog(button.getScene().getWindow());
+
+		if (file == null) {
+
+			return;
+
+		}
+
+		List<SampledCurve> curves;
+
+		try {
+
+			curves = CurveFile.read(file.toPath());
+
+		}
+
+		catch (IOException e) {
+
+			showFileError("The curves could not be imported", e);
+
+			return;
+
+		}
+
+		importMap.keySet().forEach(imported -> {
+
+			imported.cancel();
+
+			renderer.removeCurve(imported);
+
+		});
+
+		importMap.clear();
+
+		Random rand = new Random();
+
+		for (SampledCurve curve : curves) {
+
+			PlottedEquation imported = new PlottedEquation();
+
+			imported.setEquation(file.getName());
+
+			imported.setCurve(curve);
+
+			importMap.put(imported, getRandomLineColor(rand));
+
+			scheduleDecimation(imported);
+
+		}
+
+	}
+
+	/**
+	 * Reduces an imported curve to the points that are visible at the size of the graph on a background thread, and hands
+	 * it to the renderer unless the visible part of the graph has changed since.
+	 * @param imported The imported curve.
+	 */
+	
+	private void scheduleDecimation(PlottedEquation imported) {
+
+		long generation = imported.nextGeneration();
+
+		SampledCurve curve = imported.getCurve();
+
+		double xLower = this.xLower, xUpper = this.xUpper, width = renderer.getPlotWidth();
+
+		imported.setTask(EXECUTOR.submit(() -> {
+
+			SampledCurve decimated = M4Decimator.decimate(curve, xLower, xUpper, width);
+
+			Platform.runLater(() -> {
+
+				if (importMap.containsKey(imported) && imported.getGeneration() == generation) {
+
+					renderer.setCurve(imported, decimated, importMap.get(imported));
+
+				}
+
+			});
+
+		}));
+
+	}
+
+	/**
+	 * Creates a file chooser for curve files.
+	 * @param title The title of the dialog.
+	 * @return chooser The file chooser.
+	 */
+	
+	private static FileChooser createFileChooser(String title) {
+
+		FileChooser chooser = new FileChooser();
+
+		chooser.setTitle(title);
+
+		chooser.getExtensionFilters().addAll(new FileChooser.ExtensionFilter("Curve Files", "*.curve"),
+				new FileChooser.ExtensionFilter("All Files", "*.*"));
+
+		return chooser;
+
+	}
+
+	/**
+	 * Tells the user that a curve file could not be written or read.
+	 * @param message What went wrong.
+	 * @param e The exception that was thrown.
+	 */
+	
+	private static void showFileError(String message, IOException e) {
+
+		new Alert(Alert.AlertType.ERROR, message + ": " + e.getMessage()).show();
+
+	}
+
+	/**
+	 * Samples every plotted equation again, after the visible part of the graph or the size of the graph changed.
+	 */
+	
+	private void resampleAll() {
 
-				TextField thistf = (TextField) equationBox.getChildren().get(2);
+		equationMap.forEach((tf, plotted) -> schedulePlot(tf, plotted, 0, false));
+
+		derivativeMap.forEach((tf, derivative) -> schedulePlot(tf, derivative, 0, false));
+
+		importMap.keySet().forEach(this::scheduleDecimation);
+
+	}
+
+	/**
+	 * Samples every plotted equation again on the coarse grid only, at most once per pulse, while the user is scrolling or
+	 * dragging. Every curve is sampled again at full detail once the gesture has stopped for a moment, which is also when
+	 * imported curves, whose points are already on the graph, are reduced to the new view.
+	 */
+	
+	private void resampleDuringGesture() {
+
+		if (!coarsePending) {
+
+			coarsePending = true;
+
+			Platform.runLater(() -> {
+
+				coarsePending = false;
+
+				equationMap.forEach((tf, plotted) -> schedulePlot(tf, plotted, 0, true));
+
+				derivativeMap.forEach((tf, derivative) -> schedulePlot(tf, derivative, 0, true));
+
+			});
+
+		}
+
+		gesturePause.playFromStart();
+
+	}
+
+	/**
+	 * Allows the user to zoom in and out depending on the mouse location within the graph, with clicks or the scroll wheel,
+	 * and to move around the graph by dragging it.
+	 */
+	
+	private void installZoomHandlers() {
+
+		Node node = renderer.getNode();
+
+		node.setOnMousePressed( e -> {
+
+			double dataX = renderer.getXValue(e.getX(), e.getY());
+
+			double dataY = renderer.getYValue(e.getX(), e.getY());
+
+			if (e.isPrimaryButtonDown() && e.getClickCount() >= 2) {
+
+				// one finger to zoom-in with double click
+
+				zoomInOrOut(dataX, dataY, '/');
+
+			}
+
+			else if (e.isSecondaryButtonDown()) {
+
+				// two fingers to zoom-out
+
+				zoomInOrOut(dataX, dataY, '*');
+
+			}
+
+			else if (e.isPrimaryButtonDown()) {
+
+				// remember where dragging started
+
+				dragX = e.getX();
+
+				dragY = e.getY();
+
+				dragXLower = xLower;
+
+				dragXUpper = xUpper;
+
+				dragYLower = yLower;
+
+				dragYUpper = yUpper;
+
+			}
+
+		});
+
+		// move the graph along with the mouse while dragging
+
+		node.setOnMouseDragged(e -> {
+
+			if (!e.isPrimaryButtonDown()) {
+
+				return;
+
+			}
+
+			node.setCursor(Cursor.CLOSED_HAND);
+
+			double dx = (dragX - e.getX()) * (dragXUpper - dragXLower) / renderer.getPlotWidth();
+
+			double dy = (e.getY() - dragY) * (dragYUpper - dragYLower) / renderer.getPlotHeight();
+
+			if (setViewport(dragXLower + dx, dragXUpper + dx, dragYLower + dy, dragYUpper + dy)) {
+
+				resampleDuringGesture();
+
+			}
+
+		});
+
+		node.setOnMouseReleased(e -> node.setCursor(Cursor.DEFAULT));
+
+		// zoom smoothly around the mouse with the scroll wheel
+
+		node.setOnScroll(e -> {
+
+			double dataX = renderer.getXValue(e.getX(), e.getY());
+
+			double dataY = renderer.getYValue(e.getX(), e.getY());
+
+			double factor = Math.exp(-e.getDeltaY() * SCROLL_ZOOM_SPEED);
+
+			if (setViewport(dataX - (dataX - xLower) * factor, dataX + (xUpper - dataX) * factor,
+					dataY - (dataY - yLower) * factor, dataY + (yUpper - dataY) * factor)) {
+
+				resampleDuringGesture();
+
+			}
+
+		});
+
+	}
+
+	/**
+	 * Samples every curve again once the size of the graph stops changing, since the amount of points depends on it.
+	 */
+	
+	private void installResizeHandler() {
+
+		renderer.getNode().layoutBoundsProperty().addListener((observable, oldValue, newValue) -> {
+
+			if (oldValue.getWidth() != newValue.getWidth() || oldValue.getHeight() != newValue.getHeight()) {
+
+				resizePause.playFromStart();
+
+			}
+
+		});
+
+	}
+
+	/**
+	 * Switches between drawing the graph with a line chart and drawing it directly onto a canvas. Every plotted curve is
+	 * handed to the new renderer, which takes the place of the old one within the given layout.
+	 * @param mainVBox The layout that contains the graph.
+	 */
+	
+	private void switchRenderer(VBox mainVBox) {
+
+		PlotRenderer oldRenderer = renderer;
+
+		renderer = renderer instanceof ChartRenderer ? new CanvasRenderer() : new ChartRenderer();
+
+		renderer.setViewport(xLower, xUpper, yLower, yUpper);
+
+		equationMap.forEach((tf, plotted) -> {
+
+			if (plotted.getCurve() != null) {
+
+				renderer.setCurve(tf, M4Decimator.decimate(plotted.getCurve(), xLower, xUpper, renderer.getPlotWidth()),
+						colorMap.get(tf));
+
+			}
+
+		});
+
+		derivativeMap.forEach((tf, derivative) -> {
+
+			if (derivative.getCurve() != null) {
+
+				renderer.setCurve(derivative, M4Decimator.decimate(derivative.getCurve(), xLower, xUpper, renderer.getPlotWidth()),
+						colorMap.get(tf).darker());
+
+			}
+
+		});
+
+		importMap.keySet().forEach(this::scheduleDecimation);
+
+		showMarkers();
+
+		installZoomHandlers();
+
+		installResizeHandler();
+
+		int index = mainVBox.getChildren().indexOf(oldRenderer.getNode());
+
+		mainVBox.getChildren().set(index, renderer.getNode());
+
+	}
 
-				try {
+	/**
+	 * Adds an equation box to the bottom panel VBox. The equation box has all the same attributes of the initial equation box
+	 * apart from the ability to be removed via the remove button. The equation box contains a textfield, a color identifier, 
+	 * and a remove button. Allows for dynamic updates of the graph.
+	 * 
+	 * @return finalEquationBox The VBox that contains the equation box that allows for error messages to appear below that 
+	 * particular equation box if needed.
+	 */
+	
+	private VBox addEquationBox() {
+
+		// setting up initial properies of the equation box
+		// -------------------------------------------------
+		VBox finalEquationBox = new VBox();
+
+		HBox equationBox = new HBox(); 
+
+		Circle circle = new Circle(20, Color.WHITE);
+
+		circle.setStroke(Color.BLACK); 
+
+		circle.setStrokeWidth(2.0);
+
+		Label yLabel = new Label("y = ");
+
+		yLabel.setFont(new Font(24));
+
+		yLabel.setTranslateX(10);
+
+		TextField tf = new TextField();
+
+		tf.setPrefSize(900, 40);
 
-					lineChart.getData().removeAll(equationMap.get(thistf));
+		tf.setFont(new Font(18));
+		// -------------------------------------------------
+		
+		// dynamically update the graph for that selected text field
+
+		tf.textProperty().addListener(new ChangeListener<String>() {
+
+			@Override
+
+			public void changed(ObservableValue<? extends String> observable, String oldValue, String newValue) {
+
+				if (newValue.isEmpty()) {
+
+					removeEquation(tf);
+
+					// remove color from circle
+
+					Circle c = (Circle) equationBox.getChildren().get(0);
+
+					c.setFill(Color.WHITE);
+
+					VBox parentVBox = (VBox) equationBox.getParent();
+
+					parentVBox.getChildren().remove(errorMap.get(tf));
 
-					colorMap.remove(thistf);
+					errorMap.remove(tf);
 
 				}
 
-				catch (NullPointerException e) {
+				else {
+
+					plotEquation(equationBox, newValue);
 
 				}
 
-				equationMap.remove(thistf);
+			}
+
+		});
+
+		equationBox.setSpacing(10);
+
+		equationBox.setPadding(new Insets(20, 0, 20, 0));
+
+		Button removeButton = new Button("X");
+
+		removeButton.setStyle("-fx-background-color: red; -fx-text-fill: black;");
+
+		removeButton.setFont(new Font(25));
+
+		removeButton.setPrefSize(40, 40);
+
+		// removes that equation box from the bottom panel box if pressed
+		// -----------------------------------------------------------------------
+		removeButton.setOnAction(new EventHandler<ActionEvent>() {
+
+			@Override
+
+			public void handle(ActionEvent event) {
+
+				TextField thistf = (TextField) equationBox.getChildren().get(2);
+
+				removeEquation(thistf);
+
+				colorMap.remove(thistf);
 
 				VBox bottomPanelVBox = (VBox) equationBox.getParent().getParent();
 				
@@ -628,7 +1693,7 @@ public class Graph {
 		});
 		// -----------------------------------------------------------------------
 
-		equationBox.getChildren().addAll(circle, yLabel, tf, removeButton);
+		equationBox.getChildren().addAll(circle, yLabel, tf, createDerivativeButton(tf), removeButton);
 
 		finalEquationBox.getChildren().add(equationBox);
 
@@ -674,12 +1739,11 @@ public class Graph {
 
 	/**
 	 * Assigns a random color to the equation.
-	 * @param seriesArr An array of series objects that represent one plotted equation.
 	 * @param tf The textfield assigned to that equation.
-	 * @return seriesColor The random color that has been chosen and applied to the line.
+	 * @return seriesColor The random color that has been chosen for the line.
 	 */
 	
-	private Color assignColor(ArrayList<XYChart.Series<Number, Number>> seriesArr, TextField tf) {
+	private Color assignColor(TextField tf) {
 
 		Color seriesColor = null;
 
@@ -699,24 +1763,6 @@ public class Graph {
 
 		}
 
-		// make color the same for every series in the equation
-
-		for (XYChart.Series<Number, Number> s : seriesArr) {
-
-			Node currLine = s.getNode().lookup(".chart-series-line");
-
-			String rgb = String.format("%d, %d, %d",
-
-					(int) (seriesColor.getRed() * 255),
-
-					(int) (seriesColor.getGreen() * 255),
-
-					(int) (seriesColor.getBlue() * 255));
-
-			currLine.setStyle("-fx-stroke: rgba(" + rgb + ", 1.0);");
-
-		}
-
 		return seriesColor;
 
 	}
@@ -766,4 +1812,66 @@ public class Graph {
 		}
 
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Identifies a pair of plotted equations regardless of their order.
+	 */
+	
+	private static final class EquationPair {
+
+		/**
+		 * Both equations of the pair.
+		 */
+		
+		private final PlottedEquation first, second;
+
+		/**
+		 * Initializes the pair.
+		 * @param first One equation of the pair.
+		 * @param second The other equation of the pair.
+		 */
+		
+		EquationPair(PlottedEquation first, PlottedEquation second) {
+
+			this.first = first;
+
+			this.second = second;
+
+		}
+
+		/**
+		 * Checks if the given equation is part of the pair.
+		 * @param plotted The plotted equation.
+		 * @return true/false If the equation is either equation of the pair.
+		 */
+		
+		boolean contains(PlottedEquation plotted) {
+
+			return first == plotted || second == plotted;
+
+		}
+
+		@Override
+		public boolean equals(Object other) {
+
+			if (!(other instanceof EquationPair)) {
+
+				return false;
+
+			}
+
+			EquationPair pair = (EquationPair) other;
+
+			return (first == pair.first && second == pair.second) || (first == pair.second && second == pair.first);
+
+		}
+
+		@Override
+		public int hashCode() {
+
+			return System.identityHashCode(first) ^ System.identityHashCode(second);
+
+		}
+
+	}
+}
@@ -0,0 +1,707 @@
+package application;
+
+import java.util.Arrays;
+
+import java.util.HashMap;
+
+import java.util.concurrent.ForkJoinPool;
+
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Traces the curve of a relation between x and y, wherever its compiled expression is 0, with marching squares on a
+ * quadtree. The graph is covered with a coarse grid of square cells a few pixels wide, and a cell is split into four as long
+ * as its corners change sign or interval arithmetic cannot prove that the expression stays away from 0 within it, so only
+ * the cells the curve passes through are refined down to a single pixel and the rest of the graph costs a single interval
+ * evaluation per coarse cell. Within a cell of a single pixel the curve crosses every edge whose corners have different
+ * signs, at the point found by linear interpolation, and the crossings are joined into line segments. The rows of the coarse
+ * grid are traced in parallel on the common fork/join pool, each with its own copy of the expression, and the segments are
+ * chained into polylines by the edges they share once every row is done.
+ *
+ * @author Eitan Tuchin
+ *
+ */
+
+public class ImplicitSampler {
+
+	/**
+	 * The width and height in pixels of a cell of the coarse grid.
+	 */
+
+	static final double COARSE_SPACING = 16;
+
+	/**
+	 * How many times a cell of the coarse grid may be split into four. Four splits of a cell COARSE_SPACING pixels wide
+	 * leave cells of a single pixel.
+	 */
+
+	static final int MAX_DEPTH = 4;
+
+	/**
+	 * The largest amount of rows of the coarse grid traced by a single thread.
+	 */
+
+	static final int CHUNK_ROWS = 2;
+
+	/**
+	 * The expression being traced.
+	 */
+
+	private final CompiledExpression expression;
+
+	/**
+	 * Computes bounds of the expression over cells of the grid.
+	 */
+
+	private final IntervalEvaluator intervals;
+
+	/**
+	 * Receives the bounds computed by the interval evaluator.
+	 */
+
+	private final double[] bounds = new double[2];
+
+	/**
+	 * The lower bounds of the grid on both axes.
+	 */
+
+	private final double xLower, yLower;
+
+	/**
+	 * The width and height of a cell that cannot be split anymore.
+	 */
+
+	private final double cellWidth, cellHeight;
+
+	/**
+	 * The line segments found so far.
+	 */
+
+	private final Segments segments = new Segments();
+
+	/**
+	 * Initializes the sampler. Points of the grid are given by their position in cells that cannot be split anymore.
+	 * @param expression The expression to trace.
+	 * @param xLower The lower bound of the grid along the x-axis.
+	 * @param yLower The lower bound of the grid along the y-axis.
+	 * @param cellWidth The width of a cell that cannot be split anymore.
+	 * @param cellHeight The height of a cell that cannot be split anymore.
+	 */
+
+	private ImplicitSampler(CompiledExpression expression, double xLower, double yLower, double cellWidth, double cellHeight) {
+
+		this.expression = expression;
+
+		this.intervals = new IntervalEvaluator(expression);
+
+		this.xLower = xLower;
+
+		this.yLower = yLower;
+
+		this.cellWidth = cellWidth;
+
+		this.cellHeight = cellHeight;
+	}
+
+	/**
+	 * Traces the given relation over the visible part of the graph, using every core. The given expression is never
+	 * evaluated itself, so it may be traced by several threads at once. Stops early if the calling thread is interrupted,
+	 * in which case only part of the curve is returned. A smaller maximum depth gives a coarser curve sooner, for example
+	 * while the user is still zooming or panning.
+	 * @param expression The expression of the relation, which is 0 wherever the relation holds.
+	 * @param maxDepth How many times a cell of the coarse grid may be split into four, at most MAX_DEPTH.
+	 * @param xLower The lower bound of the visible x-axis.
+	 * @param xUpper The upper bound of the visible x-axis.
+	 * @param yLower The lower bound of the visible y-axis.
+	 * @param yUpper The upper bound of the visible y-axis.
+	 * @param width The width of the visible x-axis in pixels.
+	 * @param height The height of the visible y-axis in pixels.
+	 * @return curve The traced curve, with one segment for every connected piece.
+	 */
+
+	public static SampledCurve sample(CompiledExpression expression, int maxDepth, double xLower, double xUpper, double yLower,
+			double yUpper, double width, double height) {
+
+		int columns = (int) Math.ceil(width / COARSE_SPACING), rows = (int) Math.ceil(height / COARSE_SPACING);
+
+		double cellWidth = Math.scalb(COARSE_SPACING * (xUpper - xLower) / width, -maxDepth);
+
+		double cellHeight = Math.scalb(COARSE_SPACING * (yUpper - yLower) / height, -maxDepth);
+
+		Segments segments = ForkJoinPool.commonPool().invoke(new RowTask(expression, maxDepth, xLower, yLower, cellWidth,
+				cellHeight, columns, 0, rows, Thread.currentThread()));
+
+		return segments.chain();
+	}
+
+	/**
+	 * Traces a range of rows of the coarse grid. The values at the corners of every coarse cell are evaluated once and
+	 * shared with the neighboring cells.
+	 * @param maxDepth How many times a cell of the coarse grid may be split into four.
+	 * @param columns The amount of columns of the coarse grid.
+	 * @param first The first row to trace.
+	 * @param last The row right after the last row to trace.
+	 * @param caller The thread that is waiting for the curve.
+	 */
+
+	private void traceRows(int maxDepth, int columns, int first, int last, Thread caller) {
+
+		int size = 1 << maxDepth;
+
+		double[] below = new double[columns + 1], above = new double[columns + 1];
+
+		for (int column = 0; column <= columns; column++) {
+
+			below[column] = evaluate(column * size, first * size);
+		}
+
+		for (int row = first; row < last; row++) {
+
+			// give up on a curve nobody is waiting for anymore
+
+			if (caller.isInterrupted()) {
+
+				break;
+			}
+
+			for (int column = 0; column <= columns; column++) {
+
+				above[column] = evaluate(column * size, (row + 1) * size);
+			}
+
+			for (int column = 0; column < columns; column++) {
+
+				trace(column * size, row * size, size, below[column], below[column + 1], above[column], above[column + 1]);
+			}
+
+			double[] swap = below;
+
+			below = above;
+
+			above = swap;
+		}
+	}
+
+	/**
+	 * Adds the line segments within a cell of the grid, splitting the cell into four if needed.
+	 * @param gx The position of the left edge of the cell.
+	 * @param gy The position of the bottom edge of the cell.
+	 * @param size The width and height of the cell in cells that cannot be split anymore.
+	 * @param f00 The value at the bottom left corner.
+	 * @param f10 The value at the bottom right corner.
+	 * @param f01 The value at the top left corner.
+	 * @param f11 The value at the top right corner.
+	 */
+
+	private void trace(int gx, int gy, int size, double f00, double f10, double f01, double f11) {
+
+		boolean continuous = intervals.evaluate(x(gx), x(gx + size), y(gy), y(gy + size), bounds);
+
+		// the curve cannot pass through a cell where the expression stays above or below 0
+
+		if (bounds[0] > 0 || bounds[1] < 0) {
+
+			return;
+		}
+
+		if (size == 1) {
+
+			// the sign also changes across a pole, where the expression grows without limit instead of passing 0
+
+			if (!continuous && (bounds[0] == Double.NEGATIVE_INFINITY || bounds[1] == Double.POSITIVE_INFINITY)) {
+
+				return;
+			}
+
+			march(gx, gy, f00, f10, f01, f11);
+
+			return;
+		}
+
+		int half = size / 2;
+
+		double bottom = evaluate(gx + half, gy), left = evaluate(gx, gy + half), center = evaluate(gx + half, gy + half);
+
+		double right = evaluate(gx + size, gy + half), top = evaluate(gx + half, gy + size);
+
+		trace(gx, gy, half, f00, bottom, left, center);
+
+		trace(gx + half, gy, half, bottom, f10, center, right);
+
+		trace(gx, gy + half, half, left, center, f01, top);
+
+		trace(gx + half, gy + half, half, center, right, top, f11);
+	}
+
+	/**
+	 * Adds the line segments within a cell of a single pixel. The curve crosses every edge whose corners have different
+	 * signs. If all four edges are crossed, the value at the center of the cell decides which corners are connected.
+	 * @param gx The position of the left edge of the cell.
+	 * @param gy The position of the bottom edge of the cell.
+	 * @param f00 The value at the bottom left corner.
+	 * @param f10 The value at the bottom right corner.
+	 * @param f01 The value at the top left corner.
+	 * @param f11 The value at the top right corner.
+	 */
+
+	private void march(int gx, int gy, double f00, double f10, double f01, double f11) {
+
+		// the curve does not exist everywhere within the cell
+
+		if (Double.isNaN(f00) || Double.isNaN(f10) || Double.isNaN(f01) || Double.isNaN(f11)) {
+
+			return;
+		}
+
+		boolean s00 = f00 < 0, s10 = f10 < 0, s01 = f01 < 0, s11 = f11 < 0;
+
+		boolean bottom = s00 != s10, right = s10 != s11, top = s01 != s11, left = s00 != s01;
+
+		if (bottom && right && top && left) {
+
+			double center = expression.evaluate(x(gx) + cellWidth / 2, y(gy) + cellHeight / 2);
+
+			if ((center < 0) == s00) {
+
+				// the bottom left and top right corners are connected through the center
+
+				addSegment(gx, gy, false, f00, f10, gx + 1, gy, true, f10, f11);
+
+				addSegment(gx, gy, true, f00, f01, gx, gy + 1, false, f01, f11);
+			}
+
+			else {
+
+				addSegment(gx, gy, false, f00, f10, gx, gy, true, f00, f01);
+
+				addSegment(gx + 1, gy, true, f10, f11, gx, gy + 1, false, f01, f11);
+			}
+
+			return;
+		}
+
+		// otherwise exactly two edges or none are crossed
+
+		if (bottom && right) {
+
+			addSegment(gx, gy, false, f00, f10, gx + 1, gy, true, f10, f11);
+		}
+
+		else if (bottom && top) {
+
+			addSegment(gx, gy, false, f00, f10, gx, gy + 1, false, f01, f11);
+		}
+
+		else if (bottom && left) {
+
+			addSegment(gx, gy, false, f00, f10, gx, gy, true, f00, f01);
+		}
+
+		else if (right && top) {
+
+			addSegment(gx + 1, gy, true, f10, f11, gx, gy + 1, false, f01, f11);
+		}
+
+		else if (right && left) {
+
+			addSegment(gx + 1, gy, true, f10, f11, gx, gy, true, f00, f01);
+		}
+
+		else if (top && left) {
+
+			addSegment(gx, gy + 1, false, f01, f11, gx, gy, true, f00, f01);
+		}
+	}
+
+	/**
+	 * Adds a line segment between the crossings of two edges of the grid.
+	 * @param ax The position of the lower end of the first edge along the x-axis.
+	 * @param ay The position of the lower end of the first edge along the y-axis.
+	 * @param aVertical If the first edge is vertical.
+	 * @param fa0 The value at the lower end of the first edge.
+	 * @param fa1 The value at the upper end of the first edge.
+	 * @param bx The position of the lower end of the second edge along the x-axis.
+	 * @param by The position of the lower end of the second edge along the y-axis.
+	 * @param bVertical If the second edge is vertical.
+	 * @param fb0 The value at the lower end of the second edge.
+	 * @param fb1 The value at the upper end of the second edge.
+	 */
+
+	private void addSegment(int ax, int ay, boolean aVertical, double fa0, double fa1, int bx, int by, boolean bVertical,
+			double fb0, double fb1) {
+
+		addCrossing(ax, ay, aVertical, fa0, fa1);
+
+		addCrossing(bx, by, bVertical, fb0, fb1);
+	}
+
+	/**
+	 * Adds the point where the curve crosses an edge of the grid as the end of a line segment. Both cells next to an edge
+	 * compute the exact same point for it, so the segments can be chained by the edge alone.
+	 * @param gx The position of the lower end of the edge along the x-axis.
+	 * @param gy The position of the lower end of the edge along the y-axis.
+	 * @param vertical If the edge is vertical.
+	 * @param f0 The value at the lower end of the edge.
+	 * @param f1 The value at the upper end of the edge.
+	 */
+
+	private void addCrossing(int gx, int gy, boolean vertical, double f0, double f1) {
+
+		double t = f0 / (f0 - f1);
+
+		long key = ((long) gy << 32 | gx & 0xffffffffL) << 1 | (vertical ? 1 : 0);
+
+		if (vertical) {
+
+			segments.add(key, x(gx), y(gy) + t * cellHeight);
+		}
+
+		else {
+
+			segments.add(key, x(gx) + t * cellWidth, y(gy));
+		}
+	}
+
+	/**
+	 * Evaluates the expression at a point of the grid.
+	 * @param gx The position of the point along the x-axis.
+	 * @param gy The position of the point along the y-axis.
+	 * @return value The value of the expression at the point.
+	 */
+
+	private double evaluate(int gx, int gy) {
+
+		return expression.evaluate(x(gx), y(gy));
+	}
+
+	/**
+	 * Gets the x-axis value of a position of the grid.
+	 * @param gx The position along the x-axis.
+	 * @return x The x-axis value.
+	 */
+
+	private double x(int gx) {
+
+		return xLower + gx * cellWidth;
+	}
+
+	/**
+	 * Gets the y-axis value of a position of the grid.
+	 * @param gy The position along the y-axis.
+	 * @return y The y-axis value.
+	 */
+
+	private double y(int gy) {
+
+		return yLower + gy * cellHeight;
+	}
+
+	/**
+	 * The line segments found by marching squares, stored as pairs of ends in primitive arrays. Every end is identified by
+	 * the edge of the grid it lies on, which is shared by at most two segments.
+	 */
+
+	private static final class Segments {
+
+		/**
+		 * The edge of every end.
+		 */
+
+		private long[] keys = new long[64];
+
+		/**
+		 * The x-axis value of every end.
+		 */
+
+		private double[] xs = new double[64];
+
+		/**
+		 * The y-axis value of every end.
+		 */
+
+		private double[] ys = new double[64];
+
+		/**
+		 * The amount of ends, twice the amount of segments.
+		 */
+
+		private int size;
+
+		/**
+		 * Adds the end of a segment.
+		 * @param key The edge the end lies on.
+		 * @param x The x-axis value of the end.
+		 * @param y The y-axis value of the end.
+		 */
+
+		void add(long key, double x, double y) {
+
+			if (size == keys.length) {
+
+				keys = Arrays.copyOf(keys, size * 2);
+
+				xs = Arrays.copyOf(xs, size * 2);
+
+				ys = Arrays.copyOf(ys, size * 2);
+			}
+
+			keys[size] = key;
+
+			xs[size] = x;
+
+			ys[size] = y;
+
+			size++;
+		}
+
+		/**
+		 * Adds every segment of the given list after the segments of this one.
+		 * @param other The segments to add.
+		 */
+
+		void append(Segments other) {
+
+			for (int i = 0; i < other.size; i++) {
+
+				add(other.keys[i], other.xs[i], other.ys[i]);
+			}
+		}
+
+		/**
+		 * Joins the segments that share an edge into polylines. Polylines that end at the border of the graph or where the
+		 * curve does not exist are followed from one of their ends first, then every closed loop is followed back to where it
+		 * started.
+		 * @return curve The polylines, one segment each.
+		 */
+
+		SampledCurve chain() {
+
+			// the end of another segment on the same edge as every end, or -1
+
+			int[] partners = new int[size];
+
+			Arrays.fill(partners, -1);
+
+			HashMap<Long, Integer> unpaired = new HashMap<>();
+
+			for (int end = 0; end < size; end++) {
+
+				Integer other = unpaired.remove(keys[end]);
+
+				if (other != null) {
+
+					partners[end] = other;
+
+					partners[other] = end;
+				}
+
+				else {
+
+					unpaired.put(keys[end], end);
+				}
+			}
+
+			SampledCurve curve = new SampledCurve(size);
+
+			boolean[] used = new boolean[size / 2];
+
+			for (int pass = 0; pass < 2; pass++) {
+
+				for (int segment = 0; segment < used.length; segment++) {
+
+					if (used[segment]) {
+
+						continue;
+					}
+
+					int start = 2 * segment;
+
+					if (pass == 0) {
+
+						if (partners[start] >= 0) {
+
+							start++;
+						}
+
+						if (partners[start] >= 0) {
+
+							continue;
+						}
+					}
+
+					follow(start, partners, used, curve);
+				}
+			}
+
+			return curve;
+		}
+
+		/**
+		 * Adds the polyline that starts at the given end to the curve as a segment of its own.
+		 * @param start The end to start at.
+		 * @param partners The end of another segment on the same edge as every end, or -1.
+		 * @param used If every segment has already been added.
+		 * @param curve The curve the polyline is added to.
+		 */
+
+		private void follow(int start, int[] partners, boolean[] used, SampledCurve curve) {
+
+			curve.add(xs[start], ys[start]);
+
+			int end = start;
+
+			while (true) {
+
+				used[end / 2] = true;
+
+				// the other end of the same segment
+
+				int exit = end ^ 1;
+
+				curve.add(xs[exit], ys[exit]);
+
+				int next = partners[exit];
+
+				if (next < 0 || used[next / 2]) {
+
+					break;
+				}
+
+				end = next;
+			}
+
+			curve.breakSegment();
+		}
+	}
+
+	/**
+	 * Traces a range of rows of the coarse grid, splitting it in half and tracing both halves on different threads as long
+	 * as it has more than CHUNK_ROWS rows. The segments of both halves are joined back together in order.
+	 */
+
+	private static class RowTask extends RecursiveTask<Segments> {
+
+		/**
+		 * The version of the task for serialization.
+		 */
+
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * The expression to trace, which is copied for every thread.
+		 */
+
+		private final CompiledExpression expression;
+
+		/**
+		 * How many times a cell of the coarse grid may be split into four.
+		 */
+
+		private final int maxDepth;
+
+		/**
+		 * The lower bounds of the grid on both axes.
+		 */
+
+		private final double xLower, yLower;
+
+		/**
+		 * The width and height of a cell that cannot be split anymore.
+		 */
+
+		private final double cellWidth, cellHeight;
+
+		/**
+		 * The amount of columns of the coarse grid.
+		 */
+
+		private final int columns;
+
+		/**
+		 * The first row to trace.
+		 */
+
+		private final int first;
+
+		/**
+		 * The row right after the last row to trace.
+		 */
+
+		private final int last;
+
+		/**
+		 * The thread that is waiting for the curve.
+		 */
+
+		private final Thread caller;
+
+		/**
+		 * Initializes the task.
+		 * @param expression The expression to trace.
+		 * @param maxDepth How many times a cell of the coarse grid may be split into four.
+		 * @param xLower The lower bound of the grid along the x-axis.
+		 * @param yLower The lower bound of the grid along the y-axis.
+		 * @param cellWidth The width of a cell that cannot be split anymore.
+		 * @param cellHeight The height of a cell that cannot be split anymore.
+		 * @param columns The amount of columns of the coarse grid.
+		 * @param first The first row to trace.
+		 * @param last The row right after the last row to trace.
+		 * @param caller The thread that is waiting for the curve.
+		 */
+
+		RowTask(CompiledExpression expression, int maxDepth, double xLower, double yLower, double cellWidth, double cellHeight,
+				int columns, int first, int last, Thread caller) {
+
+			this.expression = expression;
+
+			this.maxDepth = maxDepth;
+
+			this.xLower = xLower;
+
+			this.yLower = yLower;
+
+			this.cellWidth = cellWidth;
+
+			this.cellHeight = cellHeight;
+
+			this.columns = columns;
+
+			this.first = first;
+
+			this.last = last;
+
+			this.caller = caller;
+		}
+
+		@Override
+		protected Segments compute() {
+
+			if (last - first <= CHUNK_ROWS) {
+
+				ImplicitSampler sampler = new ImplicitSampler(expression.copy(), xLower, yLower, cellWidth, cellHeight);
+
+				sampler.traceRows(maxDepth, columns, first, last, caller);
+
+				return sampler.segments;
+			}
+
+			int middle = first + (last - first) / 2;
+
+			RowTask left = new RowTask(expression, maxDepth, xLower, yLower, cellWidth, cellHeight, columns, first, middle,
+					caller);
+
+			RowTask right = new RowTask(expression, maxDepth, xLower, yLower, cellWidth, cellHeight, columns, middle, last,
+					caller);
+
+			left.fork();
+
+			Segments rightSegments = right.compute();
+
+			Segments segments = left.join();
+
+			segments.append(rightSegments);
+
+			return segments;
+		}
+	}
+}
@@ -0,0 +1,394 @@
+package application;
+
+/**
+ * Runs the program of a compiled expression on intervals instead of numbers, which gives bounds that the expression is
+ * guaranteed to stay within wherever it exists over an interval of the x-axis, however the curve behaves between the
+ * points that have been sampled. Every bound is rounded outwards by one unit in the last place, so rounding errors can
+ * only make the bounds wider. Also tells whether every operation is continuous over its operands, which is not the case if
+ * the expression divides by an interval that contains 0, raises a base that may be negative to a fractional power, or takes
+ * the logarithm of an interval that contains 0.
+ * An evaluator reuses its stacks between calls, so it must not be used by more than one thread at a time.
+ *
+ * @author Eitan Tuchin
+ *
+ */
+
+public class IntervalEvaluator {
+
+	/**
+	 * The program of the expression.
+	 */
+
+	private final int[] program;
+
+	/**
+	 * The number pushed by every instruction of the program that is a number.
+	 */
+
+	private final double[] constants;
+
+	/**
+	 * The register used by every instruction of the program that stores or loads a register.
+	 */
+
+	private final int[] slots;
+
+	/**
+	 * The lower and upper bounds of the operands while the program runs.
+	 */
+
+	private final double[] lowerStack, upperStack;
+
+	/**
+	 * The lower and upper bounds of shared subexpressions while the program runs.
+	 */
+
+	private final double[] lowerRegisters, upperRegisters;
+
+	/**
+	 * If every operation so far has been continuous over its operands.
+	 */
+
+	private boolean continuous;
+
+	/**
+	 * Initializes the evaluator.
+	 * @param expression The expression to evaluate.
+	 */
+
+	public IntervalEvaluator(CompiledExpression expression) {
+
+		program = expression.getProgram();
+
+		constants = expression.getConstants();
+
+		slots = expression.getSlots();
+
+		lowerStack = new double[expression.getStackSize()];
+
+		upperStack = new double[expression.getStackSize()];
+
+		lowerRegisters = new double[expression.getRegisterCount()];
+
+		upperRegisters = new double[expression.getRegisterCount()];
+	}
+
+	/**
+	 * Computes bounds of the expression wherever it exists over an interval of the x-axis, or of the parameter of a
+	 * parametric or polar equation. A bound is infinite if the
+	 * expression may grow without limit, and both are if nothing better is known.
+	 * @param xLower The lower bound of the interval.
+	 * @param xUpper The upper bound of the interval.
+	 * @param bounds Receives the lower bound of the expression at index 0 and the upper bound at index 1, followed by the
+	 * bounds of any other result.
+	 * @return true/false If the expression is continuous over the whole interval.
+	 */
+
+	public boolean evaluate(double xLower, double xUpper, double[] bounds) {
+
+		// y may be anything, but a function of x never reads it
+
+		return evaluate(xLower, xUpper, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, bounds);
+	}
+
+	/**
+	 * Computes bounds of the expression wherever it exists over a rectangle of the graph.
+	 * @param xLower The lower bound of the rectangle along the x-axis.
+	 * @param xUpper The upper bound of the rectangle along the x-axis.
+	 * @param yLower The lower bound of the rectangle along the y-axis.
+	 * @param yUpper The upper bound of the rectangle along the y-axis.
+	 * @param bounds Receives the lower bound of the expression at index 0 and the upper bound at index 1, followed by the
+	 * bounds of any other result.
+	 * @return true/false If the expression is continuous over the whole rectangle.
+	 */
+
+	public boolean evaluate(double xLower, double xUpper, double yLower, double yUpper, double[] bounds) {
+
+		continuous = true;
+
+		int top = -1;
+
+		for (int i = 0; i < program.length; ++i) {
+
+			switch (program[i]) {
+
+				case ExpressionNode.NUMBER:
+
+					++top;
+
+					lowerStack[top] = upperStack[top] = constants[i];
+
+					break;
+
+				case ExpressionNode.VARIABLE:
+
+					++top;
+
+					boolean x = slots[i] != ExpressionNode.Y;
+
+					lowerStack[top] = x ? xLower : yLower;
+
+					upperStack[top] = x ? xUpper : yUpper;
+
+					break;
+
+				case CompiledExpression.STORE:
+
+					lowerRegisters[slots[i]] = lowerStack[top];
+
+					upperRegisters[slots[i]] = upperStack[top];
+
+					break;
+
+				case CompiledExpression.LOAD:
+
+					++top;
+
+					lowerStack[top] = lowerRegisters[slots[i]];
+
+					upperStack[top] = upperRegisters[slots[i]];
+
+					break;
+
+				case ExpressionNode.NEGATE:
+
+					double lower = lowerStack[top];
+
+					lowerStack[top] = -upperStack[top];
+
+					upperStack[top] = -lower;
+
+					break;
+
+				case ExpressionNode.LOG:
+
+					log(top);
+
+					break;
+
+				case ExpressionNode.ADD:
+
+					top--;
+
+					set(top, lowerStack[top] + lowerStack[top + 1], upperStack[top] + upperStack[top + 1]);
+
+					break;
+
+				case ExpressionNode.SUBTRACT:
+
+					top--;
+
+					set(top, lowerStack[top] - upperStack[top + 1], upperStack[top] - lowerStack[top + 1]);
+
+					break;
+
+				case ExpressionNode.MULTIPLY:
+
+					top--;
+
+					multiply(top);
+
+					break;
+
+				case ExpressionNode.DIVIDE:
+
+					top--;
+
+					divide(top);
+
+					break;
+
+				case ExpressionNode.POWER:
+
+					top--;
+
+					power(top);
+
+					break;
+
+				default:
+
+					throw new IllegalStateException("Invalid node type: " + program[i]);
+			}
+		}
+
+		for (int i = 0; i < bounds.length / 2; i++) {
+
+			bounds[2 * i] = lowerStack[i];
+
+			bounds[2 * i + 1] = upperStack[i];
+		}
+
+		return continuous;
+	}
+
+	/**
+	 * Multiplies the interval at the given position of the stack by the one above it.
+	 * @param top The position of the left operand, which receives the result.
+	 */
+
+	private void multiply(int top) {
+
+		double a = lowerStack[top], b = upperStack[top], c = lowerStack[top + 1], d = upperStack[top + 1];
+
+		double ac = a * c, ad = a * d, bc = b * c, bd = b * d;
+
+		set(top, Math.min(Math.min(ac, ad), Math.min(bc, bd)), Math.max(Math.max(ac, ad), Math.max(bc, bd)));
+	}
+
+	/**
+	 * Divides the interval at the given position of the stack by the one above it.
+	 * @param top The position of the dividend, which receives the result.
+	 */
+
+	private void divide(int top) {
+
+		double a = lowerStack[top], b = upperStack[top], c = lowerStack[top + 1], d = upperStack[top + 1];
+
+		// a divisor that may be 0 leaves a pole or a gap somewhere within the interval
+
+		if (c <= 0 && d >= 0) {
+
+			unbounded(top);
+
+			return;
+		}
+
+		double ac = a / c, ad = a / d, bc = b / c, bd = b / d;
+
+		set(top, Math.min(Math.min(ac, ad), Math.min(bc, bd)), Math.max(Math.max(ac, ad), Math.max(bc, bd)));
+	}
+
+	/**
+	 * Raises the interval at the given position of the stack to the power of the one above it, the same way Math.pow does
+	 * for every pair of numbers within them.
+	 * @param top The position of the base, which receives the result.
+	 */
+
+	private void power(int top) {
+
+		double a = lowerStack[top], b = upperStack[top], c = lowerStack[top + 1], d = upperStack[top + 1];
+
+		if (c == d && c == Math.rint(c) && Math.abs(c) < 0x1p53) {
+
+			// a whole exponent is defined for every base, and x^n only changes direction at 0
+
+			if (c == 0) {
+
+				set(top, 1, 1);
+			}
+
+			else if (a > 0 || b < 0 || (c > 0 && c % 2 != 0)) {
+
+				double pa = Math.pow(a, c), pb = Math.pow(b, c);
+
+				set(top, Math.min(pa, pb), Math.max(pa, pb));
+			}
+
+			else if (c > 0) {
+
+				set(top, 0, Math.max(Math.pow(a, c), Math.pow(b, c)));
+			}
+
+			else {
+
+				unbounded(top);
+			}
+		}
+
+		else if (a > 0) {
+
+			// a positive base makes the power move in a single direction along both operands
+
+			double ac = Math.pow(a, c), ad = Math.pow(a, d), bc = Math.pow(b, c), bd = Math.pow(b, d);
+
+			set(top, Math.min(Math.min(ac, ad), Math.min(bc, bd)), Math.max(Math.max(ac, ad), Math.max(bc, bd)));
+		}
+
+		else if (c == d && b >= 0) {
+
+			// a fractional power only exists where the base is not negative, and grows without limit as the base goes to 0 if
+			// the exponent is negative
+
+			if (a < 0 || c < 0) {
+
+				continuous = false;
+			}
+
+			double p0 = Math.pow(0, c), pb = Math.pow(b, c);
+
+			set(top, Math.min(p0, pb), Math.max(p0, pb));
+		}
+
+		else {
+
+			unbounded(top);
+		}
+	}
+
+	/**
+	 * Takes the natural logarithm of the interval at the given position of the stack.
+	 * @param top The position of the operand, which receives the result.
+	 */
+
+	private void log(int top) {
+
+		double a = lowerStack[top], b = upperStack[top];
+
+		if (a > 0) {
+
+			set(top, Math.log(a), Math.log(b));
+		}
+
+		else if (b > 0) {
+
+			// the logarithm only exists where the operand is positive, and falls without limit as it goes to 0
+
+			continuous = false;
+
+			set(top, Double.NEGATIVE_INFINITY, Math.log(b));
+		}
+
+		else {
+
+			unbounded(top);
+		}
+	}
+
+	/**
+	 * Stores an interval at the given position of the stack, rounded outwards. A bound that is not a number, which only
+	 * comes from operations such as infinity minus infinity, makes the interval span every number.
+	 * @param top The position within the stack.
+	 * @param lower The computed lower bound.
+	 * @param upper The computed upper bound.
+	 */
+
+	private void set(int top, double lower, double upper) {
+
+		if (Double.isNaN(lower) || Double.isNaN(upper)) {
+
+			unbounded(top);
+
+			return;
+		}
+
+		lowerStack[top] = Math.nextDown(lower);
+
+		upperStack[top] = Math.nextUp(upper);
+	}
+
+	/**
+	 * Stores the interval that spans every number at the given position of the stack, and marks the expression as not
+	 * continuous.
+	 * @param top The position within the stack.
+	 */
+
+	private void unbounded(int top) {
+
+		lowerStack[top] = Double.NEGATIVE_INFINITY;
+
+		upperStack[top] = Double.POSITIVE_INFINITY;
+
+		continuous = false;
+	}
+}
@@ -0,0 +1,237 @@
+package application;
+
+import java.math.BigDecimal;
+
+import java.util.ArrayList;
+
+/**
+ * Splits an equation into tokens in a single pass over its characters. Every character is classified by a simple comparison
+ * instead of a regular expression, and numbers with multiple digits or a decimal point are read in one scan together with
+ * their value. Any character that is not part of a legal equation is recognized as an exception.
+ *
+ * @author Eitan Tuchin
+ *
+ */
+
+public class Lexer {
+
+	/**
+	 * Splits the given equation into tokens.
+	 * @param expression The given equation.
+	 * @return tokenList The array of tokens in order.
+	 * @throws Exception An illegal character or an incomplete decimal number has been identified.
+	 */
+
+	public static ArrayList<Token> tokenize(String expression) throws Exception {
+
+		ArrayList<Token> tokenList = new ArrayList<>();
+
+		int i = 0;
+
+		while (i < expression.length()) {
+
+			char c = expression.charAt(i);
+
+			if (isDigit(c) || c == '.') {
+
+				int start = i;
+
+				i = scanNumber(expression, i);
+
+				tokenList.add(new Token(Token.NUMBER, Double.parseDouble(expression.substring(start, i)), c, start));
+
+				continue;
+			}
+
+			switch (c) {
+
+				case 'x':
+
+					tokenList.add(new Token(Token.VARIABLE, ExpressionNode.X, c, i));
+
+					break;
+
+				case 'y':
+
+					tokenList.add(new Token(Token.VARIABLE, ExpressionNode.Y, c, i));
+
+					break;
+
+				case 't':
+				case '\u03b8':
+
+					// θ is written as t, so both ways of writing a polar equation are normalized the same way
+
+					tokenList.add(new Token(Token.VARIABLE, ExpressionNode.T, 't', i));
+
+					break;
+
+				case 'r':
+
+					tokenList.add(new Token(Token.RADIUS, 0, c, i));
+
+					break;
+
+				case '=':
+
+					tokenList.add(new Token(Token.EQUALS, 0, c, i));
+
+					break;
+
+				case ',':
+
+					tokenList.add(new Token(Token.COMMA, 0, c, i));
+
+					break;
+
+				case 'd':
+
+					// d is only legal as the start of d/dx
+
+					if (!expression.startsWith("d/dx", i)) {
+
+						throw new Exception("Illegal character '" + c + "' at index " + i);
+					}
+
+					tokenList.add(new Token(Token.DERIVATIVE, 0, c, i));
+
+					i += 4;
+
+					continue;
+
+				case '+':
+				case '-':
+				case '*':
+				case '/':
+				case '^':
+
+					tokenList.add(new Token(Token.OPERATOR, 0, c, i));
+
+					break;
+
+				case '(':
+
+					tokenList.add(new Token(Token.OPEN_PAREN, 0, c, i));
+
+					break;
+
+				case ')':
+
+					tokenList.add(new Token(Token.CLOSED_PAREN, 0, c, i));
+
+					break;
+
+				default:
+
+					// the user inputted an illegal character
+
+					throw new Exception("Illegal character '" + c + "' at index " + i);
+			}
+
+			i++;
+		}
+
+		return tokenList;
+	}
+
+	/**
+	 * Writes the given tokens back into an equation, with every number written the same way, so equations that only
+	 * differ in how their numbers are written, such as 2x, 02x, and 2.0x, give the same text.
+	 * @param tokenList The tokens of an equation in order.
+	 * @return equation The normalized equation.
+	 */
+
+	public static String normalize(ArrayList<Token> tokenList) {
+
+		StringBuilder builder = new StringBuilder();
+
+		for (int i = 0; i < tokenList.size(); i++) {
+
+			Token token = tokenList.get(i);
+
+			if (token.getType() == Token.NUMBER) {
+
+				// two numbers in a row, such as 1.0.5, are multiplied and would otherwise run together into a different number
+
+				if (i > 0 && tokenList.get(i - 1).getType() == Token.NUMBER) {
+
+					builder.append('*');
+				}
+
+				builder.append(BigDecimal.valueOf(token.getValue()).stripTrailingZeros().toPlainString());
+			}
+
+			else if (token.getType() == Token.DERIVATIVE) {
+
+				builder.append("d/dx");
+			}
+
+			else {
+
+				builder.append(token.getOperator());
+			}
+		}
+
+		return builder.toString();
+	}
+
+	/**
+	 * Finds the end of the number that starts at the given index. A number is a sequence of digits that may be followed by
+	 * a decimal point and more digits, or a decimal point followed by digits.
+	 * @param expression The given equation.
+	 * @param start The index of the first character of the number.
+	 * @return end The index right after the last character of the number.
+	 * @throws Exception A decimal point is not followed by a digit.
+	 */
+
+	private static int scanNumber(String expression, int start) throws Exception {
+
+		int i = skipDigits(expression, start);
+
+		if (i < expression.length() && expression.charAt(i) == '.') {
+
+			int fractionStart = i + 1;
+
+			i = skipDigits(expression, fractionStart);
+
+			// a decimal point must be followed by a integer
+
+			if (i == fractionStart) {
+
+				throw new Exception("Incomplete decimal number at index " + start);
+			}
+		}
+
+		return i;
+	}
+
+	/**
+	 * Skips over every digit starting at the given index.
+	 * @param expression The given equation.
+	 * @param start The index to start at.
+	 * @return end The index of the first character that is not a digit.
+	 */
+
+	private static int skipDigits(String expression, int start) {
+
+		int i = start;
+
+		while (i < expression.length() && isDigit(expression.charAt(i))) {
+
+			i++;
+		}
+
+		return i;
+	}
+
+	/**
+	 * Checks if the given character is a digit from 0 to 9.
+	 * @param c The given character.
+	 * @return true/false If the character is a digit.
+	 */
+
+	private static boolean isDigit(char c) {
+
+		return c >= '0' && c <= '9';
+	}
+}
@@ -0,0 +1,232 @@
+package application;
+
+import java.util.Iterator;
+
+import java.util.LinkedHashMap;
+
+import java.util.Map;
+
+import java.util.function.Function;
+
+import java.util.function.ToLongFunction;
+
+/**
+ * A cache that keeps the most recently used values and forgets the least recently used ones once it holds more than a
+ * given amount of entries or of bytes. Counts hits, misses, and evictions so its limits can be tuned. Every method is
+ * synchronized, so the cache can be shared by the threads that plot equations in the background.
+ *
+ * @author Eitan Tuchin
+ *
+ * @param <K> The type of the keys.
+ * @param <V> The type of the values.
+ */
+
+public class LruCache<K, V> {
+
+	/**
+	 * The largest amount of entries kept.
+	 */
+
+	private final int maxEntries;
+
+	/**
+	 * The largest amount of bytes kept, as estimated by the weigher.
+	 */
+
+	private final long maxBytes;
+
+	/**
+	 * Estimates how many bytes a value takes up.
+	 */
+
+	private final ToLongFunction<V> weigher;
+
+	/**
+	 * The entries in order from least to most recently used.
+	 */
+
+	private final LinkedHashMap<K, V> map = new LinkedHashMap<>(16, 0.75f, true);
+
+	/**
+	 * The estimated amount of bytes of every value combined.
+	 */
+
+	private long bytes;
+
+	/**
+	 * How many lookups found a value.
+	 */
+
+	private long hits;
+
+	/**
+	 * How many lookups found nothing.
+	 */
+
+	private long misses;
+
+	/**
+	 * How many entries have been forgotten to stay within the limits.
+	 */
+
+	private long evictions;
+
+	/**
+	 * Creates an empty cache.
+	 * @param maxEntries The largest amount of entries kept.
+	 * @param maxBytes The largest amount of bytes kept.
+	 * @param weigher Estimates how many bytes a value takes up.
+	 */
+
+	public LruCache(int maxEntries, long maxBytes, ToLongFunction<V> weigher) {
+
+		this.maxEntries = maxEntries;
+
+		this.maxBytes = maxBytes;
+
+		this.weigher = weigher;
+	}
+
+	/**
+	 * Looks up the value of the given key and marks it as the most recently used.
+	 * @param key The key.
+	 * @return value The value of the key, or null if it is not cached.
+	 */
+
+	public synchronized V get(K key) {
+
+		V value = map.get(key);
+
+		if (value == null) {
+
+			misses++;
+		}
+
+		else {
+
+			hits++;
+		}
+
+		return value;
+	}
+
+	/**
+	 * Looks up the value of the given key and marks it as the most recently used, creating and caching a value if there is
+	 * none.
+	 * @param key The key.
+	 * @param creator Creates the value of a key that is not cached.
+	 * @return value The cached or created value of the key.
+	 */
+
+	public synchronized V computeIfAbsent(K key, Function<? super K, ? extends V> creator) {
+
+		V value = get(key);
+
+		if (value == null) {
+
+			value = creator.apply(key);
+
+			put(key, value);
+		}
+
+		return value;
+	}
+
+	/**
+	 * Caches the value of the given key as the most recently used, then forgets the least recently used entries until the
+	 * cache is within its limits again.
+	 * @param key The key.
+	 * @param value The value.
+	 */
+
+	public synchronized void put(K key, V value) {
+
+		V old = map.put(key, value);
+
+		if (old != null) {
+
+			bytes -= weigher.applyAsLong(old);
+		}
+
+		bytes += weigher.applyAsLong(value);
+
+		Iterator<Map.Entry<K, V>> iterator = map.entrySet().iterator();
+
+		while ((map.size() > maxEntries || bytes > maxBytes) && iterator.hasNext()) {
+
+			bytes -= weigher.applyAsLong(iterator.next().getValue());
+
+			iterator.remove();
+
+			evictions++;
+		}
+	}
+
+	/**
+	 * Forgets every entry. The counters are kept.
+	 */
+
+	public synchronized void clear() {
+
+		map.clear();
+
+		bytes = 0;
+	}
+
+	/**
+	 * Gets the amount of entries.
+	 * @return size The amount of cached entries.
+	 */
+
+	public synchronized int size() {
+
+		return map.size();
+	}
+
+	/**
+	 * Gets the estimated amount of bytes of every value combined.
+	 * @return bytes The amount of bytes.
+	 */
+
+	public synchronized long getBytes() {
+
+		return bytes;
+	}
+
+	/**
+	 * Gets how many lookups found a value.
+	 * @return hits The amount of hits.
+	 */
+
+	public synchronized long getHits() {
+
+		return hits;
+	}
+
+	/**
+	 * Gets how many lookups found nothing.
+	 * @return misses The amount of misses.
+	 */
+
+	public synchronized long getMisses() {
+
+		return misses;
+	}
+
+	/**
+	 * Gets how many entries have been forgotten to stay within the limits.
+	 * @return evictions The amount of evictions.
+	 */
+
+	public synchronized long getEvictions() {
+
+		return evictions;
+	}
+
+	@Override
+	public synchronized String toString() {
+
+		return String.format("%d/%d entries, %d/%d bytes, %d hits, %d misses, %d evictions", map.size(), maxEntries, bytes,
+				maxBytes, hits, misses, evictions);
+	}
+}
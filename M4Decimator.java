@@ -0,0 +1,136 @@
+package application;
+
+/**
+ * Reduces a sampled curve to at most four points per pixel column before it is drawn: the first, the lowest, the highest,
+ * and the last point of every segment within that column. A polyline through these points covers exactly the same pixels
+ * as one through every point, so the graph looks the same while the renderer never gets more than about four times as many
+ * points as the graph is wide, however densely the curve was sampled. Points to either side of the visible x-axis are
+ * treated as one column per side, so a curve that reaches far beyond the view, such as one read from a file, is reduced
+ * just as much.
+ *
+ * @author Eitan Tuchin
+ *
+ */
+
+public class M4Decimator {
+
+	/**
+	 * The most points kept per pixel column and segment.
+	 */
+
+	static final int POINTS_PER_COLUMN = 4;
+
+	/**
+	 * Reduces the given curve to at most four points per pixel column and segment. A curve that has no more points than
+	 * that in total is returned as it is.
+	 * @param curve The sampled curve.
+	 * @param xLower The lower bound of the visible x-axis.
+	 * @param xUpper The upper bound of the visible x-axis.
+	 * @param width The width of the visible x-axis in pixels.
+	 * @return decimated The reduced curve.
+	 */
+
+	public static SampledCurve decimate(SampledCurve curve, double xLower, double xUpper, double width) {
+
+		if (curve.size() <= POINTS_PER_COLUMN * width) {
+
+			return curve;
+		}
+
+		SampledCurve decimated = new SampledCurve((int) (POINTS_PER_COLUMN * width) + 16);
+
+		double scale = width / (xUpper - xLower);
+
+		for (int s = 0; s < curve.getSegmentCount(); s++) {
+
+			int start = curve.getSegmentStart(s), end = curve.getSegmentEnd(s);
+
+			// indices of the first, lowest, highest, and last point of the current column
+
+			int first = start, min = start, max = start, last = start;
+
+			double column = getColumn(curve.getX(start), xLower, scale, width);
+
+			for (int i = start + 1; i < end; i++) {
+
+				double c = getColumn(curve.getX(i), xLower, scale, width);
+
+				if (c != column) {
+
+					addColumn(curve, decimated, first, min, max, last);
+
+					column = c;
+
+					first = min = max = last = i;
+
+					continue;
+				}
+
+				if (curve.getY(i) < curve.getY(min)) {
+
+					min = i;
+				}
+
+				if (curve.getY(i) > curve.getY(max)) {
+
+					max = i;
+				}
+
+				last = i;
+			}
+
+			addColumn(curve, decimated, first, min, max, last);
+
+			decimated.breakSegment();
+		}
+
+		return decimated;
+	}
+
+	/**
+	 * Gets the pixel column of an x-axis value, where every value to the left of the visible x-axis is in column -1 and
+	 * every value to the right of it is in the column right after the last.
+	 * @param x The x-axis value.
+	 * @param xLower The lower bound of the visible x-axis.
+	 * @param scale The amount of pixels per unit of the x-axis.
+	 * @param width The width of the visible x-axis in pixels.
+	 * @return column The pixel column.
+	 */
+
+	private static double getColumn(double x, double xLower, double scale, double width) {
+
+		return Math.max(-1, Math.min(Math.ceil(width), Math.floor((x - xLower) * scale)));
+	}
+
+	/**
+	 * Adds the kept points of one pixel column in their original order, each only once.
+	 * @param curve The sampled curve.
+	 * @param decimated The reduced curve.
+	 * @param first The index of the first point of the column.
+	 * @param min The index of the lowest point of the column.
+	 * @param max The index of the highest point of the column.
+	 * @param last The index of the last point of the column.
+	 */
+
+	private static void addColumn(SampledCurve curve, SampledCurve decimated, int first, int min, int max, int last) {
+
+		int low = Math.min(min, max), high = Math.max(min, max);
+
+		decimated.add(curve.getX(first), curve.getY(first));
+
+		if (low != first && low != last) {
+
+			decimated.add(curve.getX(low), curve.getY(low));
+		}
+
+		if (high != low && high != last) {
+
+			decimated.add(curve.getX(high), curve.getY(high));
+		}
+
+		if (last != first) {
+
+			decimated.add(curve.getX(last), curve.getY(last));
+		}
+	}
+}
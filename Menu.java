@@ -6,6 +6,8 @@ import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.scene.Scene;
 import javafx.scene.control.Button;
+import javafx.scene.control.ScrollPane;
+import javafx.scene.control.ScrollPane.ScrollBarPolicy;
 import javafx.scene.image.Image;
 import javafx.scene.layout.Background;
 import javafx.scene.layout.BackgroundImage;
@@ -104,7 +106,13 @@ public class Menu {
 				+ "\n - To reset the graph without having to go back to the \n\t menu, use the “New Graph” button in the graph menu"
 				+ "\n - Hit the “X” next to any of the equations to delete \n\t any equation from the graph of your choosing"
 				+ "\n - Double-click the graph with your touchpad or mouse \n\t to zoom in, click with two fingers to zoom out"
-				+ "\n - Supported characters for an equation include \n\t all numbers from 0 - 9, /, *, ^, -, +, ., and ()."
+				+ "\n - Scroll over the graph to zoom in or out around the \n\t cursor, and drag the graph to move around it"
+				+ "\n - Supported characters for an equation include \n\t all numbers from 0 - 9, x, y, t, θ, r, =, /, *, ^, -, +, ., "
+				+ "\n\t commas, and ()."
+				+ "\n - Write (x(t),y(t)), such as (t^2,t^3), to plot a \n\t parametric curve over t"
+				+ "\n - Write r=... in terms of t or θ, such as r=2θ, to \n\t plot a polar curve"
+				+ "\n - Write d/dx(...) or press the “d/dx” button next to an \n\t equation to plot its derivative"
+				+ "\n - “Export” saves the curves to a file, which “Import” \n\t plots again"
 				+ "\n - Have a try at it!", 16, 10, 15);
 		
 		howToTextBody.setTextAlignment(TextAlignment.LEFT);
@@ -114,7 +122,19 @@ public class Menu {
 
 		VBox howToBox = new VBox();
 		
-		howToBox.getChildren().addAll(howToTextTitle, howToTextBody);
+		// the tips scroll within the section once there are more than fit
+
+		ScrollPane howToScroll = new ScrollPane(howToTextBody);
+
+		howToScroll.setPrefViewportHeight(320);
+
+		howToScroll.setMaxWidth(390);
+
+		howToScroll.setHbarPolicy(ScrollBarPolicy.NEVER);
+
+		howToScroll.setStyle("-fx-background: transparent; -fx-background-color: transparent;");
+
+		howToBox.getChildren().addAll(howToTextTitle, howToScroll);
 		
 		StackPane howToPane = new StackPane(howToSection, howToBox);
 		
@@ -0,0 +1,596 @@
+package application;
+
+import java.util.concurrent.ForkJoinPool;
+
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Samples a parametric or polar equation over the range of its parameter t. Equal steps of t give very uneven points on
+ * the screen, since a spiral moves faster the further out it gets, so the range is split into a coarse grid of equal steps
+ * and every step is recursively split in half until the curve is smooth on the screen: the midpoint of a step must be close
+ * to the straight line between its ends, the curve may only turn by a small angle at the midpoint, and the two halves may
+ * not be longer than a few pixels combined. Fast parts of a curve get as many points as they need while slow or straight
+ * parts use few. A step that is not smooth yet is left out if interval arithmetic proves that the curve cannot come into
+ * view within it, and a step that cannot be split anymore but may contain a pole is where the curve is broken. The
+ * coarse grid is split into chunks that are sampled in parallel on the common fork/join pool, each with its own copy of the
+ * expression, and joined back together in order.
+ *
+ * @author Eitan Tuchin
+ *
+ */
+
+public class ParametricSampler {
+
+	/**
+	 * The range of t a parametric equation is sampled over.
+	 */
+
+	static final double PARAMETRIC_LOWER = -10, PARAMETRIC_UPPER = 10;
+
+	/**
+	 * The range of the angle t a polar equation is sampled over, two full turns.
+	 */
+
+	static final double POLAR_LOWER = 0, POLAR_UPPER = 4 * Math.PI;
+
+	/**
+	 * The amount of equal steps the range of t is split into before any step is split further.
+	 */
+
+	static final int COARSE_COUNT = 256;
+
+	/**
+	 * How far in pixels a midpoint may be from the straight line between the ends of its step before the step is split.
+	 */
+
+	static final double TOLERANCE = 0.5;
+
+	/**
+	 * The cosine of the largest angle the curve may turn by at the midpoint of a step, 10 degrees.
+	 */
+
+	static final double MAX_TURN_COS = Math.cos(Math.PI / 18);
+
+	/**
+	 * The length in pixels of both halves of a step combined below which the curve is not split because it turns.
+	 */
+
+	static final double MIN_LENGTH = 1;
+
+	/**
+	 * The length in pixels of both halves of a step combined above which the step is always split.
+	 */
+
+	static final double MAX_LENGTH = 32;
+
+	/**
+	 * How many times a step of the coarse grid may be split in half.
+	 */
+
+	static final int MAX_DEPTH = 8;
+
+	/**
+	 * The largest amount of steps of the coarse grid sampled by a single thread.
+	 */
+
+	static final int CHUNK_SIZE = 16;
+
+	/**
+	 * The expression being sampled.
+	 */
+
+	private final CompiledExpression expression;
+
+	/**
+	 * Computes bounds of the expression over ranges of t.
+	 */
+
+	private final IntervalEvaluator intervals;
+
+	/**
+	 * Receives the bounds of every result computed by the interval evaluator.
+	 */
+
+	private final double[] bounds;
+
+	/**
+	 * If the expression gives the distance from the origin rather than both axes.
+	 */
+
+	private final boolean polar;
+
+	/**
+	 * The visible part of both axes.
+	 */
+
+	private final double xLower, xUpper, yLower, yUpper;
+
+	/**
+	 * The amount of pixels per unit of both axes.
+	 */
+
+	private final double xScale, yScale;
+
+	/**
+	 * The curve the sampled points are added to.
+	 */
+
+	private final SampledCurve curve;
+
+	/**
+	 * How many times a step of the coarse grid may be split in half.
+	 */
+
+	private final int maxDepth;
+
+	/**
+	 * The point the curve was at for the value of t evaluated last.
+	 */
+
+	private double pointX, pointY;
+
+	/**
+	 * Initializes the sampler.
+	 * @param expression The expression to sample.
+	 * @param maxDepth How many times a step of the coarse grid may be split in half.
+	 * @param xLower The lower bound of the visible x-axis.
+	 * @param xUpper The upper bound of the visible x-axis.
+	 * @param yLower The lower bound of the visible y-axis.
+	 * @param yUpper The upper bound of the visible y-axis.
+	 * @param width The width of the visible x-axis in pixels.
+	 * @param height The height of the visible y-axis in pixels.
+	 * @param curve The curve the sampled points are added to.
+	 */
+
+	private ParametricSampler(CompiledExpression expression, int maxDepth, double xLower, double xUpper, double yLower,
+			double yUpper, double width, double height, SampledCurve curve) {
+
+		this.expression = expression;
+
+		this.intervals = new IntervalEvaluator(expression);
+
+		this.bounds = new double[2 * expression.getResultCount()];
+
+		this.polar = expression.getForm() == CompiledExpression.POLAR;
+
+		this.maxDepth = maxDepth;
+
+		this.xLower = xLower;
+
+		this.xUpper = xUpper;
+
+		this.yLower = yLower;
+
+		this.yUpper = yUpper;
+
+		this.xScale = width / (xUpper - xLower);
+
+		this.yScale = height / (yUpper - yLower);
+
+		this.curve = curve;
+	}
+
+	/**
+	 * Samples the given parametric or polar equation over the range of its parameter, using every core. The given
+	 * expression is never evaluated itself, so it may be sampled by several threads at once. Stops early if the calling
+	 * thread is interrupted, in which case only part of the curve is returned. A smaller maximum depth gives a coarser curve
+	 * sooner, for example while the user is still zooming or panning.
+	 * @param expression The expression of a parametric or polar equation.
+	 * @param maxDepth How many times a step of the coarse grid may be split in half, at most MAX_DEPTH.
+	 * @param xLower The lower bound of the visible x-axis.
+	 * @param xUpper The upper bound of the visible x-axis.
+	 * @param yLower The lower bound of the visible y-axis.
+	 * @param yUpper The upper bound of the visible y-axis.
+	 * @param width The width of the visible x-axis in pixels.
+	 * @param height The height of the visible y-axis in pixels.
+	 * @return curve The sampled curve, in the order of t.
+	 */
+
+	public static SampledCurve sample(CompiledExpression expression, int maxDepth, double xLower, double xUpper, double yLower,
+			double yUpper, double width, double height) {
+
+		boolean polar = expression.getForm() == CompiledExpression.POLAR;
+
+		double tLower = polar ? POLAR_LOWER : PARAMETRIC_LOWER, tUpper = polar ? POLAR_UPPER : PARAMETRIC_UPPER;
+
+		return ForkJoinPool.commonPool().invoke(new ChunkTask(expression, maxDepth, tLower, (tUpper - tLower) / COARSE_COUNT,
+				0, COARSE_COUNT, xLower, xUpper, yLower, yUpper, width, height, Thread.currentThread()));
+	}
+
+	/**
+	 * Samples a chunk of the coarse grid, including the points at both of its ends.
+	 * @param tLower The lower bound of the range of t.
+	 * @param step The distance between two points of the coarse grid.
+	 * @param first The index of the first point of the chunk within the coarse grid.
+	 * @param last The index of the last point of the chunk within the coarse grid.
+	 * @param caller The thread that is waiting for the curve.
+	 */
+
+	private void sampleChunk(double tLower, double step, int first, int last, Thread caller) {
+
+		double ta = tLower + first * step;
+
+		evaluate(ta);
+
+		double ax = pointX, ay = pointY;
+
+		add(ax, ay);
+
+		for (int index = first; index < last; ++index) {
+
+			// give up on a curve nobody is waiting for anymore
+
+			if (caller.isInterrupted()) {
+
+				break;
+			}
+
+			double tb = tLower + (index + 1) * step;
+
+			evaluate(tb);
+
+			double bx = pointX, by = pointY;
+
+			refine(ta, tb, ax, ay, bx, by, 0);
+
+			add(bx, by);
+
+			ta = tb;
+
+			ax = bx;
+
+			ay = by;
+		}
+	}
+
+	/**
+	 * Adds the points between the two ends of a step, splitting the step in half if needed.
+	 * @param ta The value of t at the start of the step.
+	 * @param tb The value of t at the end of the step.
+	 * @param ax The x-axis value at the start.
+	 * @param ay The y-axis value at the start.
+	 * @param bx The x-axis value at the end.
+	 * @param by The y-axis value at the end.
+	 * @param depth How many times the coarse step has been split already.
+	 */
+
+	private void refine(double ta, double tb, double ax, double ay, double bx, double by, int depth) {
+
+		if (depth >= maxDepth) {
+
+			// a step too small to split that may contain a pole is where the curve breaks
+
+			if (isPole(ta, tb)) {
+
+				curve.breakSegment();
+			}
+
+			return;
+		}
+
+		double tm = (ta + tb) / 2;
+
+		evaluate(tm);
+
+		double mx = pointX, my = pointY;
+
+		boolean validA = isValid(ax, ay), validB = isValid(bx, by), validM = isValid(mx, my);
+
+		if (validA && validB && validM) {
+
+			// a step that is smooth, or where the curve cannot come into view, does not need more detail
+
+			if (isSmooth(ax, ay, mx, my, bx, by) || isHidden(ta, tb)) {
+
+				return;
+			}
+		}
+
+		// nothing to find within a step where the curve does not exist at all
+
+		else if (!validA && !validB && !validM) {
+
+			return;
+		}
+
+		refine(ta, tm, ax, ay, mx, my, depth + 1);
+
+		add(mx, my);
+
+		refine(tm, tb, mx, my, bx, by, depth + 1);
+	}
+
+	/**
+	 * Checks if the curve looks smooth on the screen between the two ends of a step and its midpoint.
+	 * @param ax The x-axis value at the start.
+	 * @param ay The y-axis value at the start.
+	 * @param mx The x-axis value at the midpoint.
+	 * @param my The y-axis value at the midpoint.
+	 * @param bx The x-axis value at the end.
+	 * @param by The y-axis value at the end.
+	 * @return true/false If the step does not need to be split.
+	 */
+
+	private boolean isSmooth(double ax, double ay, double mx, double my, double bx, double by) {
+
+		// both halves in pixels
+
+		double x1 = (mx - ax) * xScale, y1 = (my - ay) * yScale, x2 = (bx - mx) * xScale, y2 = (by - my) * yScale;
+
+		double length1 = Math.hypot(x1, y1), length2 = Math.hypot(x2, y2);
+
+		// a long step may skip over a loop or a wiggle of the curve
+
+		if (length1 + length2 > MAX_LENGTH) {
+
+			return false;
+		}
+
+		// the midpoint must be close to the line between the two ends
+
+		double chord = Math.hypot(x1 + x2, y1 + y2);
+
+		double deviation = chord == 0 ? length1 : Math.abs((x1 + x2) * y1 - (y1 + y2) * x1) / chord;
+
+		if (deviation > TOLERANCE) {
+
+			return false;
+		}
+
+		// and the curve may not turn sharply at the midpoint, as it does at a cusp, unless the step is too short to see
+
+		return length1 + length2 <= MIN_LENGTH || x1 * x2 + y1 * y2 >= MAX_TURN_COS * length1 * length2;
+	}
+
+	/**
+	 * Checks if the curve is guaranteed to stay outside the graph over a step.
+	 * @param ta The value of t at the start of the step.
+	 * @param tb The value of t at the end of the step.
+	 * @return true/false If the curve is not visible anywhere within the step.
+	 */
+
+	private boolean isHidden(double ta, double tb) {
+
+		intervals.evaluate(ta, tb, bounds);
+
+		if (polar) {
+
+			// the curve stays within a ring around the origin, and the graph may lie completely inside or outside of it
+
+			double nearest = Math.hypot(Math.max(0, Math.max(xLower, -xUpper)), Math.max(0, Math.max(yLower, -yUpper)));
+
+			double farthest = Math.hypot(Math.max(-xLower, xUpper), Math.max(-yLower, yUpper));
+
+			double minRadius = bounds[0] > 0 ? bounds[0] : bounds[1] < 0 ? -bounds[1] : 0;
+
+			double maxRadius = Math.max(-bounds[0], bounds[1]);
+
+			return nearest > maxRadius || farthest < minRadius;
+		}
+
+		return bounds[0] > xUpper || bounds[1] < xLower || bounds[2] > yUpper || bounds[3] < yLower;
+	}
+
+	/**
+	 * Checks if the expression may have a pole within a step, that is if it is not continuous there and may grow without
+	 * limit.
+	 * @param ta The value of t at the start of the step.
+	 * @param tb The value of t at the end of the step.
+	 * @return true/false If the step may contain a pole.
+	 */
+
+	private boolean isPole(double ta, double tb) {
+
+		if (intervals.evaluate(ta, tb, bounds)) {
+
+			return false;
+		}
+
+		for (double bound : bounds) {
+
+			if (Double.isInfinite(bound)) {
+
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Evaluates the curve at the given value of t and keeps the point it is at.
+	 * @param t The value of t.
+	 */
+
+	private void evaluate(double t) {
+
+		double value = expression.evaluate(t);
+
+		if (polar) {
+
+			pointX = value * Math.cos(t);
+
+			pointY = value * Math.sin(t);
+		}
+
+		else {
+
+			pointX = value;
+
+			pointY = expression.getResult(1);
+		}
+	}
+
+	/**
+	 * Adds a point to the curve, or breaks the curve if the point does not exist.
+	 * @param x The x-axis value.
+	 * @param y The y-axis value.
+	 */
+
+	private void add(double x, double y) {
+
+		curve.add(x, SampledCurve.isValid(x) ? y : Double.NaN);
+	}
+
+	/**
+	 * Checks if both coordinates of a point are numbers that can be plotted.
+	 * @param x The x-axis value.
+	 * @param y The y-axis value.
+	 * @return true/false If the point exists.
+	 */
+
+	private static boolean isValid(double x, double y) {
+
+		return SampledCurve.isValid(x) && SampledCurve.isValid(y);
+	}
+
+	/**
+	 * Samples a chunk of the coarse grid, splitting it in half and sampling both halves on different threads as long as it
+	 * is larger than CHUNK_SIZE steps. The halves are joined back together in order, so a segment that crosses the middle of
+	 * a chunk stays one segment.
+	 */
+
+	private static class ChunkTask extends RecursiveTask<SampledCurve> {
+
+		/**
+		 * The version of the task for serialization.
+		 */
+
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * The expression to sample, which is copied for every thread.
+		 */
+
+		private final CompiledExpression expression;
+
+		/**
+		 * How many times a step of the coarse grid may be split in half.
+		 */
+
+		private final int maxDepth;
+
+		/**
+		 * The lower bound of the range of t.
+		 */
+
+		private final double tLower;
+
+		/**
+		 * The distance between two points of the coarse grid.
+		 */
+
+		private final double step;
+
+		/**
+		 * The index of the first point of the chunk within the coarse grid.
+		 */
+
+		private final int first;
+
+		/**
+		 * The index of the last point of the chunk within the coarse grid.
+		 */
+
+		private final int last;
+
+		/**
+		 * The visible part of both axes.
+		 */
+
+		private final double xLower, xUpper, yLower, yUpper;
+
+		/**
+		 * The size of the graph in pixels.
+		 */
+
+		private final double width, height;
+
+		/**
+		 * The thread that is waiting for the curve.
+		 */
+
+		private final Thread caller;
+
+		/**
+		 * Initializes the task.
+		 * @param expression The expression to sample.
+		 * @param maxDepth How many times a step of the coarse grid may be split in half.
+		 * @param tLower The lower bound of the range of t.
+		 * @param step The distance between two points of the coarse grid.
+		 * @param first The index of the first point of the chunk within the coarse grid.
+		 * @param last The index of the last point of the chunk within the coarse grid.
+		 * @param xLower The lower bound of the visible x-axis.
+		 * @param xUpper The upper bound of the visible x-axis.
+		 * @param yLower The lower bound of the visible y-axis.
+		 * @param yUpper The upper bound of the visible y-axis.
+		 * @param width The width of the visible x-axis in pixels.
+		 * @param height The height of the visible y-axis in pixels.
+		 * @param caller The thread that is waiting for the curve.
+		 */
+
+		ChunkTask(CompiledExpression expression, int maxDepth, double tLower, double step, int first, int last, double xLower,
+				double xUpper, double yLower, double yUpper, double width, double height, Thread caller) {
+
+			this.expression = expression;
+
+			this.maxDepth = maxDepth;
+
+			this.tLower = tLower;
+
+			this.step = step;
+
+			this.first = first;
+
+			this.last = last;
+
+			this.xLower = xLower;
+
+			this.xUpper = xUpper;
+
+			this.yLower = yLower;
+
+			this.yUpper = yUpper;
+
+			this.width = width;
+
+			this.height = height;
+
+			this.caller = caller;
+		}
+
+		@Override
+		protected SampledCurve compute() {
+
+			if (last - first <= CHUNK_SIZE) {
+
+				SampledCurve curve = new SampledCurve();
+
+				ParametricSampler sampler = new ParametricSampler(expression.copy(), maxDepth, xLower, xUpper, yLower, yUpper,
+						width, height, curve);
+
+				sampler.sampleChunk(tLower, step, first, last, caller);
+
+				return curve;
+			}
+
+			int middle = first + (last - first) / 2;
+
+			ChunkTask left = new ChunkTask(expression, maxDepth, tLower, step, first, middle, xLower, xUpper, yLower, yUpper,
+					width, height, caller);
+
+			ChunkTask right = new ChunkTask(expression, maxDepth, tLower, step, middle, last, xLower, xUpper, yLower, yUpper,
+					width, height, caller);
+
+			left.fork();
+
+			SampledCurve rightCurve = right.compute();
+
+			SampledCurve curve = left.join();
+
+			curve.append(rightCurve);
+
+			return curve;
+		}
+	}
+}
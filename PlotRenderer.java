@@ -0,0 +1,120 @@
+package application;
+
+import javafx.scene.Node;
+
+import javafx.scene.paint.Color;
+
+/**
+ * Draws the sampled curves of the graph within the visible part of both axes. The graph keeps track of which curves are
+ * plotted and which part of the axes is visible, and hands both to a renderer, so the renderer can be swapped without
+ * changing how equations are plotted or how the user zooms.
+ *
+ * @author Eitan Tuchin
+ *
+ */
+
+public interface PlotRenderer {
+
+	/**
+	 * Gets the node that displays the graph.
+	 * @return node The node to place within the scene.
+	 */
+
+	Node getNode();
+
+	/**
+	 * Sets the visible part of both axes.
+	 * @param xLower The lower bound of the x-axis.
+	 * @param xUpper The upper bound of the x-axis.
+	 * @param yLower The lower bound of the y-axis.
+	 * @param yUpper The upper bound of the y-axis.
+	 */
+
+	void setViewport(double xLower, double xUpper, double yLower, double yUpper);
+
+	/**
+	 * Plots the given curve, replacing any curve plotted before under the same key.
+	 * @param key The object the curve belongs to, such as the textfield of its equation.
+	 * @param curve The sampled curve.
+	 * @param color The color of the curve.
+	 */
+
+	void setCurve(Object key, SampledCurve curve, Color color);
+
+	/**
+	 * Removes the curve plotted under the given key, if any.
+	 * @param key The object the curve belongs to.
+	 */
+
+	void removeCurve(Object key);
+
+	/**
+	 * Marks the given points on top of every curve, such as the roots of the curves and the points at which they
+	 * intersect, replacing the points marked before.
+	 * @param markers The points to mark.
+	 */
+
+	void setMarkers(SampledCurve markers);
+
+	/**
+	 * Gets the width of the plotting area in pixels.
+	 * @return width The width in pixels.
+	 */
+
+	double getPlotWidth();
+
+	/**
+	 * Gets the height of the plotting area in pixels.
+	 * @return height The height in pixels.
+	 */
+
+	double getPlotHeight();
+
+	/**
+	 * Converts a horizontal position within the node to a value of the x-axis.
+	 * @param x The horizontal position within the node.
+	 * @param y The vertical position within the node.
+	 * @return value The x-axis value at that position.
+	 */
+
+	double getXValue(double x, double y);
+
+	/**
+	 * Converts a vertical position within the node to a value of the y-axis.
+	 * @param x The horizontal position within the node.
+	 * @param y The vertical position within the node.
+	 * @return value The y-axis value at that position.
+	 */
+
+	double getYValue(double x, double y);
+
+	/**
+	 * Rounds the given distance up to a step of 1, 2, or 5 times a power of ten.
+	 * @param distance The smallest distance wanted between two grid lines.
+	 * @return step The distance between two grid lines.
+	 */
+
+	static double getGridStep(double distance) {
+
+		double power = Math.pow(10, Math.floor(Math.log10(distance)));
+
+		double fraction = distance / power;
+
+		if (fraction <= 1) {
+
+			return power;
+		}
+
+		else if (fraction <= 2) {
+
+			return 2 * power;
+		}
+
+		else if (fraction <= 5) {
+
+			return 5 * power;
+		}
+
+		return 10 * power;
+	}
+}
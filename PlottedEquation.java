@@ -0,0 +1,216 @@
+package application;
+
+import java.util.concurrent.Future;
+
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Keeps track of everything the graph needs to know about one plotted equation: the equation as typed, so it can be
+ * sampled again whenever the visible part of the graph changes, the compiled expression and the curve that are
+ * currently plotted, the values it has been evaluated at so far, and the plotting task that runs in the background.
+ * Every change to the equation or to the visible part of the graph starts a new generation, and only the result of the
+ * latest generation is ever plotted.
+ *
+ * @author Eitan Tuchin
+ *
+ */
+
+public class PlottedEquation {
+
+	/**
+	 * The equation as typed by the user.
+	 */
+
+	private String equation;
+
+	/**
+	 * The compiled expression of the equation.
+	 */
+
+	private CompiledExpression expression;
+
+	/**
+	 * The curve that is currently plotted.
+	 */
+
+	private SampledCurve curve;
+
+	/**
+	 * The values the equation has been evaluated at so far, kept while the equation stays the same.
+	 */
+
+	private SampleCache samples;
+
+	/**
+	 * The class generated for the compiled expression of the equation, or null. Only this object keeps it, so the class is
+	 * unloaded once the equation is removed from the graph or changed.
+	 */
+
+	private DoubleUnaryOperator function;
+
+	/**
+	 * The equation the class was generated for.
+	 */
+
+	private String functionSource;
+
+	/**
+	 * Counts how many times plotting has been started, so results of older attempts can be told apart from the latest.
+	 */
+
+	private long generation;
+
+	/**
+	 * The latest plotting task, which may still be waiting or running.
+	 */
+
+	private Future<?> task;
+
+	/**
+	 * Gets the equation as typed by the user.
+	 * @return equation The equation.
+	 */
+
+	public String getEquation() {
+
+		return equation;
+	}
+
+	/**
+	 * Sets the equation as typed by the user.
+	 * @param equation The equation.
+	 */
+
+	public void setEquation(String equation) {
+
+		this.equation = equation;
+	}
+
+	/**
+	 * Gets the compiled expression of the equation.
+	 * @return expression The compiled expression.
+	 */
+
+	public CompiledExpression getExpression() {
+
+		return expression;
+	}
+
+	/**
+	 * Sets the compiled expression of the equation.
+	 * @param expression The compiled expression.
+	 */
+
+	public void setExpression(CompiledExpression expression) {
+
+		this.expression = expression;
+	}
+
+	/**
+	 * Gets the curve that is currently plotted.
+	 * @return curve The sampled curve.
+	 */
+
+	public SampledCurve getCurve() {
+
+		return curve;
+	}
+
+	/**
+	 * Sets the curve that is currently plotted.
+	 * @param curve The sampled curve.
+	 */
+
+	public void setCurve(SampledCurve curve) {
+
+		this.curve = curve;
+	}
+
+	/**
+	 * Gets the values the given equation has been evaluated at so far, starting over with an empty cache if the equation
+	 * has changed. Called by the plotting tasks in the background.
+	 * @param source The normalized equation.
+	 * @param maxBytes The memory budget of a new cache in bytes.
+	 * @return samples The sample cache of the equation.
+	 */
+
+	public synchronized SampleCache getSamples(String source, long maxBytes) {
+
+		if (samples == null || !samples.getSource().equals(source)) {
+
+			samples = new SampleCache(source, maxBytes);
+		}
+
+		return samples;
+	}
+
+	/**
+	 * Gets the class generated for the given compiled expression of the equation, generating it the first time the
+	 * equation is asked for. Only a function of x gets a class.
+	 * @param expression The compiled expression of the equation.
+	 * @return function The generated class, or null if the equation is not a function of x or is too large for a class.
+	 */
+
+	public synchronized DoubleUnaryOperator getFunction(CompiledExpression expression) {
+
+		if (expression.getForm() != CompiledExpression.FUNCTION) {
+
+			return null;
+		}
+
+		if (!expression.getSource().equals(functionSource)) {
+
+			function = BytecodeGenerator.generate(expression);
+
+			functionSource = expression.getSource();
+		}
+
+		return function;
+	}
+
+	/**
+	 * Gets the generation of the latest plotting task.
+	 * @return generation The latest generation.
+	 */
+
+	public long getGeneration() {
+
+		return generation;
+	}
+
+	/**
+	 * Replaces the latest plotting task with a new one, cancelling the old task if it has not finished yet.
+	 * @param task The new task.
+	 */
+
+	public void setTask(Future<?> task) {
+
+		cancel();
+
+		this.task = task;
+	}
+
+	/**
+	 * Starts a new generation so the result of every plotting task started so far is ignored.
+	 * @return generation The new generation.
+	 */
+
+	public long nextGeneration() {
+
+		return ++generation;
+	}
+
+	/**
+	 * Cancels the latest plotting task, interrupting it if it is already running.
+	 */
+
+	public void cancel() {
+
+		if (task != null) {
+
+			task.cancel(true);
+
+			task = null;
+		}
+	}
+}
@@ -0,0 +1,512 @@
+package application;
+
+import java.util.concurrent.ForkJoinPool;
+
+import java.util.concurrent.RecursiveAction;
+
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Finds where plotted functions cross the x-axis and where two plotted functions intersect. Both are found in the curves
+ * that have already been sampled, without evaluating anything new: a root lies between two neighboring points of a
+ * segment whose y-axis values have different signs, and an intersection lies between two neighboring x-axis values of
+ * both curves where the difference between the straight lines through their points changes sign. Every such interval is
+ * then narrowed down with Brent's method against the compiled expressions themselves, so a root is exact to the last few
+ * digits however coarsely the curve was sampled. A sign change that does not get any closer to 0 while it is narrowed
+ * down is a pole rather than a root, and is left out. Many roots and intersections can be found at once in parallel on the
+ * common fork/join pool, each with its own copies of the expressions.
+ *
+ * @author Eitan Tuchin
+ *
+ */
+
+public class RootFinder {
+
+	/**
+	 * How many times Brent's method may narrow down an interval before the best estimate so far is taken.
+	 */
+
+	static final int MAX_ITERATIONS = 100;
+
+	/**
+	 * The largest amount of roots or intersections searched for by a single thread.
+	 */
+
+	static final int CHUNK_SIZE = 8;
+
+	/**
+	 * Finds the roots or intersections of the given curves in parallel. A job with one index finds the roots of that curve,
+	 * and a job with two indices finds where those two curves intersect.
+	 * @param expressions The compiled expression of every curve, which must be a function of x.
+	 * @param curves The sampled curve of every expression.
+	 * @param jobs The indices of the curves of every job.
+	 * @return markers The points found by every job, in the same order as the jobs.
+	 */
+
+	public static SampledCurve[] findAll(CompiledExpression[] expressions, SampledCurve[] curves, int[][] jobs) {
+
+		SampledCurve[] markers = new SampledCurve[jobs.length];
+
+		ForkJoinPool.commonPool().invoke(new JobTask(expressions, curves, jobs, markers, 0, jobs.length,
+				Thread.currentThread()));
+
+		return markers;
+	}
+
+	/**
+	 * Finds every point at which the given function crosses or touches the x-axis between its sampled points.
+	 * @param expression The compiled expression of the function.
+	 * @param curve The sampled curve of the function.
+	 * @return roots The roots, each as a point on the x-axis.
+	 */
+
+	public static SampledCurve findRoots(CompiledExpression expression, SampledCurve curve) {
+
+		SampledCurve roots = new SampledCurve(16);
+
+		for (int s = 0; s < curve.getSegmentCount(); s++) {
+
+			int start = curve.getSegmentStart(s), end = curve.getSegmentEnd(s);
+
+			for (int i = start; i < end; i++) {
+
+				double previous = i == start ? Double.NaN : curve.getY(i - 1);
+
+				if (changesSign(previous, curve.getY(i))) {
+
+					double x = refine(expression::evaluate, curve.getX(Math.max(i - 1, start)), curve.getX(i));
+
+					if (!Double.isNaN(x)) {
+
+						roots.add(x, 0);
+					}
+				}
+			}
+		}
+
+		return roots;
+	}
+
+	/**
+	 * Finds every point at which two functions intersect or touch within the parts of the x-axis that both curves have
+	 * been sampled over.
+	 * @param first The compiled expression of the first function.
+	 * @param firstCurve The sampled curve of the first function.
+	 * @param second The compiled expression of the second function.
+	 * @param secondCurve The sampled curve of the second function.
+	 * @return intersections The points at which the functions intersect.
+	 */
+
+	public static SampledCurve findIntersections(CompiledExpression first, SampledCurve firstCurve, CompiledExpression second,
+			SampledCurve secondCurve) {
+
+		SampledCurve intersections = new SampledCurve(16);
+
+		DoubleUnaryOperator difference = x -> first.evaluate(x) - second.evaluate(x);
+
+		int s = 0, t = 0;
+
+		// walk through the segments of both curves in order, comparing every pair of segments that overlap
+
+		while (s < firstCurve.getSegmentCount() && t < secondCurve.getSegmentCount()) {
+
+			findIntersections(firstCurve, s, secondCurve, t, difference, first, intersections);
+
+			if (firstCurve.getX(firstCurve.getSegmentEnd(s) - 1) < secondCurve.getX(secondCurve.getSegmentEnd(t) - 1)) {
+
+				s++;
+			}
+
+			else {
+
+				t++;
+			}
+		}
+
+		return intersections;
+	}
+
+	/**
+	 * Finds every point at which two segments intersect. Every x-axis value of both segments within the part of the x-axis
+	 * they have in common is visited in order, and the difference between the straight lines through the points of both
+	 * segments at that value is compared with the one before.
+	 * @param firstCurve The sampled curve of the first function.
+	 * @param s The index of the segment of the first curve.
+	 * @param secondCurve The sampled curve of the second function.
+	 * @param t The index of the segment of the second curve.
+	 * @param difference The first function minus the second.
+	 * @param first The compiled expression of the first function, for the y-axis value of an intersection.
+	 * @param intersections Receives the points at which the segments intersect.
+	 */
+
+	private static void findIntersections(SampledCurve firstCurve, int s, SampledCurve secondCurve, int t,
+			DoubleUnaryOperator difference, CompiledExpression first, SampledCurve intersections) {
+
+		int aStart = firstCurve.getSegmentStart(s), aEnd = firstCurve.getSegmentEnd(s);
+
+		int bStart = secondCurve.getSegmentStart(t), bEnd = secondCurve.getSegmentEnd(t);
+
+		double lower = Math.max(firstCurve.getX(aStart), secondCurve.getX(bStart));
+
+		double upper = Math.min(firstCurve.getX(aEnd - 1), secondCurve.getX(bEnd - 1));
+
+		int a = aStart, b = bStart;
+
+		while (a < aEnd && firstCurve.getX(a) < lower) {
+
+			a++;
+		}
+
+		while (b < bEnd && secondCurve.getX(b) < lower) {
+
+			b++;
+		}
+
+		double previousX = Double.NaN, previous = Double.NaN;
+
+		while (a < aEnd || b < bEnd) {
+
+			// every point before a and b lies at or before x, and the points at a and b at or after it
+
+			double x = b == bEnd || (a < aEnd && firstCurve.getX(a) <= secondCurve.getX(b)) ? firstCurve.getX(a++)
+					: secondCurve.getX(b++);
+
+			if (x > upper) {
+
+				break;
+			}
+
+			double current = interpolate(firstCurve, a, aStart, aEnd, x) - interpolate(secondCurve, b, bStart, bEnd, x);
+
+			if (changesSign(previous, current)) {
+
+				double root = refine(difference, Double.isNaN(previousX) ? x : previousX, x);
+
+				if (!Double.isNaN(root)) {
+
+					intersections.add(root, first.evaluate(root));
+				}
+			}
+
+			previousX = x;
+
+			previous = current;
+		}
+	}
+
+	/**
+	 * Gets the y-axis value of a segment at the given x-axis value from the straight line between its points around it.
+	 * @param curve The sampled curve.
+	 * @param next The index of the first point of the segment that has not been visited yet.
+	 * @param start The index of the first point of the segment.
+	 * @param end The index after the last point of the segment.
+	 * @param x The x-axis value.
+	 * @return y The interpolated y-axis value.
+	 */
+
+	private static double interpolate(SampledCurve curve, int next, int start, int end, double x) {
+
+		if (next <= start) {
+
+			return curve.getY(start);
+		}
+
+		if (next >= end) {
+
+			return curve.getY(end - 1);
+		}
+
+		double x0 = curve.getX(next - 1), x1 = curve.getX(next), y0 = curve.getY(next - 1);
+
+		return x1 == x0 ? y0 : y0 + (curve.getY(next) - y0) * (x - x0) / (x1 - x0);
+	}
+
+	/**
+	 * Checks if a function changes sign, or reaches 0, from one value to the next. A function that only touches 0 is
+	 * counted once, where it reaches 0.
+	 * @param previous The value before, or not a number if there is none.
+	 * @param current The current value.
+	 * @return true/false If there is a root between both values or at the current one.
+	 */
+
+	private static boolean changesSign(double previous, double current) {
+
+		if (Double.isNaN(previous)) {
+
+			return current == 0;
+		}
+
+		return (previous < 0 && current >= 0) || (previous > 0 && current <= 0);
+	}
+
+	/**
+	 * Narrows down an interval in which a function changes sign to the point at which it is 0.
+	 * @param function The function.
+	 * @param a The lower bound of the interval.
+	 * @param b The upper bound of the interval.
+	 * @return root The root, or not a number if the function has the same sign at both bounds, or changes sign at a pole.
+	 */
+
+	private static double refine(DoubleUnaryOperator function, double a, double b) {
+
+		double fa = function.applyAsDouble(a), fb = function.applyAsDouble(b);
+
+		if (fb == 0) {
+
+			return b;
+		}
+
+		if (fa == 0) {
+
+			return a;
+		}
+
+		if (!((fa < 0 && fb > 0) || (fa > 0 && fb < 0))) {
+
+			return Double.NaN;
+		}
+
+		double root = brent(function, a, b, fa, fb);
+
+		// a pole changes sign as well, but grows without limit instead of reaching 0
+
+		return Math.abs(function.applyAsDouble(root)) <= Math.max(Math.abs(fa), Math.abs(fb)) ? root : Double.NaN;
+	}
+
+	/**
+	 * Finds a root of a function within an interval in which it changes sign with Brent's method. Every step fits a
+	 * parabola through the last three points, or a line through the last two, and falls back to halving the interval
+	 * whenever that would not shrink it fast enough, so the root is always kept between two points of different sign and
+	 * is found at least as fast as by bisection.
+	 * @param function The function.
+	 * @param a The lower bound of the interval.
+	 * @param b The upper bound of the interval.
+	 * @param fa The value of the function at the lower bound.
+	 * @param fb The value of the function at the upper bound, of the opposite sign.
+	 * @return root The point closest to the root found, within a few units in the last place.
+	 */
+
+	static double brent(DoubleUnaryOperator function, double a, double b, double fa, double fb) {
+
+		// b is the best estimate so far, and c the point of opposite sign that keeps the root between them
+
+		double c = a, fc = fa, d = b - a, e = d;
+
+		for (int i = 0; i < MAX_ITERATIONS; i++) {
+
+			if (Math.abs(fc) < Math.abs(fb)) {
+
+				a = b;
+
+				b = c;
+
+				c = a;
+
+				fa = fb;
+
+				fb = fc;
+
+				fc = fa;
+			}
+
+			double tolerance = 2 * Math.ulp(b);
+
+			double middle = (c - b) / 2;
+
+			if (Math.abs(middle) <= tolerance || fb == 0) {
+
+				return b;
+			}
+
+			if (Math.abs(e) >= tolerance && Math.abs(fa) > Math.abs(fb)) {
+
+				double s = fb / fa, p, q;
+
+				if (a == c) {
+
+					// a line through the last two points
+
+					p = 2 * middle * s;
+
+					q = 1 - s;
+				}
+
+				else {
+
+					// a parabola through the last three points, along the y-axis
+
+					double r = fb / fc;
+
+					q = fa / fc;
+
+					p = s * (2 * middle * q * (q - r) - (b - a) * (r - 1));
+
+					q = (q - 1) * (r - 1) * (s - 1);
+				}
+
+				if (p > 0) {
+
+					q = -q;
+				}
+
+				else {
+
+					p = -p;
+				}
+
+				// only take the step if it stays well within the interval and shrinks faster than the step before last
+
+				if (2 * p < Math.min(3 * middle * q - Math.abs(tolerance * q), Math.abs(e * q))) {
+
+					e = d;
+
+					d = p / q;
+				}
+
+				else {
+
+					d = middle;
+
+					e = d;
+				}
+			}
+
+			else {
+
+				d = middle;
+
+				e = d;
+			}
+
+			a = b;
+
+			fa = fb;
+
+			b += Math.abs(d) > tolerance ? d : Math.copySign(tolerance, middle);
+
+			fb = function.applyAsDouble(b);
+
+			if ((fb > 0 && fc > 0) || (fb < 0 && fc < 0)) {
+
+				c = a;
+
+				fc = fa;
+
+				d = b - a;
+
+				e = d;
+			}
+		}
+
+		return b;
+	}
+
+	/**
+	 * Finds the roots or intersections of a range of jobs, splitting the range in half until it is small enough for a
+	 * single thread.
+	 */
+
+	private static class JobTask extends RecursiveAction {
+
+		/**
+		 * The version of the task for serialization.
+		 */
+
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * The compiled expression of every curve, shared by every task and only ever copied.
+		 */
+
+		private final CompiledExpression[] expressions;
+
+		/**
+		 * The sampled curve of every expression.
+		 */
+
+		private final SampledCurve[] curves;
+
+		/**
+		 * The indices of the curves of every job.
+		 */
+
+		private final int[][] jobs;
+
+		/**
+		 * Receives the points found by every job.
+		 */
+
+		private final SampledCurve[] markers;
+
+		/**
+		 * The index of the first job of the range.
+		 */
+
+		private final int first;
+
+		/**
+		 * The index after the last job of the range.
+		 */
+
+		private final int last;
+
+		/**
+		 * The thread that is waiting for the results, which stops every task once it has been interrupted.
+		 */
+
+		private final Thread caller;
+
+		/**
+		 * Initializes the task.
+		 * @param expressions The compiled expression of every curve.
+		 * @param curves The sampled curve of every expression.
+		 * @param jobs The indices of the curves of every job.
+		 * @param markers Receives the points found by every job.
+		 * @param first The index of the first job of the range.
+		 * @param last The index after the last job of the range.
+		 * @param caller The thread that is waiting for the results.
+		 */
+
+		JobTask(CompiledExpression[] expressions, SampledCurve[] curves, int[][] jobs, SampledCurve[] markers, int first,
+				int last, Thread caller) {
+
+			this.expressions = expressions;
+
+			this.curves = curves;
+
+			this.jobs = jobs;
+
+			this.markers = markers;
+
+			this.first = first;
+
+			this.last = last;
+
+			this.caller = caller;
+		}
+
+		@Override
+		protected void compute() {
+
+			if (last - first <= CHUNK_SIZE) {
+
+				for (int i = first; i < last && !caller.isInterrupted(); i++) {
+
+					int[] job = jobs[i];
+
+					CompiledExpression expression = expressions[job[0]].copy();
+
+					markers[i] = job.length == 1 ? findRoots(expression, curves[job[0]])
+							: findIntersections(expression, curves[job[0]], expressions[job[1]].copy(), curves[job[1]]);
+				}
+
+				return;
+			}
+
+			int middle = first + (last - first) / 2;
+
+			invokeAll(new JobTask(expressions, curves, jobs, markers, first, middle, caller),
+					new JobTask(expressions, curves, jobs, markers, middle, last, caller));
+		}
+	}
+}
@@ -0,0 +1,190 @@
+package application;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remembers every value an equation has been evaluated at by the adaptive sampler, so it never has to be evaluated at the
+ * same x-axis value twice. The sampler only evaluates at points of a dyadic grid, index * 2^-level, and every such point
+ * is stored under the coarsest level it belongs to, so a point is found again at any zoom level: zooming in by two reuses
+ * every point and only evaluates the new midpoints, zooming out reads the points of the coarser level, and panning reuses
+ * the part of the graph that stays visible. Points are stored in tiles of TILE_SIZE neighboring points, and the least
+ * recently used tiles are forgotten once the cache takes up more than its memory budget. The cache can be shared by every
+ * thread that samples the same equation.
+ *
+ * @author Eitan Tuchin
+ *
+ */
+
+public class SampleCache {
+
+	/**
+	 * The index of a point within its level is shifted right by this much to find its tile.
+	 */
+
+	static final int TILE_SHIFT = 6;
+
+	/**
+	 * The amount of neighboring points of the same level stored together.
+	 */
+
+	static final int TILE_SIZE = 1 << TILE_SHIFT;
+
+	/**
+	 * The estimated amount of bytes a tile takes up.
+	 */
+
+	static final long TILE_BYTES = 64 + TILE_SIZE * 8 + 48;
+
+	/**
+	 * The normalized equation the cached values belong to.
+	 */
+
+	private final String source;
+
+	/**
+	 * The tiles of the cache by level and position.
+	 */
+
+	private final LruCache<TileKey, Tile> tiles;
+
+	/**
+	 * Creates an empty cache.
+	 * @param source The normalized equation the values will belong to.
+	 * @param maxBytes The memory budget of the cache in bytes.
+	 */
+
+	public SampleCache(String source, long maxBytes) {
+
+		this.source = source;
+
+		tiles = new LruCache<>(Integer.MAX_VALUE, maxBytes, tile -> TILE_BYTES);
+	}
+
+	/**
+	 * Gets the normalized equation the cached values belong to.
+	 * @return source The normalized equation.
+	 */
+
+	public String getSource() {
+
+		return source;
+	}
+
+	@Override
+	public String toString() {
+
+		return source + ": " + tiles;
+	}
+
+	/**
+	 * Gets the tile at the given level and position, creating an empty one if there is none.
+	 * @param key The level and position of the tile.
+	 * @return tile The tile.
+	 */
+
+	Tile getTile(TileKey key) {
+
+		return tiles.computeIfAbsent(key, k -> new Tile());
+	}
+
+	/**
+	 * Identifies a tile by the level of its points and its position within that level.
+	 */
+
+	static final class TileKey {
+
+		/**
+		 * The level of the points of the tile.
+		 */
+
+		private final int level;
+
+		/**
+		 * The index of the first point of the tile divided by TILE_SIZE.
+		 */
+
+		private final long position;
+
+		/**
+		 * Initializes the key.
+		 * @param level The level of the points of the tile.
+		 * @param position The index of the first point of the tile divided by TILE_SIZE.
+		 */
+
+		TileKey(int level, long position) {
+
+			this.level = level;
+
+			this.position = position;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+
+			return other instanceof TileKey && ((TileKey) other).level == level && ((TileKey) other).position == position;
+		}
+
+		@Override
+		public int hashCode() {
+
+			return 31 * level + Long.hashCode(position);
+		}
+	}
+
+	/**
+	 * The values of TILE_SIZE neighboring points of the same level. Every value is written before the bit that marks it as
+	 * known, so threads can read and write a tile at the same time without locking it.
+	 */
+
+	static final class Tile {
+
+		/**
+		 * The values of the points.
+		 */
+
+		private final double[] values = new double[TILE_SIZE];
+
+		/**
+		 * Has a bit set for every point whose value is known.
+		 */
+
+		private final AtomicLong known = new AtomicLong();
+
+		/**
+		 * Checks if the value of the given point is known.
+		 * @param slot The position of the point within the tile.
+		 * @return true/false If the value is known.
+		 */
+
+		boolean has(int slot) {
+
+			return (known.get() & (1L << slot)) != 0;
+		}
+
+		/**
+		 * Gets the value of the given point, which must be known.
+		 * @param slot The position of the point within the tile.
+		 * @return value The value of the point.
+		 */
+
+		double get(int slot) {
+
+			return values[slot];
+		}
+
+		/**
+		 * Stores the value of the given point.
+		 * @param slot The position of the point within the tile.
+		 * @param value The value of the point.
+		 */
+
+		void set(int slot, double value) {
+
+			values[slot] = value;
+
+			long bit = 1L << slot;
+
+			known.getAndUpdate(mask -> mask | bit);
+		}
+	}
+}
@@ -0,0 +1,309 @@
+package application;
+
+import java.nio.DoubleBuffer;
+
+import java.util.Arrays;
+
+/**
+ * The sampled points of a plotted curve stored in primitive arrays. The points are split into segments wherever the
+ * curve could not be evaluated, for example at an asymptote, so that no line is drawn across the gap. Points are added in
+ * order and a new segment is started every time the curve is broken. A curve can also be read straight from a pair of
+ * buffers, such as the columns of a curve file mapped into memory, without copying its points onto the heap. Such a curve
+ * cannot be changed.
+ *
+ * @author Eitan Tuchin
+ *
+ */
+
+public class SampledCurve {
+
+	/**
+	 * The x-axis values of every point in order.
+	 */
+
+	private double[] xs;
+
+	/**
+	 * The y-axis values of every point in order.
+	 */
+
+	private double[] ys;
+
+	/**
+	 * The x-axis and y-axis values of every point in order if the curve is read from buffers instead of arrays.
+	 */
+
+	private DoubleBuffer xBuffer, yBuffer;
+
+	/**
+	 * The amount of points.
+	 */
+
+	private int size;
+
+	/**
+	 * The index of the first point of every segment.
+	 */
+
+	private int[] segmentStarts = new int[4];
+
+	/**
+	 * The amount of segments.
+	 */
+
+	private int segmentCount;
+
+	/**
+	 * Whether the next point starts a new segment.
+	 */
+
+	private boolean broken = true;
+
+	/**
+	 * Creates an empty curve.
+	 */
+
+	public SampledCurve() {
+
+		this(64);
+	}
+
+	/**
+	 * Creates an empty curve with room for the given amount of points.
+	 * @param capacity The amount of points to make room for.
+	 */
+
+	public SampledCurve(int capacity) {
+
+		xs = new double[Math.max(capacity, 1)];
+
+		ys = new double[Math.max(capacity, 1)];
+	}
+
+	/**
+	 * Creates a curve that reads its points from the given buffers, which must hold the same amount of values, without
+	 * copying them.
+	 * @param xs The x-axis values of every point in order.
+	 * @param ys The y-axis values of every point in order.
+	 * @param segmentStarts The index of the first point of every segment in order, the first of which is 0 unless the
+	 * curve is empty.
+	 */
+
+	public SampledCurve(DoubleBuffer xs, DoubleBuffer ys, int[] segmentStarts) {
+
+		if (xs.remaining() != ys.remaining()) {
+
+			throw new IllegalArgumentException("Both buffers must hold the same amount of values.");
+		}
+
+		xBuffer = xs.slice();
+
+		yBuffer = ys.slice();
+
+		size = xBuffer.remaining();
+
+		this.segmentStarts = segmentStarts.clone();
+
+		segmentCount = segmentStarts.length;
+	}
+
+	/**
+	 * Adds a point to the end of the curve. A point that is not a finite number breaks the curve instead.
+	 * @param x The x-axis value.
+	 * @param y The y-axis value.
+	 */
+
+	public void add(double x, double y) {
+
+		if (xs == null) {
+
+			throw new IllegalStateException("A curve read from buffers cannot be changed.");
+		}
+
+		if (!isValid(y)) {
+
+			breakSegment();
+
+			return;
+		}
+
+		if (size == xs.length) {
+
+			xs = Arrays.copyOf(xs, size * 2);
+
+			ys = Arrays.copyOf(ys, size * 2);
+		}
+
+		if (broken) {
+
+			if (segmentCount == segmentStarts.length) {
+
+				segmentStarts = Arrays.copyOf(segmentStarts, segmentCount * 2);
+			}
+
+			segmentStarts[segmentCount++] = size;
+
+			broken = false;
+		}
+
+		xs[size] = x;
+
+		ys[size] = y;
+
+		size++;
+	}
+
+	/**
+	 * Ends the current segment so that the next point starts a new one.
+	 */
+
+	public void breakSegment() {
+
+		broken = true;
+	}
+
+	/**
+	 * Adds every point of another curve that continues this one, such as the next chunk of the x-axis sampled on another
+	 * thread. If the other curve starts at the last point of this one, that point is not repeated and the segments on
+	 * both sides are joined into one.
+	 * @param other The curve to add to the end of this one.
+	 */
+
+	public void append(SampledCurve other) {
+
+		for (int s = 0; s < other.segmentCount; s++) {
+
+			int start = other.segmentStarts[s], end = other.getSegmentEnd(s);
+
+			if (s == 0 && !broken && size > 0 && other.getX(start) == getX(size - 1)) {
+
+				start++;
+			}
+
+			else {
+
+				breakSegment();
+			}
+
+			for (int i = start; i < end; i++) {
+
+				add(other.getX(i), other.getY(i));
+			}
+		}
+
+		if (other.broken) {
+
+			breakSegment();
+		}
+	}
+
+	/**
+	 * Estimates how many bytes this curve takes up, for caching.
+	 * @return bytes The estimated amount of bytes.
+	 */
+
+	long getByteSize() {
+
+		// the points of a curve read from buffers are not on the heap
+
+		return 64 + (xs == null ? 0 : xs.length * 16L) + segmentStarts.length * 4L;
+	}
+
+	/**
+	 * Checks if the given y-axis value can be plotted.
+	 * @param y The y-axis value.
+	 * @return true/false If the value is a finite number.
+	 */
+
+	static boolean isValid(double y) {
+
+		return !(y == Double.POSITIVE_INFINITY) && !(y == Double.NEGATIVE_INFINITY) && !(Double.isNaN(y));
+	}
+
+	/**
+	 * Gets the amount of points.
+	 * @return size The amount of points in every segment combined.
+	 */
+
+	public int size() {
+
+		return size;
+	}
+
+	/**
+	 * Gets the x-axis value of the point at the given index.
+	 * @param index The index of the point.
+	 * @return x The x-axis value.
+	 */
+
+	public double getX(int index) {
+
+		return xs != null ? xs[index] : xBuffer.get(index);
+	}
+
+	/**
+	 * Gets the y-axis value of the point at the given index.
+	 * @param index The index of the point.
+	 * @return y The y-axis value.
+	 */
+
+	public double getY(int index) {
+
+		return ys != null ? ys[index] : yBuffer.get(index);
+	}
+
+	/**
+	 * Gets the amount of segments.
+	 * @return segmentCount The amount of unbroken pieces of the curve.
+	 */
+
+	public int getSegmentCount() {
+
+		return segmentCount;
+	}
+
+	/**
+	 * Gets the index of the first point of the given segment.
+	 * @param segment The index of the segment.
+	 * @return start The index of the first point.
+	 */
+
+	public int getSegmentStart(int segment) {
+
+		return segmentStarts[segment];
+	}
+
+	/**
+	 * Gets the index right after the last point of the given segment.
+	 * @param segment The index of the segment.
+	 * @return end The index after the last point.
+	 */
+
+	public int getSegmentEnd(int segment) {
+
+		return segment + 1 < segmentCount ? segmentStarts[segment + 1] : size;
+	}
+
+	/**
+	 * Puts the x-axis and y-axis values of every point in order into the given buffers, in bulk.
+	 * @param xTarget Receives the x-axis values.
+	 * @param yTarget Receives the y-axis values.
+	 */
+
+	void copyTo(DoubleBuffer xTarget, DoubleBuffer yTarget) {
+
+		if (xs != null) {
+
+			xTarget.put(xs, 0, size);
+
+			yTarget.put(ys, 0, size);
+		}
+
+		else {
+
+			xTarget.put(xBuffer.duplicate());
+
+			yTarget.put(yBuffer.duplicate());
+		}
+	}
+}
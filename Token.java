@@ -0,0 +1,162 @@
+package application;
+
+/**
+ * A single token of an equation as read by the lexer. A token is a number with its parsed value, an operator, an open or
+ * closed parentheses, a variable, the equals sign of a relation, the comma between the two parts of a parametric equation,
+ * the r in front of a polar equation, or the d/dx in front of an expression to differentiate, and remembers where it starts
+ * within the equation.
+ *
+ * @author Eitan Tuchin
+ *
+ */
+
+public class Token {
+
+	/**
+	 * Token type of a number literal.
+	 */
+
+	static final int NUMBER = 0;
+
+	/**
+	 * Token type of one of the operators +, -, *, /, and ^.
+	 */
+
+	static final int OPERATOR = 1;
+
+	/**
+	 * Token type of an open parentheses.
+	 */
+
+	static final int OPEN_PAREN = 2;
+
+	/**
+	 * Token type of a closed parentheses.
+	 */
+
+	static final int CLOSED_PAREN = 3;
+
+	/**
+	 * Token type of the x, y, or t variable, whose value is the index of the variable.
+	 */
+
+	static final int VARIABLE = 4;
+
+	/**
+	 * Token type of the equals sign between the two sides of a relation.
+	 */
+
+	static final int EQUALS = 5;
+
+	/**
+	 * Token type of the comma between the x and y parts of a parametric equation.
+	 */
+
+	static final int COMMA = 6;
+
+	/**
+	 * Token type of the r in front of a polar equation.
+	 */
+
+	static final int RADIUS = 7;
+
+	/**
+	 * Token type of the d/dx in front of an expression within parentheses whose derivative is taken.
+	 */
+
+	static final int DERIVATIVE = 8;
+
+	/**
+	 * The type of this token.
+	 */
+
+	private final int type;
+
+	/**
+	 * The parsed value of this token if it is a number, or the index of the variable if it is a variable.
+	 */
+
+	private final double value;
+
+	/**
+	 * The operator character of this token if it is an operator.
+	 */
+
+	private final char operator;
+
+	/**
+	 * The index within the equation where this token starts.
+	 */
+
+	private final int offset;
+
+	/**
+	 * Initializes the token.
+	 * @param type The type of the token.
+	 * @param value The parsed value if the token is a number, or the index of the variable if it is a variable.
+	 * @param operator The operator character if the token is an operator.
+	 * @param offset The index within the equation where the token starts.
+	 */
+
+	Token(int type, double value, char operator, int offset) {
+
+		this.type = type;
+
+		this.value = value;
+
+		this.operator = operator;
+
+		this.offset = offset;
+	}
+
+	/**
+	 * Checks if this token is the given operator.
+	 * @param op The operator character.
+	 * @return true/false If this token is that operator.
+	 */
+
+	boolean isOperator(char op) {
+
+		return type == OPERATOR && operator == op;
+	}
+
+	/**
+	 * Gets the type of this token.
+	 * @return type The type of this token.
+	 */
+
+	int getType() {
+
+		return type;
+	}
+
+	/**
+	 * Gets the parsed value of this token.
+	 * @return value The number if this token is a number.
+	 */
+
+	double getValue() {
+
+		return value;
+	}
+
+	/**
+	 * Gets the operator character of this token.
+	 * @return operator The operator if this token is an operator.
+	 */
+
+	char getOperator() {
+
+		return operator;
+	}
+
+	/**
+	 * Gets the index within the equation where this token starts.
+	 * @return offset The index of the first character of this token.
+	 */
+
+	int getOffset() {
+
+		return offset;
+	}
+}
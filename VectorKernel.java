@@ -0,0 +1,142 @@
+package application;
+
+import jdk.incubator.vector.DoubleVector;
+
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Applies the arithmetic of the batch evaluation of a compiled expression to whole arrays with the Vector API, as many
+ * doubles per instruction as the processor holds in its widest vector register, and the leftover elements one at a time.
+ * The Vector API is still an incubating module that the JVM only resolves when it is started with --add-modules
+ * jdk.incubator.vector, so this class is only ever loaded after the compiled expression has checked that the module is
+ * there. Powers and logarithms are left to Math, whose results the vector versions would not match exactly.
+ *
+ * @author Eitan Tuchin
+ *
+ */
+
+public class VectorKernel {
+
+	/**
+	 * The widest vector of doubles the processor supports.
+	 */
+
+	private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+	/**
+	 * Applies a binary operator element by element and stores the results in the first array.
+	 * @param type The node type of the operator: ADD, SUBTRACT, MULTIPLY, or DIVIDE.
+	 * @param a The left operands, which receive the results.
+	 * @param b The right operands.
+	 * @param length The amount of elements to apply the operator to.
+	 * @return true/false If the operator was applied, which it is not for any other node type.
+	 */
+
+	static boolean apply(int type, double[] a, double[] b, int length) {
+
+		// every operator has a loop of its own, since the JIT compiler only turns a constant operator into vector instructions
+
+		int bound = SPECIES.loopBound(length), step = SPECIES.length(), j = 0;
+
+		switch (type) {
+
+			case ExpressionNode.ADD:
+
+				for (; j < bound; j += step) {
+
+					DoubleVector.fromArray(SPECIES, a, j).add(DoubleVector.fromArray(SPECIES, b, j)).intoArray(a, j);
+				}
+
+				break;
+
+			case ExpressionNode.SUBTRACT:
+
+				for (; j < bound; j += step) {
+
+					DoubleVector.fromArray(SPECIES, a, j).sub(DoubleVector.fromArray(SPECIES, b, j)).intoArray(a, j);
+				}
+
+				break;
+
+			case ExpressionNode.MULTIPLY:
+
+				for (; j < bound; j += step) {
+
+					DoubleVector.fromArray(SPECIES, a, j).mul(DoubleVector.fromArray(SPECIES, b, j)).intoArray(a, j);
+				}
+
+				break;
+
+			case ExpressionNode.DIVIDE:
+
+				for (; j < bound; j += step) {
+
+					DoubleVector.fromArray(SPECIES, a, j).div(DoubleVector.fromArray(SPECIES, b, j)).intoArray(a, j);
+				}
+
+				break;
+
+			default:
+
+				return false;
+		}
+
+		for (; j < length; ++j) {
+
+			a[j] = applyScalar(type, a[j], b[j]);
+		}
+
+		return true;
+	}
+
+	/**
+	 * Negates every element of an array.
+	 * @param a The operands, which receive the results.
+	 * @param length The amount of elements to negate.
+	 */
+
+	static void negate(double[] a, int length) {
+
+		int bound = SPECIES.loopBound(length), j = 0;
+
+		for (; j < bound; j += SPECIES.length()) {
+
+			DoubleVector.fromArray(SPECIES, a, j).neg().intoArray(a, j);
+		}
+
+		for (; j < length; ++j) {
+
+			a[j] = -a[j];
+		}
+	}
+
+	/**
+	 * Applies a binary operator to a single pair of operands.
+	 * @param type The node type of the operator: ADD, SUBTRACT, MULTIPLY, or DIVIDE.
+	 * @param a The left operand.
+	 * @param b The right operand.
+	 * @return result The result.
+	 */
+
+	private static double applyScalar(int type, double a, double b) {
+
+		switch (type) {
+
+			case ExpressionNode.ADD:
+
+				return a + b;
+
+			case ExpressionNode.SUBTRACT:
+
+				return a - b;
+
+			case ExpressionNode.MULTIPLY:
+
+				return a * b;
+
+			default:
+
+				return a / b;
+		}
+	}
+}
@@ -0,0 +1,170 @@
+package application;
+
+import java.util.concurrent.TimeUnit;
+
+import java.util.function.DoubleUnaryOperator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+
+import org.openjdk.jmh.annotations.BenchmarkMode;
+
+import org.openjdk.jmh.annotations.Fork;
+
+import org.openjdk.jmh.annotations.Measurement;
+
+import org.openjdk.jmh.annotations.Mode;
+
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+
+import org.openjdk.jmh.annotations.Param;
+
+import org.openjdk.jmh.annotations.Scope;
+
+import org.openjdk.jmh.annotations.Setup;
+
+import org.openjdk.jmh.annotations.State;
+
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures how fast the equation solver parses and evaluates a corpus of representative equations, both for a single
+ * x-axis value and for every x-axis value the graph plots an equation at. Run with -prof gc to see the allocation rate.
+ *
+ * @author Eitan Tuchin
+ *
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EquationSolverBenchmark {
+
+	/**
+	 * Polynomials, nested parentheses, fractions, negatives, and exponent chains.
+	 */
+
+	@Param({ "3x^4-2x^3+x^2-7x+5", "((x+1)(x-2))/((x+3)(x-(4+(x-5))))", "1/2x+3/4x^2-5/6", "-x*-3-(-x+-2)", "2^x^0.5^2" })
+	public String equation;
+
+	/**
+	 * The x-axis values the graph used to plot every equation at, in steps of 1/25 from -25 to 25.
+	 */
+
+	private static final double[] GRID = new double[1251];
+
+	static {
+
+		for (int i = 0; i < GRID.length; i++) {
+
+			GRID[i] = -25 + i * 0.04;
+		}
+	}
+
+	/**
+	 * The equation compiled once during setup.
+	 */
+
+	private CompiledExpression expression;
+
+	/**
+	 * The class generated for the equation during setup.
+	 */
+
+	private DoubleUnaryOperator function;
+
+	/**
+	 * The evaluated numbers of the last sampling run.
+	 */
+
+	private double[] ys;
+
+	/**
+	 * Compiles the equation, generates its class, and creates the output array.
+	 * @throws Exception The equation is not a legal expression.
+	 */
+
+	@Setup
+	public void setup() throws Exception {
+
+		expression = new EquationSolver().compile(equation);
+
+		function = BytecodeGenerator.generate(expression);
+
+		ys = new double[GRID.length];
+	}
+
+	/**
+	 * Compiles the equation, which is found in the cache after the first call, and evaluates it at a single x-axis value.
+	 * @return result The evaluated number.
+	 * @throws Exception The equation is not a legal expression.
+	 */
+
+	@Benchmark
+	public double parseEquation() throws Exception {
+
+		return new EquationSolver().parseEquation(equation, 1.5);
+	}
+
+	/**
+	 * Tokenizes and parses the equation without looking it up in the cache of compiled expressions.
+	 * @return expression The compiled expression.
+	 * @throws Exception The equation is not a legal expression.
+	 */
+
+	@Benchmark
+	public CompiledExpression compileUncached() throws Exception {
+
+		return new EquationSolver().compileUncached(equation);
+	}
+
+	/**
+	 * Evaluates the already compiled equation at a single x-axis value.
+	 * @return result The evaluated number.
+	 */
+
+	@Benchmark
+	public double evaluateCompiled() {
+
+		return expression.evaluate(1.5);
+	}
+
+	/**
+	 * Evaluates the class generated for the equation at a single x-axis value, the way the graph evaluates it.
+	 * @return result The evaluated number.
+	 */
+
+	@Benchmark
+	public double evaluateGenerated() {
+
+		return function.applyAsDouble(1.5);
+	}
+
+	/**
+	 * Compiles the equation and evaluates it at 1,251 evenly spaced x-axis values.
+	 * @return ys The evaluated numbers.
+	 * @throws Exception The equation is not a legal expression.
+	 */
+
+	@Benchmark
+	public double[] sampleGrid() throws Exception {
+
+		new EquationSolver().compile(equation).evaluate(GRID, ys);
+
+		return ys;
+	}
+
+	/**
+	 * Compiles the equation and samples it adaptively over the default graph, like a single keystroke does.
+	 * @return curve The sampled curve.
+	 * @throws Exception The equation is not a legal expression.
+	 */
+
+	@Benchmark
+	public SampledCurve sampleAdaptive() throws Exception {
+
+		return AdaptiveSampler.sample(new EquationSolver().compile(equation), -25, 25, -25, 25, 800, 600);
+	}
+}
@@ -0,0 +1,81 @@
+package application;
+
+import java.util.ArrayList;
+
+import java.util.concurrent.TimeUnit;
+
+import javafx.scene.chart.XYChart;
+
+import org.openjdk.jmh.annotations.Benchmark;
+
+import org.openjdk.jmh.annotations.BenchmarkMode;
+
+import org.openjdk.jmh.annotations.Fork;
+
+import org.openjdk.jmh.annotations.Measurement;
+
+import org.openjdk.jmh.annotations.Mode;
+
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+
+import org.openjdk.jmh.annotations.Param;
+
+import org.openjdk.jmh.annotations.Scope;
+
+import org.openjdk.jmh.annotations.Setup;
+
+import org.openjdk.jmh.annotations.State;
+
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures how fast the graph turns an equation into the XYChart.Series objects that are added to the line chart,
+ * including the splitting of the series at asymptotes. Run with -prof gc to see the allocation rate.
+ *
+ * @author Eitan Tuchin
+ *
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PlotBenchmark {
+
+	/**
+	 * A smooth curve, a curve with an asymptote, and a curve that is invalid for half of the x-axis.
+	 */
+
+	@Param({ "3x^4-2x^3+x^2-7x+5", "1/(x-0.02)", "x^0.5" })
+	public String equation;
+
+	/**
+	 * The equation sampled once during setup.
+	 */
+
+	private SampledCurve curve;
+
+	/**
+	 * Compiles and samples the equation over the default graph.
+	 * @throws Exception The equation is not a legal expression.
+	 */
+
+	@Setup
+	public void setup() throws Exception {
+
+		curve = AdaptiveSampler.sample(new EquationSolver().compile(equation), -25, 25, -25, 25, 800, 600);
+	}
+
+	/**
+	 * Builds the series of the already sampled equation.
+	 * @return seriesArr The series of the plotted equation.
+	 */
+
+	@Benchmark
+	public ArrayList<XYChart.Series<Number, Number>> createSeries() {
+
+		return ChartRenderer.createSeries(curve);
+	}
+}
@@ -0,0 +1,122 @@
+package application;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.management.ManagementFactory;
+
+import com.sun.management.ThreadMXBean;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that evaluating a compiled expression allocates nothing once it is warmed up, neither at a single x-axis value
+ * nor for a whole array of them, by counting the bytes the current thread allocates around many calls.
+ *
+ * @author Eitan Tuchin
+ *
+ */
+
+class CompiledExpressionAllocationTest {
+
+	/**
+	 * An equation that uses every operator, shared subexpressions, and numbers that are not whole.
+	 */
+
+	private static final String EQUATION = "(x+1)^2/(x-0.5)-3.25x^3+2^x+(x+1)^2";
+
+	/**
+	 * How many calls are made to let the JIT compiler compile the evaluation before allocations are counted.
+	 */
+
+	private static final int WARMUP_CALLS = 200_000;
+
+	/**
+	 * Counts the bytes allocated by the current thread.
+	 */
+
+	private static final ThreadMXBean THREADS = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+	/**
+	 * Evaluates the expression at a million x-axis values one at a time and expects no allocation at all.
+	 * @throws Exception The equation is not a legal expression.
+	 */
+
+	@Test
+	void evaluateAtSingleValueAllocatesNothing() throws Exception {
+
+		CompiledExpression expression = new EquationSolver().compile(EQUATION);
+
+		double sum = evaluateAll(expression, WARMUP_CALLS);
+
+		long before = THREADS.getCurrentThreadAllocatedBytes();
+
+		sum += evaluateAll(expression, 1_000_000);
+
+		long allocated = THREADS.getCurrentThreadAllocatedBytes() - before;
+
+		assertTrue(Double.isFinite(sum));
+
+		assertEquals(0, allocated, "bytes allocated by 1,000,000 calls of evaluate(double)");
+	}
+
+	/**
+	 * Evaluates the expression over an array of x-axis values a thousand times and expects no allocation at all after the
+	 * first call, which creates the columns that are reused.
+	 * @throws Exception The equation is not a legal expression.
+	 */
+
+	@Test
+	void evaluateArrayAllocatesNothing() throws Exception {
+
+		CompiledExpression expression = new EquationSolver().compile(EQUATION);
+
+		double[] xs = new double[1251], ys = new double[xs.length];
+
+		for (int i = 0; i < xs.length; i++) {
+
+			xs[i] = -25 + i * 0.04;
+		}
+
+		for (int i = 0; i < WARMUP_CALLS / xs.length; i++) {
+
+			expression.evaluate(xs, ys);
+		}
+
+		long before = THREADS.getCurrentThreadAllocatedBytes();
+
+		for (int i = 0; i < 1000; i++) {
+
+			expression.evaluate(xs, ys);
+		}
+
+		long allocated = THREADS.getCurrentThreadAllocatedBytes() - before;
+
+		assertEquals(0, allocated, "bytes allocated by 1,000 calls of evaluate(double[], double[])");
+	}
+
+	/**
+	 * Evaluates the expression at evenly spaced x-axis values one at a time.
+	 * @param expression The compiled expression.
+	 * @param calls The amount of x-axis values.
+	 * @return sum The sum of the finite results, so the calls cannot be left out.
+	 */
+
+	private static double evaluateAll(CompiledExpression expression, int calls) {
+
+		double sum = 0;
+
+		for (int i = 0; i < calls; i++) {
+
+			double y = expression.evaluate(-25 + i * 1e-5);
+
+			if (Double.isFinite(y)) {
+
+				sum += y;
+			}
+		}
+
+		return sum;
+	}
+}
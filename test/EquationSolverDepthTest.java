@@ -0,0 +1,72 @@
+package application;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that the longest and most deeply nested equations the equation solver accepts compile without running out of
+ * stack, and that anything longer or deeper is rejected with an ordinary exception instead of a StackOverflowError.
+ *
+ * @author Eitan Tuchin
+ *
+ */
+
+class EquationSolverDepthTest {
+
+	/**
+	 * Compiles a flat sum with as many terms as an expression tree may be deep, along with its derivative and its
+	 * generated class, and expects every one of them to evaluate exactly.
+	 * @throws Exception The equation is not a legal expression.
+	 */
+
+	@Test
+	void longestFlatSumCompiles() throws Exception {
+
+		String sum = "x" + "+x".repeat(EquationSolver.MAX_DEPTH - 1);
+
+		CompiledExpression expression = new EquationSolver().compileUncached(sum);
+
+		assertEquals(1.5 * EquationSolver.MAX_DEPTH, expression.evaluate(1.5));
+
+		assertEquals(1.5 * EquationSolver.MAX_DEPTH, BytecodeGenerator.generate(expression).applyAsDouble(1.5));
+
+		CompiledExpression derivative = new EquationSolver().compileUncached("d/dx(" + sum + ")");
+
+		assertEquals(EquationSolver.MAX_DEPTH, derivative.evaluate(1.5));
+	}
+
+	/**
+	 * Compiles the most deeply nested parentheses and negatives the equation solver accepts.
+	 * @throws Exception The equation is not a legal expression.
+	 */
+
+	@Test
+	void deepestNestingCompiles() throws Exception {
+
+		int levels = EquationSolver.MAX_NESTING;
+
+		assertEquals(1.5, new EquationSolver().compileUncached("(".repeat(levels) + "x" + ")".repeat(levels)).evaluate(1.5));
+
+		assertEquals(1.5, new EquationSolver().compileUncached("-".repeat(levels) + "x").evaluate(1.5));
+	}
+
+	/**
+	 * Expects sums and products with thousands of terms, and parentheses and negatives nested thousands of levels deep,
+	 * to be rejected as illegal equations.
+	 */
+
+	@Test
+	void deeperEquationsAreIllegal() {
+
+		assertThrows(Exception.class, () -> new EquationSolver().compileUncached("x" + "+x".repeat(20_000)));
+
+		assertThrows(Exception.class, () -> new EquationSolver().compileUncached("x" + "*x".repeat(20_000)));
+
+		assertThrows(Exception.class, () -> new EquationSolver().compileUncached("(".repeat(3000) + "x" + ")".repeat(3000)));
+
+		assertThrows(Exception.class, () -> new EquationSolver().compileUncached("-".repeat(3000) + "x"));
+	}
+}